@@ -0,0 +1,208 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import java.util.List;
+
+import javafx.scene.Node;
+
+/**
+ * The order in which the anchored children of a TactilePane are relocated.
+ * <p>
+ * A child that is anchored to (a descendant of) another anchored child depends
+ * on it: it can only be relocated after the child it depends on has been. The
+ * graph sorts the anchored children topologically, so chains of anchors settle
+ * in a single pass instead of lagging one pass per link. Anchors that form a
+ * cycle can't be sorted, so the cycle is broken at the child in it that is
+ * furthest back in the list of children: that child is relocated first, as if
+ * it weren't anchored to another child, and the rest of the cycle follows it.
+ * <p>
+ * The graph also keeps the index of every child in the list of children of
+ * the TactilePane, so their z-order can be compared without scanning that list.
+ * <p>
+ * The graph is rebuilt when it has been invalidated, which happens whenever
+ * an anchor or the list of children changes. While the order is being walked,
+ * invalidations are deferred until the walk ends, so relocating a child (and
+ * bringing it to the front) can't change the order halfway through.
+ */
+final class AnchorGraph {
+    // States of a body during the topological sort
+    private static final byte UNVISITED = 0;
+    private static final byte VISITING = 1;
+    private static final byte VISITED = 2;
+
+    private boolean valid;
+    // Whether the order is being walked, and whether the graph was invalidated meanwhile
+    private boolean walking;
+    private boolean invalidated;
+
+    // Ids of the anchored children, in the order in which they must be relocated
+    int[] order = new int[0];
+    int count;
+
+    // Id of the child that contains the anchor Node of a body, or -1
+    private int[] anchorChild = new int[0];
+    // Index of a child in the list of children
+    private int[] childIndex = new int[0];
+    // Highest index in childIndex
+    private int lastChildIndex;
+    private byte[] state = new byte[0];
+    // Bodies whose dependencies are being sorted, each depending on the next
+    private int[] stack = new int[0];
+
+    /**
+     * Marks the graph as out of date. While the order is being walked, the
+     * graph is only marked once the walk ends.
+     */
+    void invalidate() {
+        if (walking) {
+            invalidated = true;
+        } else {
+            valid = false;
+        }
+    }
+
+    /**
+     * Rebuilds the graph if it is out of date and the order isn't being walked.
+     */
+    void update(TactilePane pane, BodyStore bodies) {
+        if (valid || walking) return;
+
+        int capacity = bodies.nodes.length;
+        if (anchorChild.length < capacity) {
+            order = new int[capacity];
+            anchorChild = new int[capacity];
+            childIndex = new int[capacity];
+            state = new byte[capacity];
+            stack = new int[capacity];
+        }
+
+        List<Node> children = pane.getChildren();
+        for (int i = 0; i < children.size(); i++) {
+            int id = bodies.idOf(children.get(i));
+            if (id >= 0) {
+                childIndex[id] = i;
+            }
+        }
+        lastChildIndex = children.size() - 1;
+
+        for (int id = 0; id < bodies.size; id++) {
+            state[id] = UNVISITED;
+            anchorChild[id] = -1;
+            if (isAnchoredChild(bodies, id)) {
+                // Find the child the anchor Node is part of
+                Node node = bodies.anchors[id].getAnchorNode();
+                while (node != null && node.getParent() != pane) {
+                    node = node.getParent();
+                }
+                if (node != null) {
+                    anchorChild[id] = bodies.idOf(node);
+                }
+            }
+        }
+
+        // Sort in the order of the children, so cycles are broken the same way every time
+        count = 0;
+        for (int i = 0; i < children.size(); i++) {
+            int id = bodies.idOf(children.get(i));
+            if (id >= 0 && state[id] == UNVISITED && isAnchoredChild(bodies, id)) {
+                visit(bodies, id);
+            }
+        }
+        valid = true;
+    }
+
+    /**
+     * Brings the graph up to date and starts walking its order. Until the walk
+     * ends, the order and count stay as they are.
+     */
+    void beginWalk(TactilePane pane, BodyStore bodies) {
+        update(pane, bodies);
+        walking = true;
+    }
+
+    /**
+     * Ends walking the order, and applies the invalidations that were deferred.
+     */
+    void endWalk() {
+        walking = false;
+        if (invalidated) {
+            invalidated = false;
+            valid = false;
+        }
+    }
+
+    /**
+     * Records that a child has been brought to the front, so it compares as in
+     * front of all other children until the graph is rebuilt.
+     */
+    void movedToFront(int id) {
+        childIndex[id] = ++lastChildIndex;
+    }
+
+    /**
+     * Returns the id of the child that contains the anchor Node of a body, or
+     * -1 if the anchor Node is not part of the TactilePane.
+     */
+    int getAnchorChild(int id) {
+        return anchorChild[id];
+    }
+
+    /**
+     * Returns the index of a child in the list of children of the TactilePane.
+     */
+    int getChildIndex(int id) {
+        return childIndex[id];
+    }
+
+    // HELP METHODS
+
+    // Adds a body to the order after the bodies it depends on. Since every
+    // body depends on at most one other, its dependencies form a chain that
+    // is followed until a body is found that has been sorted already, or that
+    // isn't anchored to another child
+    private void visit(BodyStore bodies, int id) {
+        int depth = 0;
+        while (id >= 0 && state[id] == UNVISITED && isAnchoredChild(bodies, id)) {
+            state[id] = VISITING;
+            stack[depth++] = id;
+            id = anchorChild[id];
+        }
+
+        // A dependency that is still being visited means the anchors form a cycle
+        int end = depth;
+        if (id >= 0 && state[id] == VISITING) {
+            int start = depth - 1;
+            while (stack[start] != id) {
+                start--;
+            }
+            // Break the cycle at the child furthest back, which then comes first
+            int first = start;
+            for (int i = start + 1; i < depth; i++) {
+                if (childIndex[stack[i]] < childIndex[stack[first]]) {
+                    first = i;
+                }
+            }
+            add(stack[first]);
+            for (int i = first - 1; i >= start; i--) {
+                add(stack[i]);
+            }
+            for (int i = depth - 1; i > first; i--) {
+                add(stack[i]);
+            }
+            end = start;
+        }
+
+        for (int i = end - 1; i >= 0; i--) {
+            add(stack[i]);
+        }
+    }
+
+    private void add(int id) {
+        state[id] = VISITED;
+        order[count++] = id;
+    }
+
+    static boolean isAnchoredChild(BodyStore bodies, int id) {
+        int flags = bodies.flags[id];
+        return (flags & (BodyStore.CHILD | BodyStore.ANCHORED)) == (BodyStore.CHILD | BodyStore.ANCHORED);
+    }
+}
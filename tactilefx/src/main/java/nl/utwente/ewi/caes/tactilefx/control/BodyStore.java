@@ -0,0 +1,768 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javafx.geometry.Bounds;
+import javafx.geometry.Point2D;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.transform.Transform;
+
+/**
+ * Registry of the Nodes that take part in the physics of a TactilePane. Every
+ * registered Node (a body) gets a dense integer id, and its vector, position,
+ * flags and cached scene bounds are kept in primitive arrays indexed by that id,
+ * so the physics loop can walk them linearly without looking up attached
+ * properties.
+ * <p>
+ * The attached properties of TactilePane remain the public face of this state:
+ * setting one of them writes through to the store, and
+ * {@link TactilePane#getVector(javafx.scene.Node) getVector} reads through to it.
+ * Vectors that are changed by the physics are published to the
+ * {@link TactilePane#vectorProperty(javafx.scene.Node) vector} property once per
+ * pulse by {@link #publishVectors()}.
+ * <p>
+ * Ids of Nodes that are deregistered are reused, so a body keeps its id for as
+ * long as it is registered.
+ * <p>
+ * Bodies that are at rest are put to sleep by the physics. Any change made to a
+ * body from outside of the physics, through its attached properties or its
+ * bounds, wakes it again.
+ */
+final class BodyStore {
+    // Roles of a body
+    static final int CHILD = 1;                 // Child of the TactilePane, moved by the physics
+    static final int ACTIVE = 1 << 1;           // Active Node, tracked for collisions
+    // Attached properties of a body
+    static final int IN_USE = 1 << 2;
+    static final int SLIDE_ON_RELEASE = 1 << 3;
+    static final int ANCHORED = 1 << 4;
+    static final int BONDED = 1 << 5;
+    static final int CONTINUOUS = 1 << 15;      // Continuous collision detection
+    // Bookkeeping
+    static final int DIRTY = 1 << 6;            // Cached bounds need to be recomputed
+    static final int VECTOR_CHANGED = 1 << 7;   // Vector has not been published yet
+    static final int LOCATED = 1 << 8;          // Position has been recorded by the physics
+    static final int INTERPOLATED = 1 << 9;     // Rendered at an interpolated position
+    static final int SLEEPING = 1 << 10;        // At rest, skipped by the physics until woken
+    static final int INDEXED = 1 << 11;         // Inserted in the broad phase of the TactilePane
+    static final int LOCAL_DIRTY = 1 << 12;     // Cached pane-local bounds need to be recomputed
+    static final int SHAPE_DIRTY = 1 << 13;     // Cached collision shape needs to be recomputed
+    static final int SHAPED = 1 << 14;          // Has a collision shape, set or derived
+    static final int SWEPT = 1 << 16;           // Bounds at the start of its sweep have been recorded
+    static final int QUEUED = 1 << 17;          // Waiting in the refresh queue of the broad phase
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final Bond[] NO_BONDS = new Bond[0];
+
+    // Called whenever a body is woken from outside of the physics
+    Runnable onWake;
+
+    private final Map<Node, Integer> idByNode = new IdentityHashMap<>();
+    private int[] freeIds = new int[INITIAL_CAPACITY];
+    private int freeCount;
+
+    // One past the highest id in use
+    int size;
+
+    Node[] nodes = new Node[INITIAL_CAPACITY];
+    int[] flags = new int[INITIAL_CAPACITY];
+    Anchor[] anchors = new Anchor[INITIAL_CAPACITY];
+    // Copy of the set of Bonds, so the physics can iterate it without an Iterator
+    Bond[][] bonds = new Bond[INITIAL_CAPACITY][];
+    // The Bonds of all bodies as pair constraints
+    final BondGraph bondGraph = new BondGraph();
+    // The order in which anchored bodies are relocated
+    final AnchorGraph anchorGraph = new AnchorGraph();
+    // Layout position, as of the end of the last physics step
+    double[] x = new double[INITIAL_CAPACITY];
+    double[] y = new double[INITIAL_CAPACITY];
+    // Layout position, as of the start of the last physics step
+    double[] previousX = new double[INITIAL_CAPACITY];
+    double[] previousY = new double[INITIAL_CAPACITY];
+    // Layout position the body was rendered at, if it is INTERPOLATED
+    double[] renderX = new double[INITIAL_CAPACITY];
+    double[] renderY = new double[INITIAL_CAPACITY];
+    // Vector
+    double[] vx = new double[INITIAL_CAPACITY];
+    double[] vy = new double[INITIAL_CAPACITY];
+    // Cached bounds in scene coordinates
+    double[] minX = new double[INITIAL_CAPACITY];
+    double[] minY = new double[INITIAL_CAPACITY];
+    double[] maxX = new double[INITIAL_CAPACITY];
+    double[] maxY = new double[INITIAL_CAPACITY];
+    // Cached bounds in the coordinate space of the TactilePane
+    double[] localMinX = new double[INITIAL_CAPACITY];
+    double[] localMinY = new double[INITIAL_CAPACITY];
+    double[] localMaxX = new double[INITIAL_CAPACITY];
+    double[] localMaxY = new double[INITIAL_CAPACITY];
+    // Collision shape set through the attached property
+    CollisionShape[] shapes = new CollisionShape[INITIAL_CAPACITY];
+    // Collision shape derived from the Node, and the local bounds it was derived from
+    private CollisionShape[] derivedShapes = new CollisionShape[INITIAL_CAPACITY];
+    private Bounds[] derivedFrom = new Bounds[INITIAL_CAPACITY];
+    // Cached collision shape in scene coordinates, or the cached scene bounds
+    // as a polygon if the body has no collision shape
+    double[][] shapePoints = new double[INITIAL_CAPACITY][];
+    int[] shapePointCount = new int[INITIAL_CAPACITY];
+    double[] shapeRadius = new double[INITIAL_CAPACITY];
+    // Material of a body, for the contact solver
+    double[] mass = new double[INITIAL_CAPACITY];
+    double[] restitution = new double[INITIAL_CAPACITY];
+    double[] friction = new double[INITIAL_CAPACITY];
+    // Cached scene bounds as of the start of the sweep of a CONTINUOUS body,
+    // which lasts from one collision check to the next
+    double[] startMinX = new double[INITIAL_CAPACITY];
+    double[] startMinY = new double[INITIAL_CAPACITY];
+    double[] startMaxX = new double[INITIAL_CAPACITY];
+    double[] startMaxY = new double[INITIAL_CAPACITY];
+    // Proximity radius set through the attached property, negative if the
+    // proximity threshold of the TactilePane applies
+    double[] proximityRadius = new double[INITIAL_CAPACITY];
+    // Scratch space for the bounds computed by localBounds
+    private final double[] scratchBounds = new double[4];
+    // Ids of the active bodies that were woken since the broad phase was last
+    // brought up to date, so only those have to be refreshed in it
+    int[] refreshQueue = new int[INITIAL_CAPACITY];
+    int refreshCount;
+    // Whether an active body has been added or removed, or its proximity
+    // radius changed, since the physics last computed the smallest radius
+    boolean radiiChanged;
+
+    // REGISTRATION
+
+    /**
+     * Returns the id of the given Node, or -1 if it is not registered.
+     */
+    int idOf(Node node) {
+        Integer id = idByNode.get(node);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Registers a Node in the given role ({@link #CHILD} or {@link #ACTIVE}).
+     * A Node that is already registered keeps its id.
+     *
+     * @return the id of the Node
+     */
+    int register(Node node, int role) {
+        int id = idOf(node);
+        if (id < 0) {
+            id = freeCount > 0 ? freeIds[--freeCount] : size++;
+            ensureCapacity(size);
+            idByNode.put(node, id);
+
+            nodes[id] = node;
+            // A reused id may still be queued
+            flags[id] = DIRTY | LOCAL_DIRTY | SHAPE_DIRTY | (flags[id] & QUEUED);
+            anchors[id] = null;
+            bonds[id] = NO_BONDS;
+            derivedShapes[id] = null;
+            derivedFrom[id] = null;
+
+            // Copy the current state of the attached properties
+            Point2D vector = TactilePane.vectorProperty(node).get();
+            vx[id] = vector.getX();
+            vy[id] = vector.getY();
+            x[id] = node.getLayoutX();
+            y[id] = node.getLayoutY();
+            setFlag(id, IN_USE, TactilePane.isInUse(node));
+            setFlag(id, SLIDE_ON_RELEASE, TactilePane.isSlideOnRelease(node));
+            setFlag(id, CONTINUOUS, TactilePane.isContinuousCollisionDetection(node));
+            setAnchor(id, TactilePane.getAnchor(node));
+            shapes[id] = TactilePane.getCollisionShape(node);
+            proximityRadius[id] = TactilePane.getProximityRadius(node);
+            updateMaterial(id);
+            updateBonds(id);
+        }
+        if ((role & ACTIVE) != 0 && (flags[id] & ACTIVE) == 0) {
+            radiiChanged = true;
+        }
+        flags[id] |= role;
+        bondGraph.invalidate();
+        anchorGraph.invalidate();
+        wake(id);
+        return id;
+    }
+
+    /**
+     * Removes the given role from a Node. When a Node has no roles left, its
+     * unpublished vector is written back to its attached property and its id
+     * is released.
+     */
+    void deregister(Node node, int role) {
+        int id = idOf(node);
+        if (id < 0) return;
+
+        flags[id] &= ~role;
+        if ((role & ACTIVE) != 0) {
+            flags[id] &= ~INDEXED;
+            radiiChanged = true;
+        }
+        bondGraph.invalidate();
+        anchorGraph.invalidate();
+        if ((flags[id] & (CHILD | ACTIVE)) != 0) return;
+
+        publishVector(id);
+        idByNode.remove(node);
+        nodes[id] = null;
+        anchors[id] = null;
+        bonds[id] = NO_BONDS;
+        shapes[id] = null;
+        derivedShapes[id] = null;
+        derivedFrom[id] = null;
+        // The id may still be in the refresh queue, which mustn't get it twice once it's reused
+        flags[id] &= QUEUED;
+
+        if (id == size - 1) {
+            size--;
+        } else {
+            if (freeCount == freeIds.length) {
+                freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+            }
+            freeIds[freeCount++] = id;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= nodes.length) return;
+
+        int newCapacity = Math.max(capacity, nodes.length * 2);
+        nodes = Arrays.copyOf(nodes, newCapacity);
+        flags = Arrays.copyOf(flags, newCapacity);
+        anchors = Arrays.copyOf(anchors, newCapacity);
+        bonds = Arrays.copyOf(bonds, newCapacity);
+        x = Arrays.copyOf(x, newCapacity);
+        y = Arrays.copyOf(y, newCapacity);
+        previousX = Arrays.copyOf(previousX, newCapacity);
+        previousY = Arrays.copyOf(previousY, newCapacity);
+        renderX = Arrays.copyOf(renderX, newCapacity);
+        renderY = Arrays.copyOf(renderY, newCapacity);
+        vx = Arrays.copyOf(vx, newCapacity);
+        vy = Arrays.copyOf(vy, newCapacity);
+        minX = Arrays.copyOf(minX, newCapacity);
+        minY = Arrays.copyOf(minY, newCapacity);
+        maxX = Arrays.copyOf(maxX, newCapacity);
+        maxY = Arrays.copyOf(maxY, newCapacity);
+        localMinX = Arrays.copyOf(localMinX, newCapacity);
+        localMinY = Arrays.copyOf(localMinY, newCapacity);
+        localMaxX = Arrays.copyOf(localMaxX, newCapacity);
+        localMaxY = Arrays.copyOf(localMaxY, newCapacity);
+        shapes = Arrays.copyOf(shapes, newCapacity);
+        derivedShapes = Arrays.copyOf(derivedShapes, newCapacity);
+        derivedFrom = Arrays.copyOf(derivedFrom, newCapacity);
+        shapePoints = Arrays.copyOf(shapePoints, newCapacity);
+        shapePointCount = Arrays.copyOf(shapePointCount, newCapacity);
+        shapeRadius = Arrays.copyOf(shapeRadius, newCapacity);
+        proximityRadius = Arrays.copyOf(proximityRadius, newCapacity);
+        refreshQueue = Arrays.copyOf(refreshQueue, newCapacity);
+        mass = Arrays.copyOf(mass, newCapacity);
+        restitution = Arrays.copyOf(restitution, newCapacity);
+        friction = Arrays.copyOf(friction, newCapacity);
+        startMinX = Arrays.copyOf(startMinX, newCapacity);
+        startMinY = Arrays.copyOf(startMinY, newCapacity);
+        startMaxX = Arrays.copyOf(startMaxX, newCapacity);
+        startMaxY = Arrays.copyOf(startMaxY, newCapacity);
+    }
+
+    // FLAGS
+
+    boolean hasFlag(int id, int flag) {
+        return (flags[id] & flag) != 0;
+    }
+
+    void setFlag(int id, int flag, boolean value) {
+        if (value) {
+            flags[id] |= flag;
+        } else {
+            flags[id] &= ~flag;
+        }
+    }
+
+    void setFlag(Node node, int flag, boolean value) {
+        int id = idOf(node);
+        if (id >= 0) {
+            setFlag(id, flag, value);
+            wake(id);
+        }
+    }
+
+    void setAnchor(int id, Anchor anchor) {
+        anchors[id] = anchor;
+        anchorGraph.invalidate();
+        setFlag(id, ANCHORED, anchor != null);
+    }
+
+    void setAnchor(Node node, Anchor anchor) {
+        int id = idOf(node);
+        if (id >= 0) {
+            setAnchor(id, anchor);
+            wake(id);
+        }
+    }
+
+    void setProximityRadius(Node node, double radius) {
+        int id = idOf(node);
+        if (id >= 0) {
+            proximityRadius[id] = radius;
+            // Its margin in the broad phase changes
+            flags[id] |= DIRTY;
+            radiiChanged = true;
+            wake(id);
+        }
+    }
+
+    /**
+     * Copies the mass, restitution and friction of a body, after one of them
+     * has been changed.
+     */
+    void updateMaterial(int id) {
+        Node node = nodes[id];
+        mass[id] = TactilePane.getMass(node);
+        restitution[id] = TactilePane.getRestitution(node);
+        friction[id] = TactilePane.getFriction(node);
+    }
+
+    void updateMaterial(Node node) {
+        int id = idOf(node);
+        if (id >= 0) {
+            updateMaterial(id);
+            wake(id);
+        }
+    }
+
+    void setShape(Node node, CollisionShape shape) {
+        int id = idOf(node);
+        if (id >= 0) {
+            shapes[id] = shape;
+            flags[id] |= DIRTY | SHAPE_DIRTY;
+            wake(id);
+        }
+    }
+    
+    // SLEEPING
+    
+    /**
+     * Wakes a body, so that it takes part in the physics again.
+     */
+    void wake(int id) {
+        if ((flags[id] & SLEEPING) != 0) {
+            // It may have been relocated while it was asleep
+            flags[id] &= ~(SLEEPING | LOCATED);
+        }
+        queueRefresh(id);
+        if (onWake != null) {
+            onWake.run();
+        }
+    }
+    
+    /**
+     * Wakes all bodies.
+     */
+    void wakeAll() {
+        for (int id = 0; id < size; id++) {
+            if ((flags[id] & SLEEPING) != 0) {
+                flags[id] &= ~(SLEEPING | LOCATED);
+            }
+            queueRefresh(id);
+        }
+        if (onWake != null) {
+            onWake.run();
+        }
+    }
+    
+    // Adds an active body to the refresh queue, if it isn't in it yet. Anything
+    // that may change how a body is stored in the broad phase wakes it
+    private void queueRefresh(int id) {
+        if ((flags[id] & (ACTIVE | QUEUED)) == ACTIVE) {
+            flags[id] |= QUEUED;
+            refreshQueue[refreshCount++] = id;
+        }
+    }
+    
+    /**
+     * Returns whether any body is awake.
+     */
+    boolean isAnyAwake() {
+        for (int id = 0; id < size; id++) {
+            if ((flags[id] & (CHILD | ACTIVE)) != 0 && (flags[id] & SLEEPING) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copies the set of Bonds of a body, after it has been changed.
+     */
+    void updateBonds(int id) {
+        Node node = nodes[id];
+        bondGraph.invalidate();
+        if (TactilePane.hasBonds(node)) {
+            bonds[id] = TactilePane.getBonds(node).toArray(bonds[id]);
+            setFlag(id, BONDED, true);
+        } else {
+            bonds[id] = NO_BONDS;
+            setFlag(id, BONDED, false);
+        }
+    }
+
+    void updateBonds(Node node) {
+        int id = idOf(node);
+        if (id >= 0) {
+            updateBonds(id);
+            wake(id);
+        }
+    }
+
+    // VECTORS
+
+    /**
+     * Sets the vector of a body from within the physics. The vector is published
+     * to the attached property by the next call to {@link #publishVectors()}.
+     */
+    void setVector(int id, double vectorX, double vectorY) {
+        if (vx[id] != vectorX || vy[id] != vectorY) {
+            vx[id] = vectorX;
+            vy[id] = vectorY;
+            flags[id] |= VECTOR_CHANGED;
+        }
+    }
+
+    /**
+     * Writes a vector that was set through the attached property to the store.
+     */
+    void pushVector(Node node, Point2D vector) {
+        int id = idOf(node);
+        if (id >= 0) {
+            flags[id] &= ~VECTOR_CHANGED;
+            // Publishing the vector of a body writes back the vector it already
+            // has, which mustn't wake it
+            if (vx[id] != vector.getX() || vy[id] != vector.getY()) {
+                vx[id] = vector.getX();
+                vy[id] = vector.getY();
+                wake(id);
+            }
+        }
+    }
+
+    /**
+     * Returns the current vector of a Node, reusing the value of its attached
+     * property if it is up to date.
+     */
+    Point2D getVector(Node node, Point2D published) {
+        int id = idOf(node);
+        if (id < 0 || (flags[id] & VECTOR_CHANGED) == 0) {
+            return published;
+        }
+        return new Point2D(vx[id], vy[id]);
+    }
+
+    /**
+     * Publishes the vectors that were changed by the physics to the attached
+     * vector properties.
+     */
+    void publishVectors() {
+        for (int id = 0; id < size; id++) {
+            if ((flags[id] & VECTOR_CHANGED) != 0) {
+                publishVector(id);
+            }
+        }
+    }
+
+    private void publishVector(int id) {
+        if ((flags[id] & VECTOR_CHANGED) != 0) {
+            flags[id] &= ~VECTOR_CHANGED;
+            TactilePane.vectorProperty(nodes[id]).set(new Point2D(vx[id], vy[id]));
+        }
+    }
+
+    // BOUNDS
+
+    boolean isDirty(int id) {
+        // Bounds of Nodes that aren't active aren't watched for changes
+        return (flags[id] & (DIRTY | ACTIVE)) != ACTIVE;
+    }
+
+    boolean isDirty(Node node) {
+        int id = idOf(node);
+        return id < 0 || isDirty(id);
+    }
+
+    void setDirty(Node node, boolean dirty) {
+        setDirty(node, dirty, dirty);
+    }
+
+    /**
+     * Marks the cached scene bounds of a Node as dirty or clean, and, if
+     * localDirty, its cached pane-local bounds as dirty. The pane-local bounds
+     * don't change when only the TactilePane or its ancestors move.
+     */
+    void setDirty(Node node, boolean dirty, boolean localDirty) {
+        int id = idOf(node);
+        if (id >= 0) {
+            setFlag(id, DIRTY, dirty);
+            if (dirty) {
+                flags[id] |= SHAPE_DIRTY;
+            }
+            if (localDirty) {
+                flags[id] |= LOCAL_DIRTY;
+            }
+            if (dirty) {
+                wake(id);
+            }
+        }
+    }
+
+    /**
+     * Marks the cached bounds of all bodies as dirty, and wakes them.
+     */
+    void invalidateBounds() {
+        for (int id = 0; id < size; id++) {
+            flags[id] |= DIRTY | SHAPE_DIRTY;
+        }
+        wakeAll();
+    }
+
+    /**
+     * Marks all bodies as not inserted in the broad phase, after it has been
+     * replaced, and wakes them.
+     */
+    void invalidateIndex() {
+        for (int id = 0; id < size; id++) {
+            flags[id] &= ~INDEXED;
+        }
+        wakeAll();
+    }
+
+    boolean isLocalDirty(int id) {
+        return (flags[id] & (LOCAL_DIRTY | ACTIVE)) != ACTIVE;
+    }
+
+    /**
+     * Recomputes the cached bounds of a body in the coordinate space of the
+     * given TactilePane if they are dirty.
+     */
+    void updateLocalBounds(int id, Node pane) {
+        if (isLocalDirty(id)) {
+            localBounds(nodes[id], pane, scratchBounds);
+            localMinX[id] = scratchBounds[0];
+            localMinY[id] = scratchBounds[1];
+            localMaxX[id] = scratchBounds[2];
+            localMaxY[id] = scratchBounds[3];
+            flags[id] &= ~LOCAL_DIRTY;
+        }
+    }
+
+    /**
+     * Computes the bounds of a Node in the coordinate space of the given
+     * TactilePane, and stores them in result as minX, minY, maxX and maxY.
+     * Like {@code pane.sceneToLocal(node.localToScene(node.getBoundsInLocal()))},
+     * but for Nodes inside the TactilePane it only walks the transforms up to
+     * the TactilePane, and it doesn't allocate.
+     */
+    static void localBounds(Node node, Node pane, double[] result) {
+        if (node.getParent() == pane) {
+            parentBounds(node, result);
+            return;
+        }
+        Bounds bounds = node.getBoundsInLocal();
+
+        // Concatenate the transforms from the Node to the TactilePane
+        double mxx = 1, mxy = 0, tx = 0, myx = 0, myy = 1, ty = 0;
+        Node current = node;
+        while (current != null && current != pane) {
+            Transform t = current.getLocalToParentTransform();
+            double nxx = t.getMxx() * mxx + t.getMxy() * myx;
+            double nxy = t.getMxx() * mxy + t.getMxy() * myy;
+            double ntx = t.getMxx() * tx + t.getMxy() * ty + t.getTx();
+            double nyx = t.getMyx() * mxx + t.getMyy() * myx;
+            double nyy = t.getMyx() * mxy + t.getMyy() * myy;
+            double nty = t.getMyx() * tx + t.getMyy() * ty + t.getTy();
+            mxx = nxx; mxy = nxy; tx = ntx;
+            myx = nyx; myy = nyy; ty = nty;
+            current = current.getParent();
+        }
+        if (current == null) {
+            // Not inside the TactilePane: go through the scene instead
+            Transform t = node.getLocalToSceneTransform();
+            transform(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY(),
+                    t.getMxx(), t.getMxy(), t.getTx(), t.getMyx(), t.getMyy(), t.getTy(), result);
+            Transform p = pane.getLocalToSceneTransform();
+            double det = p.getMxx() * p.getMyy() - p.getMxy() * p.getMyx();
+            if (det == 0) return;
+            double ixx = p.getMyy() / det, ixy = -p.getMxy() / det;
+            double iyx = -p.getMyx() / det, iyy = p.getMxx() / det;
+            transform(result[0], result[1], result[2], result[3],
+                    ixx, ixy, -(ixx * p.getTx() + ixy * p.getTy()),
+                    iyx, iyy, -(iyx * p.getTx() + iyy * p.getTy()), result);
+            return;
+        }
+        transform(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY(),
+                mxx, mxy, tx, myx, myy, ty, result);
+    }
+
+    /**
+     * Computes the bounds of a Node in the coordinate space of its parent, and
+     * stores them in result as minX, minY, maxX and maxY. Like
+     * {@code node.getBoundsInParent()}, but if the Node is only translated, it
+     * doesn't allocate: the bounds in parent are then recomputed by JavaFX
+     * every time the Node moves, while its bounds in local stay the same.
+     */
+    static void parentBounds(Node node, double[] result) {
+        Bounds bounds;
+        if (isTranslated(node)) {
+            bounds = node.getBoundsInLocal();
+            double x = node.getLayoutX() + node.getTranslateX();
+            double y = node.getLayoutY() + node.getTranslateY();
+            result[0] = bounds.getMinX() + x;
+            result[1] = bounds.getMinY() + y;
+            result[2] = bounds.getMaxX() + x;
+            result[3] = bounds.getMaxY() + y;
+        } else {
+            bounds = node.getBoundsInParent();
+            result[0] = bounds.getMinX();
+            result[1] = bounds.getMinY();
+            result[2] = bounds.getMaxX();
+            result[3] = bounds.getMaxY();
+        }
+    }
+
+    // Whether the only transform from a Node to its parent is a translation
+    private static boolean isTranslated(Node node) {
+        return node.getRotate() == 0 && node.getScaleX() == 1 && node.getScaleY() == 1 && node.getTransforms().isEmpty();
+    }
+
+    // Stores the bounds of the given bounds transformed by an affine transform in result
+    private static void transform(double minX, double minY, double maxX, double maxY,
+            double mxx, double mxy, double tx, double myx, double myy, double ty, double[] result) {
+        double x1 = mxx * minX, x2 = mxx * maxX;
+        double y1 = mxy * minY, y2 = mxy * maxY;
+        double resultMinX = Math.min(x1, x2) + Math.min(y1, y2) + tx;
+        double resultMaxX = Math.max(x1, x2) + Math.max(y1, y2) + tx;
+        x1 = myx * minX;
+        x2 = myx * maxX;
+        y1 = myy * minY;
+        y2 = myy * maxY;
+        result[0] = resultMinX;
+        result[1] = Math.min(x1, x2) + Math.min(y1, y2) + ty;
+        result[2] = resultMaxX;
+        result[3] = Math.max(x1, x2) + Math.max(y1, y2) + ty;
+    }
+
+    /**
+     * Recomputes the cached scene bounds of a body if they are dirty.
+     */
+    void updateBounds(int id) {
+        if (isDirty(id)) {
+            // The first time a continuous body moves after a collision check,
+            // remember where it came from
+            if ((flags[id] & (CONTINUOUS | INDEXED | SWEPT)) == (CONTINUOUS | INDEXED)) {
+                startMinX[id] = minX[id];
+                startMinY[id] = minY[id];
+                startMaxX[id] = maxX[id];
+                startMaxY[id] = maxY[id];
+                flags[id] |= SWEPT;
+            }
+
+            // Same result as localToScene(getBoundsInLocal()), but without
+            // allocating a new Bounds for every call. The transform of the
+            // parent, unlike that of the Node, isn't recomputed when only the
+            // Node moved
+            Node node = nodes[id];
+            Parent parent = node.getParent();
+            if (parent != null && isTranslated(node)) {
+                parentBounds(node, scratchBounds);
+                Transform t = parent.getLocalToSceneTransform();
+                transform(scratchBounds[0], scratchBounds[1], scratchBounds[2], scratchBounds[3],
+                        t.getMxx(), t.getMxy(), t.getTx(), t.getMyx(), t.getMyy(), t.getTy(), scratchBounds);
+            } else {
+                Bounds bounds = node.getBoundsInLocal();
+                Transform t = node.getLocalToSceneTransform();
+                transform(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY(),
+                        t.getMxx(), t.getMxy(), t.getTx(), t.getMyx(), t.getMyy(), t.getTy(), scratchBounds);
+            }
+            minX[id] = scratchBounds[0];
+            minY[id] = scratchBounds[1];
+            maxX[id] = scratchBounds[2];
+            maxY[id] = scratchBounds[3];
+        }
+    }
+
+    // SHAPES
+
+    /**
+     * Recomputes the cached collision shape of a body in scene coordinates if
+     * it is dirty, after its scene bounds have been brought up to date. The
+     * shape is derived from the Node again only when its local bounds changed.
+     */
+    void updateShape(int id) {
+        if ((flags[id] & (SHAPE_DIRTY | ACTIVE)) == ACTIVE) return;
+        flags[id] &= ~SHAPE_DIRTY;
+
+        Node node = nodes[id];
+        CollisionShape shape = shapes[id];
+        if (shape == null) {
+            Bounds local = node.getBoundsInLocal();
+            if (derivedFrom[id] != local) {
+                derivedShapes[id] = CollisionShape.of(node);
+                derivedFrom[id] = local;
+            }
+            shape = derivedShapes[id];
+        }
+
+        if (shape == null) {
+            setFlag(id, SHAPED, false);
+            double[] points = shapePoints(id, 4);
+            points[0] = minX[id]; points[1] = minY[id];
+            points[2] = maxX[id]; points[3] = minY[id];
+            points[4] = maxX[id]; points[5] = maxY[id];
+            points[6] = minX[id]; points[7] = maxY[id];
+            shapeRadius[id] = 0;
+            return;
+        }
+
+        setFlag(id, SHAPED, true);
+        // As in updateBounds, go through the transform of the parent if the Node is only translated
+        Parent parent = node.getParent();
+        Transform t;
+        double offsetX = 0, offsetY = 0;
+        if (parent != null && isTranslated(node)) {
+            t = parent.getLocalToSceneTransform();
+            offsetX = node.getLayoutX() + node.getTranslateX();
+            offsetY = node.getLayoutY() + node.getTranslateY();
+        } else {
+            t = node.getLocalToSceneTransform();
+        }
+        int count = shape.points.length / 2;
+        double[] points = shapePoints(id, count);
+        for (int i = 0; i < 2 * count; i += 2) {
+            double x = shape.points[i] + offsetX, y = shape.points[i + 1] + offsetY;
+            points[i] = t.getMxx() * x + t.getMxy() * y + t.getTx();
+            points[i + 1] = t.getMyx() * x + t.getMyy() * y + t.getTy();
+        }
+        // A circle that is scaled unevenly becomes an ellipse, which is
+        // approximated by a circle with the same area
+        shapeRadius[id] = shape.radius * Math.sqrt(Math.abs(t.getMxx() * t.getMyy() - t.getMxy() * t.getMyx()));
+    }
+
+    /**
+     * Returns the distance between the cached collision shapes of two bodies,
+     * which is 0 or less if they intersect.
+     */
+    double shapeDistance(int id, int otherId) {
+        return CollisionShape.distance(shapePoints[id], shapePointCount[id], shapeRadius[id],
+                shapePoints[otherId], shapePointCount[otherId], shapeRadius[otherId]);
+    }
+
+    // Returns an array for the cached shape of a body that fits count points
+    private double[] shapePoints(int id, int count) {
+        if (shapePoints[id] == null || shapePoints[id].length < 2 * count) {
+            shapePoints[id] = new double[2 * count];
+        }
+        shapePointCount[id] = count;
+        return shapePoints[id];
+    }
+}
@@ -0,0 +1,333 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import java.util.Arrays;
+
+import javafx.geometry.Bounds;
+import javafx.scene.Node;
+import javafx.scene.transform.Transform;
+
+/**
+ * The Bonds between the bodies of a BodyStore, as a list of pair constraints
+ * that is solved in one batch per physics step.
+ * <p>
+ * A Bond of Node A with Node B only pulls A towards B. When B also has a Bond
+ * with A, both Bonds are merged into a single constraint, so the distance
+ * between A and B is only computed once and the forces on A and B are equal
+ * and opposite.
+ * <p>
+ * The constraints are rebuilt from the sets of Bonds when they have been
+ * invalidated, which the BodyStore does whenever a set of Bonds changes or a
+ * body is registered or deregistered. The distance and force multiplier of a
+ * Bond are read at the start of solving, so they may change at any time.
+ * <p>
+ * Solving only uses primitive arrays indexed by the ids of the bodies, so a
+ * PhysicsWorker solves a {@link #copyFrom(BodyStore, Node) copy} of the graph
+ * with the same code, on its own copy of the state of the bodies.
+ */
+final class BondGraph {
+    private boolean valid;
+
+    // Number of constraints
+    int count;
+    // The body that is pulled by a constraint
+    private int[] from = new int[0];
+    // The body it is pulled towards, or -1 if the bond Node is not a body
+    private int[] to = new int[0];
+    // The Bond of from, and the Bond of to with from (or null)
+    private Bond[] bonds = new Bond[0];
+    private Bond[] reverseBonds = new Bond[0];
+    // Distance and force multiplier of both Bonds, as of the start of solving,
+    // and whether there is a Bond of to with from
+    private double[] distance = new double[0], forceMultiplier = new double[0];
+    private double[] reverseDistance = new double[0], reverseForceMultiplier = new double[0];
+    private boolean[] mutual = new boolean[0];
+    // Center of the bond Node, if it is not a body
+    private double[] targetX = new double[0], targetY = new double[0];
+
+    // Center of every body as of the start of solving, in scene coordinates,
+    // or in the coordinate space of the TactilePane for a copy
+    double[] centerX = new double[0], centerY = new double[0];
+    // Stamp of the last update of the center of every body
+    private int[] centerStamps = new int[0];
+    private int stamp;
+    // Scratch space for the bounds of bond Nodes that aren't bodies
+    private final double[] targetBounds = new double[4];
+    // Correction of the center of every body by the last call to solvePositions
+    double[] correctionX = new double[0], correctionY = new double[0];
+
+    /**
+     * Marks the constraints as out of date.
+     */
+    void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Rebuilds the constraints if they are out of date.
+     */
+    void update(BodyStore bodies) {
+        if (valid) return;
+
+        count = 0;
+        for (int id = 0; id < bodies.size; id++) {
+            // Only children are moved by the physics
+            if ((bodies.flags[id] & (BodyStore.CHILD | BodyStore.BONDED)) != (BodyStore.CHILD | BodyStore.BONDED)) continue;
+
+            Node node = bodies.nodes[id];
+            Bond[] nodeBonds = bodies.bonds[id];
+            for (int i = 0; i < nodeBonds.length && nodeBonds[i] != null; i++) {
+                Bond bond = nodeBonds[i];
+                Node other = bond.getBondNode();
+                if (other == node) continue;
+
+                int otherId = bodies.idOf(other);
+                Bond reverse = otherId < 0 || !bodies.hasFlag(otherId, BodyStore.CHILD) ? null : findBond(bodies, otherId, node);
+                if (reverse != null && otherId < id) {
+                    // Merged into the constraint of the other body
+                    continue;
+                }
+                add(id, otherId, bond, reverse);
+            }
+        }
+        // Let go of the Bonds of removed constraints
+        Arrays.fill(bonds, count, bonds.length, null);
+        Arrays.fill(reverseBonds, count, reverseBonds.length, null);
+        valid = true;
+    }
+
+    /**
+     * Adds the forces of all Bonds to the vectors of the bodies they pull.
+     *
+     * @param scale scalar by which the forces are multiplied
+     */
+    void solveForces(BodyStore bodies, double scale) {
+        updateCenters(bodies);
+        readBonds();
+        solveForces(bodies.vx, bodies.vy, bodies.flags, scale);
+    }
+
+    /**
+     * Adds the forces of all Bonds to the given vectors, using the current
+     * centers of the bodies. Marks the vectors that change as
+     * {@link BodyStore#VECTOR_CHANGED changed} in flags.
+     *
+     * @param scale scalar by which the forces are multiplied
+     */
+    void solveForces(double[] vx, double[] vy, int[] flags, double scale) {
+        for (int c = 0; c < count; c++) {
+            int a = from[c];
+            int b = to[c];
+            double distanceX = centerX[a] - (b < 0 ? targetX[c] : centerX[b]);
+            double distanceY = centerY[a] - (b < 0 ? targetY[c] : centerY[b]);
+            double magnitude = Math.hypot(distanceX, distanceY);
+            if (magnitude == 0) continue;
+
+            double force = - forceMultiplier[c] * scale * (magnitude - distance[c]) / magnitude;
+            addVector(vx, vy, flags, a, distanceX * force, distanceY * force);
+
+            if (mutual[c]) {
+                if (reverseForceMultiplier[c] != forceMultiplier[c] || reverseDistance[c] != distance[c]) {
+                    force = - reverseForceMultiplier[c] * scale * (magnitude - reverseDistance[c]) / magnitude;
+                }
+                addVector(vx, vy, flags, b, - distanceX * force, - distanceY * force);
+            }
+        }
+    }
+
+    /**
+     * Moves the bodies towards the distances of their Bonds directly, by
+     * projecting the constraints on their positions the given number of times.
+     * The force multiplier of a Bond is used as its stiffness: the fraction of
+     * the error that is corrected per iteration (at most 1). Bodies that are
+     * in use, anchored or asleep are not moved.
+     * <p>
+     * Instead of moving the bodies, the total correction of the center of every
+     * body, in scene coordinates, is left in correctionX and correctionY.
+     */
+    void solvePositions(BodyStore bodies, int iterations) {
+        updateCenters(bodies);
+        readBonds();
+        solvePositions(bodies.flags, bodies.size, iterations);
+    }
+
+    /**
+     * Projects the constraints on the current centers of the bodies, in the
+     * same way as {@link #solvePositions(BodyStore, int)}, and leaves the
+     * corrections of the first size bodies in correctionX and correctionY.
+     */
+    void solvePositions(int[] flags, int size, int iterations) {
+        Arrays.fill(correctionX, 0, size, 0);
+        Arrays.fill(correctionY, 0, size, 0);
+
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            for (int c = 0; c < count; c++) {
+                int a = from[c];
+                int b = to[c];
+                double weightA = isMovable(flags[a]) ? 1 : 0;
+                double weightB = mutual[c] && isMovable(flags[b]) ? 1 : 0;
+                if (weightA + weightB == 0) continue;
+
+                double distanceX = centerX[a] + correctionX[a] - (b < 0 ? targetX[c] : centerX[b] + correctionX[b]);
+                double distanceY = centerY[a] + correctionY[a] - (b < 0 ? targetY[c] : centerY[b] + correctionY[b]);
+                double magnitude = Math.hypot(distanceX, distanceY);
+                if (magnitude == 0) continue;
+
+                double stiffness = Math.min(1, forceMultiplier[c]);
+                double correction = - stiffness * (magnitude - distance[c]) / magnitude / (weightA + weightB);
+                correctionX[a] += distanceX * correction * weightA;
+                correctionY[a] += distanceY * correction * weightA;
+                if (weightB != 0) {
+                    correctionX[b] -= distanceX * correction * weightB;
+                    correctionY[b] -= distanceY * correction * weightB;
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes this graph a copy of the BondGraph of the given BodyStore, which
+     * must be up to date. The distances and force multipliers of the Bonds are
+     * copied as they are now, and the centers of bond Nodes that aren't
+     * children are computed in the coordinate space of the given TactilePane.
+     * The centers of the children are left to the caller.
+     */
+    void copyFrom(BodyStore bodies, Node pane) {
+        BondGraph graph = bodies.bondGraph;
+        if (from.length < graph.count) {
+            grow(graph.count);
+        }
+        count = graph.count;
+        graph.readBonds();
+        System.arraycopy(graph.from, 0, from, 0, count);
+        System.arraycopy(graph.to, 0, to, 0, count);
+        System.arraycopy(graph.distance, 0, distance, 0, count);
+        System.arraycopy(graph.forceMultiplier, 0, forceMultiplier, 0, count);
+        System.arraycopy(graph.reverseDistance, 0, reverseDistance, 0, count);
+        System.arraycopy(graph.reverseForceMultiplier, 0, reverseForceMultiplier, 0, count);
+        System.arraycopy(graph.mutual, 0, mutual, 0, count);
+
+        for (int c = 0; c < count; c++) {
+            // Bond Nodes that aren't children aren't moved by the physics
+            if (to[c] < 0 || !bodies.hasFlag(to[c], BodyStore.CHILD)) {
+                to[c] = -1;
+                BodyStore.localBounds(graph.bonds[c].getBondNode(), pane, targetBounds);
+                targetX[c] = (targetBounds[0] + targetBounds[2]) / 2;
+                targetY[c] = (targetBounds[1] + targetBounds[3]) / 2;
+            }
+        }
+    }
+
+    /**
+     * Makes room for the centers and corrections of the given number of bodies.
+     */
+    void ensureCapacity(int capacity) {
+        if (centerX.length < capacity) {
+            centerX = new double[capacity];
+            centerY = new double[capacity];
+            correctionX = new double[capacity];
+            correctionY = new double[capacity];
+            centerStamps = new int[capacity];
+        }
+    }
+
+    // HELP METHODS
+
+    private void add(int a, int b, Bond bond, Bond reverse) {
+        if (count == from.length) {
+            grow(Math.max(8, count * 2));
+        }
+        from[count] = a;
+        to[count] = b;
+        bonds[count] = bond;
+        reverseBonds[count] = reverse;
+        count++;
+    }
+
+    private void grow(int capacity) {
+        from = Arrays.copyOf(from, capacity);
+        to = Arrays.copyOf(to, capacity);
+        bonds = Arrays.copyOf(bonds, capacity);
+        reverseBonds = Arrays.copyOf(reverseBonds, capacity);
+        distance = Arrays.copyOf(distance, capacity);
+        forceMultiplier = Arrays.copyOf(forceMultiplier, capacity);
+        reverseDistance = Arrays.copyOf(reverseDistance, capacity);
+        reverseForceMultiplier = Arrays.copyOf(reverseForceMultiplier, capacity);
+        mutual = Arrays.copyOf(mutual, capacity);
+        targetX = Arrays.copyOf(targetX, capacity);
+        targetY = Arrays.copyOf(targetY, capacity);
+    }
+
+    // Reads the distances and force multipliers of the Bonds of all constraints
+    private void readBonds() {
+        for (int c = 0; c < count; c++) {
+            Bond bond = bonds[c];
+            Bond reverse = reverseBonds[c];
+            distance[c] = bond.getDistance();
+            forceMultiplier[c] = bond.getForceMultiplier();
+            mutual[c] = reverse != null;
+            if (reverse != null) {
+                reverseDistance[c] = reverse.getDistance();
+                reverseForceMultiplier[c] = reverse.getForceMultiplier();
+            }
+        }
+    }
+
+    private static void addVector(double[] vx, double[] vy, int[] flags, int id, double deltaX, double deltaY) {
+        // A body only sleeps once the forces on it are too small to move it
+        if ((flags[id] & BodyStore.SLEEPING) != 0) return;
+        double vectorX = vx[id] + deltaX;
+        double vectorY = vy[id] + deltaY;
+        if (vectorX != vx[id] || vectorY != vy[id]) {
+            vx[id] = vectorX;
+            vy[id] = vectorY;
+            flags[id] |= BodyStore.VECTOR_CHANGED;
+        }
+    }
+
+    // Returns the Bond of a body with the given Node, or null
+    private static Bond findBond(BodyStore bodies, int id, Node bondNode) {
+        Bond[] nodeBonds = bodies.bonds[id];
+        for (int i = 0; i < nodeBonds.length && nodeBonds[i] != null; i++) {
+            if (nodeBonds[i].getBondNode() == bondNode) {
+                return nodeBonds[i];
+            }
+        }
+        return null;
+    }
+
+    private static boolean isMovable(int flags) {
+        return (flags & BodyStore.CHILD) != 0 && (flags & (BodyStore.IN_USE | BodyStore.ANCHORED | BodyStore.SLEEPING)) == 0;
+    }
+
+    // Computes the centers of all bodies and bond Nodes that take part in a constraint
+    private void updateCenters(BodyStore bodies) {
+        ensureCapacity(bodies.nodes.length);
+        stamp++;
+
+        for (int c = 0; c < count; c++) {
+            updateCenter(bodies, from[c]);
+            int b = to[c];
+            if (b >= 0) {
+                updateCenter(bodies, b);
+            } else {
+                // Same as the center of localToScene(getBoundsInLocal()), without allocating
+                Node other = bonds[c].getBondNode();
+                Bounds bounds = other.getBoundsInLocal();
+                Transform t = other.getLocalToSceneTransform();
+                double x = (bounds.getMinX() + bounds.getMaxX()) / 2;
+                double y = (bounds.getMinY() + bounds.getMaxY()) / 2;
+                targetX[c] = t.getMxx() * x + t.getMxy() * y + t.getTx();
+                targetY[c] = t.getMyx() * x + t.getMyy() * y + t.getTy();
+            }
+        }
+    }
+
+    private void updateCenter(BodyStore bodies, int id) {
+        if (centerStamps[id] == stamp) return;
+        centerStamps[id] = stamp;
+        
+        bodies.updateBounds(id);
+        centerX[id] = (bodies.minX[id] + bodies.maxX[id]) / 2;
+        centerY[id] = (bodies.minY[id] + bodies.maxY[id]) / 2;
+    }
+}
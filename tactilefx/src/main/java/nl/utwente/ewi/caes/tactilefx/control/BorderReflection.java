@@ -0,0 +1,88 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+/**
+ * Computes how a body bounces off the borders of its TactilePane when it is
+ * translated by a given delta. Instances hold the result of the last call to
+ * {@link #compute compute}, so they can be reused by the physics loop without
+ * allocating.
+ */
+final class BorderReflection {
+    /**
+     * The number of walls a body bounces off in a single step at most. A body
+     * that barely fits between two walls would otherwise bounce back and forth
+     * between them for as long as its delta lasts; the delta that remains after
+     * the last bounce is dropped.
+     */
+    static final int MAX_BOUNCES = 4;
+
+    // The part of the delta that moves the body up to the wall it collides with
+    double wallDeltaX, wallDeltaY;
+    // The remainder of the delta after bouncing off that wall
+    double reflectedX, reflectedY;
+
+    /**
+     * Computes whether a body with the given bounds collides with a border of
+     * the pane when it is translated by (deltaX, deltaY). If it does, the
+     * fields of this object describe the bounce; if it doesn't, the body can
+     * simply be translated and the fields are left untouched.
+     *
+     * @return whether the body collides with a border
+     */
+    boolean compute(double minX, double minY, double maxX, double maxY, double deltaX, double deltaY,
+            double paneMinX, double paneMinY, double paneMaxX, double paneMaxY) {
+
+        // The bounds this body would get when it would be translated by deltaX and deltaY
+        double destinationMinX = minX + deltaX;
+        double destinationMinY = minY + deltaY;
+        double destinationMaxX = maxX + deltaX;
+        double destinationMaxY = maxY + deltaY;
+
+        if (destinationMinX >= paneMinX && destinationMaxX <= paneMaxX
+                && destinationMinY >= paneMinY && destinationMaxY <= paneMaxY) {
+            return false;
+        }
+
+        // The fraction of the delta after which the body hits a vertical and a
+        // horizontal wall; a body that is already past a wall bounces right
+        // away, unless it doesn't fit between the walls at all. A body that
+        // fits exactly would bounce between them without moving, so it counts
+        // as not fitting.
+        double timeX = Double.POSITIVE_INFINITY;
+        if (maxX - minX >= paneMaxX - paneMinX) {
+            // Ignore the vertical walls
+        } else if (deltaX < 0 && destinationMinX < paneMinX) {
+            timeX = Math.max(0, (paneMinX - minX) / deltaX);
+        } else if (deltaX > 0 && destinationMaxX > paneMaxX) {
+            timeX = Math.max(0, (paneMaxX - maxX) / deltaX);
+        }
+        double timeY = Double.POSITIVE_INFINITY;
+        if (maxY - minY >= paneMaxY - paneMinY) {
+            // Ignore the horizontal walls
+        } else if (deltaY < 0 && destinationMinY < paneMinY) {
+            timeY = Math.max(0, (paneMinY - minY) / deltaY);
+        } else if (deltaY > 0 && destinationMaxY > paneMaxY) {
+            timeY = Math.max(0, (paneMaxY - maxY) / deltaY);
+        }
+
+        if (timeX == Double.POSITIVE_INFINITY && timeY == Double.POSITIVE_INFINITY) {
+            // The body is outside of the pane already, and moving back in
+            return false;
+        }
+
+        // Move up to the first wall that is hit, and reflect the remainder of
+        // the delta off that wall only; a wall that is hit later on is handled
+        // when the remainder is applied. A corner reflects off both.
+        double time = Math.min(timeX, timeY);
+        wallDeltaX = deltaX * time;
+        wallDeltaY = deltaY * time;
+        reflectedX = deltaX - wallDeltaX;
+        reflectedY = deltaY - wallDeltaY;
+        if (timeX <= timeY) {
+            reflectedX = -reflectedX;
+        }
+        if (timeY <= timeX) {
+            reflectedY = -reflectedY;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,80 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import javafx.scene.Node;
+
+/**
+ * A spatial index that a {@link TactilePane} uses to find the pairs of active
+ * {@code Nodes} that may collide or be in each other's proximity, before it
+ * tests them exactly. This is the broad phase of collision detection.
+ * <p>
+ * The TactilePane keeps the index up to date: it inserts every active Node,
+ * updates it whenever its bounds change and removes it when it stops being
+ * active. The bounds it passes are the bounds of the Node in scene
+ * coordinates, enlarged on every side by a margin that depends on the
+ * proximity radius of the Node, so two Nodes are candidates for each other
+ * whenever their stored bounds intersect.
+ * <p>
+ * Which implementation works best depends on the content of the pane. A
+ * {@link QuadTree}, the default, adapts to Nodes of very different sizes. A
+ * {@link SpatialHashGrid} is faster for many Nodes of about the same size. A
+ * {@link SweepAndPrune} is fastest when most Nodes only move a little per
+ * step. A {@link DynamicAabbTree} handles a mix of tiny and huge Nodes best,
+ * and skips updates of Nodes that barely moved. An
+ * instance may only be used by one TactilePane at a time, and only from the
+ * JavaFX Application Thread.
+ *
+ * @see TactilePane#broadPhaseProperty()
+ */
+public interface BroadPhase {
+
+    /**
+     * Sets the region in which most Nodes are expected to be, in scene
+     * coordinates. The TactilePane calls this with its own bounds whenever
+     * they change. Nodes outside of this region must still be supported.
+     * Implementations that don't need to know the region may ignore it.
+     */
+    default void setBounds(double minX, double minY, double maxX, double maxY) {
+    }
+
+    /**
+     * Adds a Node to the index with the given bounds. Inserting a Node that
+     * is already in the index is the same as updating it.
+     */
+    void insert(Node node, double minX, double minY, double maxX, double maxY);
+
+    /**
+     * Changes the bounds of a Node that is in the index. Updating a Node that
+     * is not in the index is the same as inserting it.
+     */
+    void update(Node node, double minX, double minY, double maxX, double maxY);
+
+    /**
+     * Removes a Node from the index. Removing a Node that is not in the index
+     * has no effect.
+     */
+    void remove(Node node);
+
+    /**
+     * Passes every Node whose bounds intersect the given bounds to the
+     * consumer, each exactly once. Nodes whose bounds don't intersect them
+     * may be passed as well, so callers still need to test the candidates.
+     * The index may not be changed by the consumer.
+     */
+    void query(double minX, double minY, double maxX, double maxY, Consumer<? super Node> consumer);
+
+    /**
+     * Passes every pair of Nodes in the index whose bounds intersect to the
+     * consumer, each pair exactly once and in no particular order. Pairs whose
+     * bounds don't intersect may be passed as well, so callers still need to
+     * test them. The index may not be changed by the consumer.
+     */
+    void queryPairs(BiConsumer<? super Node, ? super Node> consumer);
+
+    /**
+     * Removes all Nodes from the index.
+     */
+    void clear();
+}
@@ -0,0 +1,424 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import java.util.Arrays;
+
+import javafx.scene.Node;
+import javafx.scene.shape.Circle;
+import javafx.scene.shape.Line;
+import javafx.scene.shape.Polygon;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.shape.Shape;
+import javafx.scene.shape.StrokeLineCap;
+import javafx.scene.shape.StrokeLineJoin;
+import javafx.scene.shape.StrokeType;
+
+/**
+ * <p>
+ * The shape of a Node as used for collision detection, in the local coordinate
+ * space of that Node. When {@link TactilePane#shapeCollisionDetectionProperty()
+ * shapeCollisionDetection} is enabled, two active Nodes whose bounds intersect
+ * only collide if their collision shapes intersect as well.
+ * <p>
+ * A collision shape is a convex polygon, rounded by a radius: a circle is a
+ * single point with a radius, a capsule is a line segment with a radius. The
+ * following code gives a Node the shape of a circle with radius 25 around
+ * (25, 25):
+ * <p>
+ * <pre>
+ * TactilePane.setCollisionShape(node, CollisionShape.circle(25, 25, 25));
+ * </pre>
+ * <p>
+ * Active Nodes without a collision shape of their own use the one derived by
+ * {@link #of(Node)}, and Nodes for which none can be derived use their bounds.
+ */
+public final class CollisionShape {
+    // The convex hull of the shape without its radius, as x and y pairs
+    final double[] points;
+    final double radius;
+
+    private CollisionShape(double[] points, double radius) {
+        if (!(radius >= 0)) {
+            throw new IllegalArgumentException("radius must be 0 or larger");
+        }
+        this.points = points;
+        this.radius = radius;
+    }
+
+    /**
+     * Returns a circle.
+     *
+     * @param centerX   the x coordinate of the center
+     * @param centerY   the y coordinate of the center
+     * @param radius    the radius
+     */
+    public static CollisionShape circle(double centerX, double centerY, double radius) {
+        return new CollisionShape(new double[] { centerX, centerY }, radius);
+    }
+
+    /**
+     * Returns a capsule: every point within {@code radius} of the line segment
+     * between the given points.
+     */
+    public static CollisionShape capsule(double startX, double startY, double endX, double endY, double radius) {
+        if (startX == endX && startY == endY) {
+            return circle(startX, startY, radius);
+        }
+        return new CollisionShape(new double[] { startX, startY, endX, endY }, radius);
+    }
+
+    /**
+     * Returns the convex hull of the given points.
+     *
+     * @param points    the x and y coordinates of the points, in pairs
+     */
+    public static CollisionShape polygon(double... points) {
+        if (points == null) {
+            throw new NullPointerException("points may not be null");
+        }
+        if (points.length == 0 || points.length % 2 != 0) {
+            throw new IllegalArgumentException("points must contain at least one pair of coordinates");
+        }
+        return new CollisionShape(convexHull(points), 0);
+    }
+
+    /**
+     * Derives the collision shape of a {@code Circle}, {@code Rectangle},
+     * {@code Polygon} or {@code Line}, including its stroke. A {@code Polygon}
+     * that isn't convex gets its convex hull, and the corners of a
+     * {@code Rectangle} are rounded by the smallest of its arcs.
+     *
+     * @return the derived collision shape, or {@code null} for any other type of Node
+     */
+    public static CollisionShape of(Node node) {
+        if (node instanceof Circle) {
+            Circle circle = (Circle) node;
+            return circle(circle.getCenterX(), circle.getCenterY(), circle.getRadius() + strokeExtent(circle));
+        }
+        if (node instanceof Rectangle) {
+            Rectangle rect = (Rectangle) node;
+            double stroke = strokeExtent(rect);
+            double arc = Math.min(Math.min(rect.getArcWidth(), rect.getArcHeight()),
+                    Math.min(rect.getWidth(), rect.getHeight())) / 2;
+            if (arc > 0) {
+                return new CollisionShape(convexHull(rectangle(rect.getX() + arc, rect.getY() + arc,
+                        rect.getX() + rect.getWidth() - arc, rect.getY() + rect.getHeight() - arc)), arc + stroke);
+            }
+            return stroked(convexHull(rectangle(rect.getX(), rect.getY(),
+                    rect.getX() + rect.getWidth(), rect.getY() + rect.getHeight())), rect, stroke);
+        }
+        if (node instanceof Polygon) {
+            Polygon polygon = (Polygon) node;
+            int count = polygon.getPoints().size() & ~1;
+            if (count == 0) return null;
+            double[] points = new double[count];
+            for (int i = 0; i < count; i++) {
+                points[i] = polygon.getPoints().get(i);
+            }
+            return stroked(convexHull(points), polygon, strokeExtent(polygon));
+        }
+        if (node instanceof Line) {
+            return line((Line) node);
+        }
+        return null;
+    }
+
+    /**
+     * @return the radius by which the polygon of this shape is rounded
+     */
+    public double getRadius() {
+        return radius;
+    }
+
+    @Override
+    public String toString() {
+        return "CollisionShape[points=" + Arrays.toString(points) + ", radius=" + radius + "]";
+    }
+
+    // HELP METHODS
+
+    private static double[] rectangle(double minX, double minY, double maxX, double maxY) {
+        return new double[] { minX, minY, maxX, minY, maxX, maxY, minX, maxY };
+    }
+
+    // Returns a convex hull grown by the stroke of a Shape, with the corners
+    // joined the way the stroke joins them
+    private static CollisionShape stroked(double[] hull, Shape shape, double stroke) {
+        int count = hull.length / 2;
+        if (stroke == 0 || count < 3 || shape.getStrokeLineJoin() == StrokeLineJoin.ROUND) {
+            return new CollisionShape(hull, stroke);
+        }
+
+        // Every corner becomes the point where the grown edges meet (a miter),
+        // or both ends of the grown edges if it is cut off (a bevel)
+        double[] points = new double[4 * count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            int previous = 2 * ((i + count - 1) % count), current = 2 * i, next = 2 * ((i + 1) % count);
+            // Outward normals of the edges before and after the corner, for a counterclockwise hull
+            double n1x = hull[current + 1] - hull[previous + 1], n1y = hull[previous] - hull[current];
+            double n2x = hull[next + 1] - hull[current + 1], n2y = hull[current] - hull[next];
+            double length1 = Math.hypot(n1x, n1y), length2 = Math.hypot(n2x, n2y);
+            n1x /= length1; n1y /= length1;
+            n2x /= length2; n2y /= length2;
+
+            double dot = n1x * n2x + n1y * n2y;
+            // The ratio between the length of the miter and the width of the stroke
+            double miter = Math.sqrt(2 / (1 + dot));
+            if (shape.getStrokeLineJoin() == StrokeLineJoin.MITER && miter <= shape.getStrokeMiterLimit()) {
+                points[size++] = hull[current] + stroke * (n1x + n2x) / (1 + dot);
+                points[size++] = hull[current + 1] + stroke * (n1y + n2y) / (1 + dot);
+            } else {
+                points[size++] = hull[current] + stroke * n1x;
+                points[size++] = hull[current + 1] + stroke * n1y;
+                points[size++] = hull[current] + stroke * n2x;
+                points[size++] = hull[current + 1] + stroke * n2y;
+            }
+        }
+        return new CollisionShape(convexHull(Arrays.copyOf(points, size)), 0);
+    }
+
+    // Returns the shape of a Line including its stroke and the caps at its ends
+    private static CollisionShape line(Line line) {
+        double startX = line.getStartX(), startY = line.getStartY();
+        double endX = line.getEndX(), endY = line.getEndY();
+        double stroke = line.getStroke() == null ? 0 : line.getStrokeWidth() / 2;
+        double length = Math.hypot(endX - startX, endY - startY);
+        if (stroke == 0 || length == 0 || line.getStrokeLineCap() == StrokeLineCap.ROUND) {
+            return capsule(startX, startY, endX, endY, stroke);
+        }
+
+        double dx = (endX - startX) / length * stroke, dy = (endY - startY) / length * stroke;
+        if (line.getStrokeLineCap() == StrokeLineCap.SQUARE) {
+            startX -= dx;
+            startY -= dy;
+            endX += dx;
+            endY += dy;
+        }
+        return new CollisionShape(convexHull(new double[] {
+            startX + dy, startY - dx, endX + dy, endY - dx, endX - dy, endY + dx, startX - dy, startY + dx
+        }), 0);
+    }
+
+    // How far the stroke of a Shape reaches outside of its geometry
+    private static double strokeExtent(Shape shape) {
+        if (shape.getStroke() == null) return 0;
+        if (shape.getStrokeType() == StrokeType.OUTSIDE) return shape.getStrokeWidth();
+        if (shape.getStrokeType() == StrokeType.CENTERED) return shape.getStrokeWidth() / 2;
+        return 0;
+    }
+
+    // Returns the convex hull of the given points in counterclockwise order,
+    // without collinear points (monotone chain)
+    private static double[] convexHull(double[] points) {
+        int n = points.length / 2;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (i, j) -> points[2 * i] != points[2 * j]
+                ? Double.compare(points[2 * i], points[2 * j])
+                : Double.compare(points[2 * i + 1], points[2 * j + 1]));
+
+        int[] hull = new int[2 * n];
+        int k = 0;
+        // Lower hull, then upper hull
+        for (int i = 0; i < n; i++) {
+            while (k >= 2 && cross(points, hull[k - 2], hull[k - 1], order[i]) <= 0) k--;
+            hull[k++] = order[i];
+        }
+        for (int i = n - 2, lower = k + 1; i >= 0; i--) {
+            while (k >= lower && cross(points, hull[k - 2], hull[k - 1], order[i]) <= 0) k--;
+            hull[k++] = order[i];
+        }
+        // The last point is the first one again, unless all points are the same
+        int count = Math.max(1, k - 1);
+        if (count == 2 && points[2 * hull[0]] == points[2 * hull[1]] && points[2 * hull[0] + 1] == points[2 * hull[1] + 1]) {
+            count = 1;
+        }
+
+        double[] result = new double[2 * count];
+        for (int i = 0; i < count; i++) {
+            result[2 * i] = points[2 * hull[i]];
+            result[2 * i + 1] = points[2 * hull[i] + 1];
+        }
+        return result;
+    }
+
+    private static double cross(double[] points, int o, int a, int b) {
+        return (points[2 * a] - points[2 * o]) * (points[2 * b + 1] - points[2 * o + 1])
+                - (points[2 * a + 1] - points[2 * o + 1]) * (points[2 * b] - points[2 * o]);
+    }
+
+    // NARROW PHASE
+
+    /**
+     * Returns the distance between two convex polygons, given as the first
+     * count x and y pairs of points and otherPoints, each rounded by its
+     * radius. The distance is 0 or less when they intersect. Only reads its
+     * arguments, so it may be called from any thread.
+     */
+    static double distance(double[] points, int count, double radius,
+            double[] otherPoints, int otherCount, double otherRadius) {
+        return coreDistance(points, count, otherPoints, otherCount) - radius - otherRadius;
+    }
+
+    /**
+     * Computes how two rounded convex polygons, given like for
+     * {@link #distance}, overlap. Stores the unit normal that points from the
+     * first polygon to the second in result[0] and result[1], and the depth by
+     * which they overlap along that normal in result[2], which is negative if
+     * they don't.
+     */
+    static void contact(double[] a, int aCount, double aRadius,
+            double[] b, int bCount, double bRadius, double[] result) {
+        if (coreDistance(a, aCount, b, bCount) > 0) {
+            // Separated cores: the normal runs between their nearest points
+            double best = Double.POSITIVE_INFINITY;
+            int aEdges = aCount < 3 ? 1 : aCount;
+            int bEdges = bCount < 3 ? 1 : bCount;
+            for (int i = 0; i < aEdges; i++) {
+                int i1 = 2 * i, i2 = 2 * ((i + 1) % aCount);
+                for (int j = 0; j < bEdges; j++) {
+                    int j1 = 2 * j, j2 = 2 * ((j + 1) % bCount);
+                    best = nearest(a[i1], a[i1 + 1], b[j1], b[j1 + 1], b[j2], b[j2 + 1], false, best, result);
+                    best = nearest(a[i2], a[i2 + 1], b[j1], b[j1 + 1], b[j2], b[j2 + 1], false, best, result);
+                    best = nearest(b[j1], b[j1 + 1], a[i1], a[i1 + 1], a[i2], a[i2 + 1], true, best, result);
+                    best = nearest(b[j2], b[j2 + 1], a[i1], a[i1 + 1], a[i2], a[i2 + 1], true, best, result);
+                }
+            }
+            result[2] = aRadius + bRadius - best;
+            return;
+        }
+
+        // Intersecting cores: the normal is the edge normal along which they
+        // overlap least (separating axis theorem)
+        double bestOverlap = Double.POSITIVE_INFINITY;
+        double normalX = 1, normalY = 0;
+        for (int polygon = 0; polygon < 2; polygon++) {
+            double[] p = polygon == 0 ? a : b;
+            int count = polygon == 0 ? aCount : bCount;
+            int edges = count < 2 ? 0 : count == 2 ? 1 : count;
+            for (int i = 0; i < edges; i++) {
+                int i1 = 2 * i, i2 = 2 * ((i + 1) % count);
+                double axisX = p[i2 + 1] - p[i1 + 1], axisY = p[i1] - p[i2];
+                double length = Math.hypot(axisX, axisY);
+                if (length == 0) continue;
+                axisX /= length;
+                axisY /= length;
+                double overlap = Math.min(max(a, aCount, axisX, axisY), max(b, bCount, axisX, axisY))
+                        - Math.max(-max(a, aCount, -axisX, -axisY), -max(b, bCount, -axisX, -axisY));
+                if (overlap < bestOverlap) {
+                    bestOverlap = overlap;
+                    normalX = axisX;
+                    normalY = axisY;
+                }
+            }
+        }
+        if (bestOverlap == Double.POSITIVE_INFINITY) {
+            bestOverlap = 0;
+        }
+        // Point the normal from the center of the first polygon to that of the second
+        if ((centroid(b, bCount, 0) - centroid(a, aCount, 0)) * normalX
+                + (centroid(b, bCount, 1) - centroid(a, aCount, 1)) * normalY < 0) {
+            normalX = -normalX;
+            normalY = -normalY;
+        }
+        result[0] = normalX;
+        result[1] = normalY;
+        result[2] = bestOverlap + aRadius + bRadius;
+    }
+
+    // Compares the distance between a point and the line segment s-t with the
+    // best distance so far. If it is shorter, stores the unit vector between
+    // them in result, pointing from the point to the segment unless reversed,
+    // and returns it; otherwise returns best.
+    private static double nearest(double x, double y, double sx, double sy, double tx, double ty,
+            boolean reversed, double best, double[] result) {
+        double dx = tx - sx, dy = ty - sy;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, ((x - sx) * dx + (y - sy) * dy) / lengthSquared));
+        double vectorX = sx + t * dx - x, vectorY = sy + t * dy - y;
+        double distance = Math.hypot(vectorX, vectorY);
+        if (distance >= best || distance == 0) return best;
+
+        double sign = reversed ? -1 : 1;
+        result[0] = sign * vectorX / distance;
+        result[1] = sign * vectorY / distance;
+        return distance;
+    }
+
+    // The largest projection of the points of a polygon on an axis
+    private static double max(double[] p, int count, double axisX, double axisY) {
+        double result = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < 2 * count; i += 2) {
+            result = Math.max(result, p[i] * axisX + p[i + 1] * axisY);
+        }
+        return result;
+    }
+
+    // The average of the x (axis 0) or y (axis 1) coordinates of the points of a polygon
+    private static double centroid(double[] p, int count, int axis) {
+        double sum = 0;
+        for (int i = axis; i < 2 * count; i += 2) {
+            sum += p[i];
+        }
+        return sum / count;
+    }
+
+    // The distance between two convex polygons without their radius
+    private static double coreDistance(double[] a, int aCount, double[] b, int bCount) {
+        // If neither contains a point of the other, their edges must intersect for them to intersect
+        if (aCount >= 3 && contains(a, aCount, b[0], b[1])) return 0;
+        if (bCount >= 3 && contains(b, bCount, a[0], a[1])) return 0;
+
+        double result = Double.POSITIVE_INFINITY;
+        int aEdges = aCount < 3 ? 1 : aCount;
+        int bEdges = bCount < 3 ? 1 : bCount;
+        for (int i = 0; i < aEdges; i++) {
+            int i1 = 2 * i, i2 = 2 * ((i + 1) % aCount);
+            for (int j = 0; j < bEdges; j++) {
+                int j1 = 2 * j, j2 = 2 * ((j + 1) % bCount);
+                double d = segmentDistance(a[i1], a[i1 + 1], a[i2], a[i2 + 1], b[j1], b[j1 + 1], b[j2], b[j2 + 1]);
+                if (d == 0) return 0;
+                result = Math.min(result, d);
+            }
+        }
+        return result;
+    }
+
+    // Whether a convex polygon, in either orientation, contains a point
+    private static boolean contains(double[] p, int count, double x, double y) {
+        boolean left = false, right = false;
+        for (int i = 0; i < count; i++) {
+            int i1 = 2 * i, i2 = 2 * ((i + 1) % count);
+            double cross = (p[i2] - p[i1]) * (y - p[i1 + 1]) - (p[i2 + 1] - p[i1 + 1]) * (x - p[i1]);
+            if (cross > 0) left = true;
+            if (cross < 0) right = true;
+            if (left && right) return false;
+        }
+        return true;
+    }
+
+    // The distance between the line segments p1-p2 and q1-q2
+    private static double segmentDistance(double p1x, double p1y, double p2x, double p2y,
+            double q1x, double q1y, double q2x, double q2y) {
+        double o1 = (p2x - p1x) * (q1y - p1y) - (p2y - p1y) * (q1x - p1x);
+        double o2 = (p2x - p1x) * (q2y - p1y) - (p2y - p1y) * (q2x - p1x);
+        double o3 = (q2x - q1x) * (p1y - q1y) - (q2y - q1y) * (p1x - q1x);
+        double o4 = (q2x - q1x) * (p2y - q1y) - (q2y - q1y) * (p2x - q1x);
+        if (((o1 > 0 && o2 < 0) || (o1 < 0 && o2 > 0)) && ((o3 > 0 && o4 < 0) || (o3 < 0 && o4 > 0))) {
+            return 0;
+        }
+        // Segments that don't cross are nearest at one of their end points
+        return Math.min(Math.min(pointDistance(p1x, p1y, q1x, q1y, q2x, q2y), pointDistance(p2x, p2y, q1x, q1y, q2x, q2y)),
+                Math.min(pointDistance(q1x, q1y, p1x, p1y, p2x, p2y), pointDistance(q2x, q2y, p1x, p1y, p2x, p2y)));
+    }
+
+    // The distance between a point and the line segment a-b
+    private static double pointDistance(double x, double y, double ax, double ay, double bx, double by) {
+        double dx = bx - ax, dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, ((x - ax) * dx + (y - ay) * dy) / lengthSquared));
+        return Math.hypot(x - (ax + t * dx), y - (ay + t * dy));
+    }
+}
@@ -0,0 +1,244 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import java.util.Arrays;
+
+import javafx.scene.Node;
+import javafx.scene.transform.Transform;
+
+/**
+ * Pushes colliding bodies of a BodyStore apart, with sequential impulses on
+ * their vectors followed by a correction of their positions for the overlap
+ * that is left. Bodies don't rotate, so a contact is fully described by its
+ * normal and the depth of the overlap along it.
+ * <p>
+ * Only children that aren't in use or anchored are moved. Other bodies act as
+ * if their mass is infinite: they push, but aren't pushed. All contacts are
+ * solved in scene coordinates; vectors are converted from and to the
+ * coordinate space of the TactilePane.
+ */
+final class ContactSolver {
+    // Number of times the impulses of all contacts are refined per step
+    private static final int ITERATIONS = 4;
+    // Overlap that is allowed to remain, so resting contacts don't jitter
+    private static final double SLOP = 0.5;
+    // Part of the remaining overlap that is corrected per step
+    private static final double CORRECTION = 0.8;
+
+    // Number of contacts
+    int count;
+    // The bodies of every contact, the normal pointing from first to second,
+    // and the depth of their overlap along it
+    private int[] first = new int[0], second = new int[0];
+    private double[] normalX = new double[0], normalY = new double[0], depth = new double[0];
+    // One over the sum of the inverse masses, the speed to bounce off with,
+    // the friction, and the impulses applied so far
+    private double[] normalMass = new double[0], bounce = new double[0], friction = new double[0];
+    private double[] normalImpulse = new double[0], tangentImpulse = new double[0];
+
+    // Per body: inverse mass, vector in scene coordinates, and whether those are loaded
+    private double[] inverseMass = new double[0];
+    private double[] velocityX = new double[0], velocityY = new double[0];
+    private boolean[] loaded = new boolean[0];
+    // Per body: whether an impulse changed its vector
+    private boolean[] pushed = new boolean[0];
+    // Correction of the position of every body by the last call to solve, in scene coordinates
+    double[] correctionX = new double[0], correctionY = new double[0];
+
+    private final double[] contact = new double[3];
+
+    /**
+     * Solves the contacts between the given pairs of colliding bodies. Sets
+     * the new vectors of the bodies, and leaves the corrections of their
+     * positions in {@link #correctionX} and {@link #correctionY}. Bodies that
+     * are pushed or corrected are woken, as a sleeping body wouldn't move.
+     *
+     * @param pairs     the pairs that collide, as of the cached bounds and shapes
+     * @param shapes    whether to use the cached collision shapes of the bodies that have one
+     * @param t         the local to scene transform of the TactilePane
+     * @param restingSpeed  the speed below which bodies don't bounce
+     */
+    void solve(BodyStore bodies, LongHashSet pairs, boolean shapes, Transform t, double restingSpeed) {
+        ensureCapacity(bodies.nodes.length);
+        Arrays.fill(loaded, 0, bodies.size, false);
+        Arrays.fill(pushed, 0, bodies.size, false);
+        Arrays.fill(correctionX, 0, bodies.size, 0);
+        Arrays.fill(correctionY, 0, bodies.size, 0);
+
+        count = 0;
+        double determinant = t.getMxx() * t.getMyy() - t.getMxy() * t.getMyx();
+        if (determinant == 0) return;
+
+        for (int slot = 0; slot < pairs.capacity(); slot++) {
+            long pair = pairs.keyAt(slot);
+            if (pair >= 0) {
+                addContact(bodies, LongHashSet.first(pair), LongHashSet.second(pair), shapes, t, restingSpeed);
+            }
+        }
+        if (count == 0) return;
+
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            for (int i = 0; i < count; i++) {
+                solveVelocity(i);
+            }
+        }
+
+        // Correct what is left of every overlap, taking the corrections of
+        // earlier contacts into account
+        for (int i = 0; i < count; i++) {
+            int a = first[i], b = second[i];
+            double remaining = depth[i] - ((correctionX[b] - correctionX[a]) * normalX[i]
+                    + (correctionY[b] - correctionY[a]) * normalY[i]);
+            if (remaining <= SLOP) continue;
+
+            double correction = CORRECTION * (remaining - SLOP) * normalMass[i];
+            correctionX[a] -= correction * normalX[i] * inverseMass[a];
+            correctionY[a] -= correction * normalY[i] * inverseMass[a];
+            correctionX[b] += correction * normalX[i] * inverseMass[b];
+            correctionY[b] += correction * normalY[i] * inverseMass[b];
+        }
+
+        // Vectors are in the coordinate space of the TactilePane
+        for (int id = 0; id < bodies.size; id++) {
+            if (!loaded[id] || inverseMass[id] == 0) continue;
+
+            if (!pushed[id] && correctionX[id] == 0 && correctionY[id] == 0) continue;
+
+            double vx = velocityX[id], vy = velocityY[id];
+            bodies.setVector(id, (t.getMyy() * vx - t.getMxy() * vy) / determinant,
+                    (t.getMxx() * vy - t.getMyx() * vx) / determinant);
+            bodies.wake(id);
+        }
+    }
+
+    // HELP METHODS
+
+    private void addContact(BodyStore bodies, int a, int b, boolean shapes, Transform t, double restingSpeed) {
+        Node nodeA = bodies.nodes[a], nodeB = bodies.nodes[b];
+        if (nodeA == null || nodeB == null || nodeA.getParent() == null || nodeB.getParent() == null) return;
+        if (bodies.hasFlag(a, BodyStore.SLEEPING) && bodies.hasFlag(b, BodyStore.SLEEPING)) return;
+        load(bodies, a, t);
+        load(bodies, b, t);
+        if (inverseMass[a] == 0 && inverseMass[b] == 0) return;
+
+        if (shapes && (bodies.hasFlag(a, BodyStore.SHAPED) || bodies.hasFlag(b, BodyStore.SHAPED))) {
+            CollisionShape.contact(bodies.shapePoints[a], bodies.shapePointCount[a], bodies.shapeRadius[a],
+                    bodies.shapePoints[b], bodies.shapePointCount[b], bodies.shapeRadius[b], contact);
+        } else {
+            boundsContact(bodies, a, b);
+        }
+        if (contact[2] <= 0) return;
+
+        if (count == first.length) {
+            growContacts(Math.max(16, count * 2));
+        }
+        first[count] = a;
+        second[count] = b;
+        normalX[count] = contact[0];
+        normalY[count] = contact[1];
+        depth[count] = contact[2];
+        normalMass[count] = 1 / (inverseMass[a] + inverseMass[b]);
+        double approach = (velocityX[b] - velocityX[a]) * contact[0] + (velocityY[b] - velocityY[a]) * contact[1];
+        bounce[count] = approach < -restingSpeed ? -Math.max(bodies.restitution[a], bodies.restitution[b]) * approach : 0;
+        friction[count] = Math.sqrt(bodies.friction[a] * bodies.friction[b]);
+        normalImpulse[count] = 0;
+        tangentImpulse[count] = 0;
+        count++;
+    }
+
+    // Stores the contact between the cached bounds of two bodies, along the axis they overlap least on
+    private void boundsContact(BodyStore bodies, int a, int b) {
+        double overlapX = Math.min(bodies.maxX[a], bodies.maxX[b]) - Math.max(bodies.minX[a], bodies.minX[b]);
+        double overlapY = Math.min(bodies.maxY[a], bodies.maxY[b]) - Math.max(bodies.minY[a], bodies.minY[b]);
+        if (overlapX < overlapY) {
+            contact[0] = bodies.minX[b] + bodies.maxX[b] < bodies.minX[a] + bodies.maxX[a] ? -1 : 1;
+            contact[1] = 0;
+            contact[2] = overlapX;
+        } else {
+            contact[0] = 0;
+            contact[1] = bodies.minY[b] + bodies.maxY[b] < bodies.minY[a] + bodies.maxY[a] ? -1 : 1;
+            contact[2] = overlapY;
+        }
+    }
+
+    // Reads the inverse mass and the vector of a body, if it hasn't been yet
+    private void load(BodyStore bodies, int id, Transform t) {
+        if (loaded[id]) return;
+        loaded[id] = true;
+
+        int flags = bodies.flags[id];
+        boolean movable = (flags & (BodyStore.CHILD | BodyStore.IN_USE | BodyStore.ANCHORED)) == BodyStore.CHILD;
+        inverseMass[id] = movable ? 1 / bodies.mass[id] : 0;
+        if ((flags & BodyStore.CHILD) != 0) {
+            double vx = bodies.vx[id], vy = bodies.vy[id];
+            velocityX[id] = t.getMxx() * vx + t.getMxy() * vy;
+            velocityY[id] = t.getMyx() * vx + t.getMyy() * vy;
+        } else {
+            velocityX[id] = 0;
+            velocityY[id] = 0;
+        }
+    }
+
+    // Refines the impulses of a contact, so that its bodies stop approaching
+    // each other, or bounce, and slide along each other with friction
+    private void solveVelocity(int i) {
+        int a = first[i], b = second[i];
+        double nx = normalX[i], ny = normalY[i];
+
+        double relativeX = velocityX[b] - velocityX[a];
+        double relativeY = velocityY[b] - velocityY[a];
+        double impulse = -normalMass[i] * (relativeX * nx + relativeY * ny - bounce[i]);
+        // The bodies may only be pushed apart, not pulled together
+        double total = Math.max(normalImpulse[i] + impulse, 0);
+        impulse = total - normalImpulse[i];
+        normalImpulse[i] = total;
+        apply(a, b, impulse * nx, impulse * ny);
+
+        if (friction[i] == 0) return;
+        relativeX = velocityX[b] - velocityX[a];
+        relativeY = velocityY[b] - velocityY[a];
+        double tx = -ny, ty = nx;
+        impulse = -normalMass[i] * (relativeX * tx + relativeY * ty);
+        // Friction can't be stronger than the force pushing the bodies apart
+        double limit = friction[i] * normalImpulse[i];
+        total = Math.max(-limit, Math.min(limit, tangentImpulse[i] + impulse));
+        impulse = total - tangentImpulse[i];
+        tangentImpulse[i] = total;
+        apply(a, b, impulse * tx, impulse * ty);
+    }
+
+    private void apply(int a, int b, double impulseX, double impulseY) {
+        if (impulseX == 0 && impulseY == 0) return;
+
+        pushed[a] = true;
+        pushed[b] = true;
+        velocityX[a] -= impulseX * inverseMass[a];
+        velocityY[a] -= impulseY * inverseMass[a];
+        velocityX[b] += impulseX * inverseMass[b];
+        velocityY[b] += impulseY * inverseMass[b];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (inverseMass.length >= capacity) return;
+
+        inverseMass = new double[capacity];
+        velocityX = new double[capacity];
+        velocityY = new double[capacity];
+        loaded = new boolean[capacity];
+        pushed = new boolean[capacity];
+        correctionX = new double[capacity];
+        correctionY = new double[capacity];
+    }
+
+    private void growContacts(int capacity) {
+        first = Arrays.copyOf(first, capacity);
+        second = Arrays.copyOf(second, capacity);
+        normalX = Arrays.copyOf(normalX, capacity);
+        normalY = Arrays.copyOf(normalY, capacity);
+        depth = Arrays.copyOf(depth, capacity);
+        normalMass = Arrays.copyOf(normalMass, capacity);
+        bounce = Arrays.copyOf(bounce, capacity);
+        friction = Arrays.copyOf(friction, capacity);
+        normalImpulse = Arrays.copyOf(normalImpulse, capacity);
+        tangentImpulse = Arrays.copyOf(tangentImpulse, capacity);
+    }
+}
@@ -0,0 +1,434 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.scene.Node;
+
+/**
+ * A {@link BroadPhase} that keeps the Nodes in a balanced binary tree of
+ * bounding boxes, in which every inner box encloses the boxes of its two
+ * children. Unlike a {@link QuadTree}, the tree doesn't divide space in fixed
+ * quadrants, so it handles a mix of tiny and huge Nodes equally well, and it
+ * is unbounded.
+ * <p>
+ * The box that is stored for a Node is enlarged ("fat") by a margin on every
+ * side. As long as the bounds of a Node stay within its fat box, updating it
+ * doesn't change the tree at all, so Nodes that move by a few pixels per step
+ * are only reinserted once in a while. New Nodes are inserted next to the
+ * Node that enlarges the tree the least, and the tree is kept balanced with
+ * rotations, so queries stay logarithmic.
+ */
+public class DynamicAabbTree implements BroadPhase {
+    private static final int NULL = -1;
+
+    private final Map<Node, Integer> leafByNode = new HashMap<>();
+    private int root = NULL;
+
+    // Tree nodes, both leaves and inner nodes
+    private Node[] nodes = new Node[16];
+    private double[] minX = new double[16], minY = new double[16];
+    private double[] maxX = new double[16], maxY = new double[16];
+    private int[] parent = new int[16];
+    private int[] child1 = new int[16], child2 = new int[16];
+    // Height of a tree node: 0 for a leaf, -1 for a free tree node
+    private int[] height = new int[16];
+    // Free tree nodes, linked through parent
+    private int free = NULL;
+    private int capacity;
+
+    // Stack for traversing the tree, reused by every query
+    private int[] stack = new int[32];
+
+    /**
+     * Constructs a DynamicAabbTree with a fat margin of 5.0.
+     */
+    public DynamicAabbTree() {
+    }
+
+    /**
+     * Constructs a DynamicAabbTree with the given fat margin.
+     *
+     * @param fatMargin how far the box of a Node extends beyond its bounds,
+     * may not be negative
+     */
+    public DynamicAabbTree(double fatMargin) {
+        setFatMargin(fatMargin);
+    }
+
+    /**
+     * How far the box that is stored for a Node extends beyond its bounds, on
+     * every side. A larger margin means Nodes are reinserted less often, but
+     * also that more pairs of Nodes are passed to the narrow phase. A change
+     * applies to Nodes as they are (re)inserted. May not be negative.
+     *
+     * @defaultvalue 5.0
+     */
+    private DoubleProperty fatMargin;
+
+    public final double getFatMargin() {
+        return fatMarginProperty().get();
+    }
+
+    public final void setFatMargin(double fatMargin) {
+        fatMarginProperty().set(fatMargin);
+    }
+
+    public final DoubleProperty fatMarginProperty() {
+        if (fatMargin == null) {
+            fatMargin = new SimpleDoubleProperty(5.0) {
+                @Override
+                public void set(double value) {
+                    if (value < 0) {
+                        throw new IllegalArgumentException("Fat margin may not be negative");
+                    }
+                    super.set(value);
+                }
+            };
+        }
+        return fatMargin;
+    }
+
+    @Override
+    public void insert(Node node, double minX, double minY, double maxX, double maxY) {
+        update(node, minX, minY, maxX, maxY);
+    }
+
+    @Override
+    public void update(Node node, double minX, double minY, double maxX, double maxY) {
+        Integer leaf = leafByNode.get(node);
+        if (leaf != null) {
+            if (this.minX[leaf] <= minX && this.minY[leaf] <= minY && this.maxX[leaf] >= maxX && this.maxY[leaf] >= maxY) {
+                // Still inside its fat box
+                return;
+            }
+            removeLeaf(leaf);
+        } else {
+            leaf = allocate();
+            nodes[leaf] = node;
+            leafByNode.put(node, leaf);
+        }
+
+        double margin = getFatMargin();
+        this.minX[leaf] = minX - margin;
+        this.minY[leaf] = minY - margin;
+        this.maxX[leaf] = maxX + margin;
+        this.maxY[leaf] = maxY + margin;
+        insertLeaf(leaf);
+    }
+
+    @Override
+    public void remove(Node node) {
+        Integer leaf = leafByNode.remove(node);
+        if (leaf == null) return;
+
+        removeLeaf(leaf);
+        release(leaf);
+    }
+
+    @Override
+    public void query(double minX, double minY, double maxX, double maxY, Consumer<? super Node> consumer) {
+        if (root == NULL) return;
+
+        int count = 0;
+        stack[count++] = root;
+        while (count > 0) {
+            int id = stack[--count];
+            if (!intersects(id, minX, minY, maxX, maxY)) continue;
+
+            if (height[id] == 0) {
+                consumer.accept(nodes[id]);
+            } else {
+                if (count + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[count++] = child1[id];
+                stack[count++] = child2[id];
+            }
+        }
+    }
+
+    @Override
+    public void queryPairs(BiConsumer<? super Node, ? super Node> consumer) {
+        if (root == NULL) return;
+
+        // Pairs of tree nodes to check; a tree node paired with itself stands
+        // for the pairs of leaves within it
+        int count = 0;
+        stack[count++] = root;
+        stack[count++] = root;
+        while (count > 0) {
+            int b = stack[--count];
+            int a = stack[--count];
+            if (count + 6 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+
+            if (a == b) {
+                if (height[a] == 0) continue;
+                stack[count++] = child1[a];
+                stack[count++] = child1[a];
+                stack[count++] = child2[a];
+                stack[count++] = child2[a];
+                stack[count++] = child1[a];
+                stack[count++] = child2[a];
+            } else if (intersects(a, minX[b], minY[b], maxX[b], maxY[b])) {
+                if (height[a] == 0 && height[b] == 0) {
+                    consumer.accept(nodes[a], nodes[b]);
+                } else if (height[b] == 0 || (height[a] > 0 && perimeter(a) >= perimeter(b))) {
+                    // Descend into the larger tree node
+                    stack[count++] = child1[a];
+                    stack[count++] = b;
+                    stack[count++] = child2[a];
+                    stack[count++] = b;
+                } else {
+                    stack[count++] = a;
+                    stack[count++] = child1[b];
+                    stack[count++] = a;
+                    stack[count++] = child2[b];
+                }
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        leafByNode.clear();
+        Arrays.fill(nodes, null);
+        root = NULL;
+        free = NULL;
+        capacity = 0;
+    }
+
+    // HELP METHODS
+
+    // Adds a leaf to the tree, next to the tree node that grows the least
+    private void insertLeaf(int leaf) {
+        if (root == NULL) {
+            root = leaf;
+            parent[leaf] = NULL;
+            return;
+        }
+
+        // Find the best sibling, by the perimeter the tree would get
+        int index = root;
+        while (height[index] > 0) {
+            double perimeter = perimeter(index);
+            double combinedPerimeter = unionPerimeter(index, leaf);
+
+            // Cost of creating a new parent for this node and the leaf
+            double cost = 2 * combinedPerimeter;
+            // Minimum cost of pushing the leaf further down the tree
+            double inheritanceCost = 2 * (combinedPerimeter - perimeter);
+
+            double cost1 = descendCost(child1[index], leaf) + inheritanceCost;
+            double cost2 = descendCost(child2[index], leaf) + inheritanceCost;
+            if (cost < cost1 && cost < cost2) break;
+
+            index = cost1 < cost2 ? child1[index] : child2[index];
+        }
+        int sibling = index;
+
+        // Create a new parent for the sibling and the leaf
+        int oldParent = parent[sibling];
+        int newParent = allocate();
+        parent[newParent] = oldParent;
+        height[newParent] = height[sibling] + 1;
+        union(newParent, sibling, leaf);
+        if (oldParent == NULL) {
+            root = newParent;
+        } else if (child1[oldParent] == sibling) {
+            child1[oldParent] = newParent;
+        } else {
+            child2[oldParent] = newParent;
+        }
+        child1[newParent] = sibling;
+        child2[newParent] = leaf;
+        parent[sibling] = newParent;
+        parent[leaf] = newParent;
+
+        refit(parent[leaf]);
+    }
+
+    // Removes a leaf from the tree, replacing its parent by its sibling
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL;
+            return;
+        }
+
+        int oldParent = parent[leaf];
+        int grandParent = parent[oldParent];
+        int sibling = child1[oldParent] == leaf ? child2[oldParent] : child1[oldParent];
+
+        if (grandParent == NULL) {
+            root = sibling;
+            parent[sibling] = NULL;
+            release(oldParent);
+        } else {
+            if (child1[grandParent] == oldParent) {
+                child1[grandParent] = sibling;
+            } else {
+                child2[grandParent] = sibling;
+            }
+            parent[sibling] = grandParent;
+            release(oldParent);
+            refit(grandParent);
+        }
+    }
+
+    // Walks up from a tree node, balancing it and its ancestors and fitting their boxes
+    private void refit(int index) {
+        while (index != NULL) {
+            index = balance(index);
+            height[index] = 1 + Math.max(height[child1[index]], height[child2[index]]);
+            union(index, child1[index], child2[index]);
+            index = parent[index];
+        }
+    }
+
+    // Rotates the higher child of a up if its children differ in height by
+    // more than one, and returns the tree node that took the place of a
+    private int balance(int a) {
+        if (height[a] < 2) return a;
+
+        int b = child1[a];
+        int c = child2[a];
+        int balance = height[c] - height[b];
+
+        if (balance > 1) {
+            // Rotate c up
+            int f = child1[c];
+            int g = child2[c];
+            child1[c] = a;
+            parent[c] = parent[a];
+            parent[a] = c;
+            replaceChild(parent[c], a, c);
+
+            if (height[f] > height[g]) {
+                child2[c] = f;
+                child2[a] = g;
+                parent[g] = a;
+                union(a, b, g);
+                union(c, a, f);
+                height[a] = 1 + Math.max(height[b], height[g]);
+                height[c] = 1 + Math.max(height[a], height[f]);
+            } else {
+                child2[c] = g;
+                child2[a] = f;
+                parent[f] = a;
+                union(a, b, f);
+                union(c, a, g);
+                height[a] = 1 + Math.max(height[b], height[f]);
+                height[c] = 1 + Math.max(height[a], height[g]);
+            }
+            return c;
+        }
+        if (balance < -1) {
+            // Rotate b up
+            int d = child1[b];
+            int e = child2[b];
+            child1[b] = a;
+            parent[b] = parent[a];
+            parent[a] = b;
+            replaceChild(parent[b], a, b);
+
+            if (height[d] > height[e]) {
+                child2[b] = d;
+                child1[a] = e;
+                parent[e] = a;
+                union(a, c, e);
+                union(b, a, d);
+                height[a] = 1 + Math.max(height[c], height[e]);
+                height[b] = 1 + Math.max(height[a], height[d]);
+            } else {
+                child2[b] = e;
+                child1[a] = d;
+                parent[d] = a;
+                union(a, c, d);
+                union(b, a, e);
+                height[a] = 1 + Math.max(height[c], height[d]);
+                height[b] = 1 + Math.max(height[a], height[e]);
+            }
+            return b;
+        }
+        return a;
+    }
+
+    private void replaceChild(int index, int oldChild, int newChild) {
+        if (index == NULL) {
+            root = newChild;
+        } else if (child1[index] == oldChild) {
+            child1[index] = newChild;
+        } else {
+            child2[index] = newChild;
+        }
+    }
+
+    // Cost of pushing the leaf down into the given child, not counting inheritance
+    private double descendCost(int child, int leaf) {
+        double perimeter = unionPerimeter(child, leaf);
+        return height[child] == 0 ? perimeter : perimeter - perimeter(child);
+    }
+
+    private double perimeter(int id) {
+        return 2 * (maxX[id] - minX[id] + maxY[id] - minY[id]);
+    }
+
+    private double unionPerimeter(int a, int b) {
+        double width = Math.max(maxX[a], maxX[b]) - Math.min(minX[a], minX[b]);
+        double height = Math.max(maxY[a], maxY[b]) - Math.min(minY[a], minY[b]);
+        return 2 * (width + height);
+    }
+
+    // Sets the box of a tree node to the union of the boxes of a and b
+    private void union(int id, int a, int b) {
+        minX[id] = Math.min(minX[a], minX[b]);
+        minY[id] = Math.min(minY[a], minY[b]);
+        maxX[id] = Math.max(maxX[a], maxX[b]);
+        maxY[id] = Math.max(maxY[a], maxY[b]);
+    }
+
+    private boolean intersects(int id, double minX, double minY, double maxX, double maxY) {
+        return this.maxX[id] >= minX && this.maxY[id] >= minY && this.minX[id] <= maxX && this.minY[id] <= maxY;
+    }
+
+    private int allocate() {
+        int id;
+        if (free != NULL) {
+            id = free;
+            free = parent[id];
+        } else {
+            id = capacity++;
+            if (id == nodes.length) {
+                int newCapacity = nodes.length * 2;
+                nodes = Arrays.copyOf(nodes, newCapacity);
+                minX = Arrays.copyOf(minX, newCapacity);
+                minY = Arrays.copyOf(minY, newCapacity);
+                maxX = Arrays.copyOf(maxX, newCapacity);
+                maxY = Arrays.copyOf(maxY, newCapacity);
+                parent = Arrays.copyOf(parent, newCapacity);
+                child1 = Arrays.copyOf(child1, newCapacity);
+                child2 = Arrays.copyOf(child2, newCapacity);
+                height = Arrays.copyOf(height, newCapacity);
+            }
+        }
+        parent[id] = NULL;
+        child1[id] = NULL;
+        child2[id] = NULL;
+        height[id] = 0;
+        return id;
+    }
+
+    private void release(int id) {
+        nodes[id] = null;
+        height[id] = -1;
+        parent[id] = free;
+        free = id;
+    }
+}
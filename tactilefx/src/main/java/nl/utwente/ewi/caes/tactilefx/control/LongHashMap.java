@@ -0,0 +1,144 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import java.util.Arrays;
+
+/**
+ * A map from longs to objects, stored in an open-addressing hash table with
+ * linear probing so that looking up, adding and removing don't allocate. Any
+ * long can be used as a key.
+ * <p>
+ * The entries can be iterated by walking the slots of the table from 0 to
+ * {@link #capacity()}, skipping the slots for which {@link #valueAt(int)}
+ * returns null. The map may not be changed while it is iterated that way.
+ *
+ * @param <V> the type of the values, which may not be null
+ */
+final class LongHashMap<V> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] keys;
+    // A slot is empty if its value is null
+    private Object[] values;
+    private int size;
+    // Grow when the table is more than this full
+    private int threshold;
+
+    LongHashMap() {
+        keys = new long[INITIAL_CAPACITY];
+        values = new Object[INITIAL_CAPACITY];
+        threshold = INITIAL_CAPACITY / 2;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) return (V) values[slot];
+        }
+        return null;
+    }
+
+    /**
+     * Maps a key to a value, replacing the value it was mapped to before.
+     */
+    void put(long key, V value) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        for (; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > threshold) {
+            grow();
+        }
+    }
+
+    /**
+     * Removes the mapping of a key.
+     *
+     * @return the value it was mapped to, or null
+     */
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        for (; values[slot] == null || keys[slot] != key; slot = (slot + 1) & mask) {
+            if (values[slot] == null) return null;
+        }
+        V value = (V) values[slot];
+
+        // Shift back the entries after it, so no entry is separated from its hash slot by an empty slot
+        int gap = slot;
+        for (slot = (slot + 1) & mask; values[slot] != null; slot = (slot + 1) & mask) {
+            int home = hash(keys[slot]) & mask;
+            // Move the entry into the gap if its home slot is not between the gap and its slot
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = keys[slot];
+                values[gap] = values[slot];
+                gap = slot;
+            }
+        }
+        values[gap] = null;
+        size--;
+        return value;
+    }
+
+    void clear() {
+        if (size == 0) return;
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Returns the number of slots of the table.
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Returns the key in the given slot of the table, which is only
+     * meaningful if the slot is not empty.
+     */
+    long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * Returns the value in the given slot of the table, or null if it is empty.
+     */
+    @SuppressWarnings("unchecked")
+    V valueAt(int slot) {
+        return (V) values[slot];
+    }
+
+    // HELP METHODS
+
+    @SuppressWarnings("unchecked")
+    private void grow() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new Object[oldKeys.length * 2];
+        threshold = keys.length / 2;
+        size = 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldValues[slot] != null) {
+                put(oldKeys[slot], (V) oldValues[slot]);
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
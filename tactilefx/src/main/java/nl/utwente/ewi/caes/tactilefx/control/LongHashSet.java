@@ -0,0 +1,146 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import java.util.Arrays;
+
+/**
+ * A set of non-negative longs, stored in an open-addressing hash table with
+ * linear probing so that adding and removing don't allocate. Used to keep
+ * pairs of ids, see {@link #pair(int, int)}.
+ * <p>
+ * The keys can be iterated by walking the slots of the table from 0 to
+ * {@link #capacity()}, skipping the slots for which {@link #keyAt(int)}
+ * returns -1. The set may not be changed while it is iterated that way.
+ */
+final class LongHashSet {
+    private static final long EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] keys;
+    private int size;
+    // Grow when the table is more than this full
+    private int threshold;
+
+    LongHashSet() {
+        keys = new long[INITIAL_CAPACITY];
+        Arrays.fill(keys, EMPTY);
+        threshold = INITIAL_CAPACITY / 2;
+    }
+
+    /**
+     * Returns the key of an unordered pair of non-negative ids.
+     */
+    static long pair(int a, int b) {
+        return a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+    }
+
+    /**
+     * Returns the smaller id of a pair key.
+     */
+    static int first(long pair) {
+        return (int) (pair >>> 32);
+    }
+
+    /**
+     * Returns the larger id of a pair key.
+     */
+    static int second(long pair) {
+        return (int) pair;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(long key) {
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds a key to the set.
+     *
+     * @return whether the key was not in the set yet
+     */
+    boolean add(long key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        for (; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) return false;
+        }
+        keys[slot] = key;
+        if (++size > threshold) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * Removes a key from the set.
+     *
+     * @return whether the key was in the set
+     */
+    boolean remove(long key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        for (; keys[slot] != key; slot = (slot + 1) & mask) {
+            if (keys[slot] == EMPTY) return false;
+        }
+
+        // Shift back the keys after it, so no key is separated from its hash slot by an empty slot
+        int gap = slot;
+        for (slot = (slot + 1) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            int home = hash(keys[slot]) & mask;
+            // Move the key into the gap if its home slot is not between the gap and its slot
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = keys[slot];
+                gap = slot;
+            }
+        }
+        keys[gap] = EMPTY;
+        size--;
+        return true;
+    }
+
+    void clear() {
+        if (size == 0) return;
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    /**
+     * Returns the number of slots of the table.
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Returns the key in the given slot of the table, or -1 if it is empty.
+     */
+    long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    // HELP METHODS
+
+    private void grow() {
+        long[] oldKeys = keys;
+        keys = new long[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        threshold = keys.length / 2;
+        size = 0;
+        for (long key : oldKeys) {
+            if (key != EMPTY) {
+                add(key);
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -1,51 +1,143 @@
 package nl.utwente.ewi.caes.tactilefx.control;
 
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
-import javafx.animation.AnimationTimer;
-import javafx.collections.ListChangeListener;
-import javafx.geometry.BoundingBox;
+import javafx.event.EventType;
 import javafx.geometry.Bounds;
-import javafx.geometry.Point2D;
 import javafx.scene.Node;
+import javafx.scene.transform.Transform;
 import nl.utwente.ewi.caes.tactilefx.event.TactilePaneEvent;
 
-class PhysicsTimer extends AnimationTimer {
-    // Length of a time step
+class PhysicsTimer {
+    // Types of the queued collision events
+    private static final int AREA_ENTERED = 0;
+    private static final int IN_AREA = 1;
+    private static final int AREA_LEFT = 2;
+    private static final int PROXIMITY_ENTERED = 3;
+    private static final int IN_PROXIMITY = 4;
+    private static final int PROXIMITY_LEFT = 5;
+    // Entered and left again within a single step
+    private static final int AREA_PASSED = 6;
+    // Outcomes of testing a pair of bodies
+    private static final byte PAIR_APART = 0;
+    private static final byte PAIR_COLLIDING = 1;
+    private static final byte PAIR_IN_PROXIMITY = 2;
+    // Number of pairs tested per task, and the minimum number of pairs to test
+    // in parallel. Not tuned by measurement: a batch is large enough to be
+    // worth a task, and below four batches there's too little to split up
+    private static final int PARALLEL_BATCH = 1024;
+    private static final int PARALLEL_THRESHOLD = 4 * PARALLEL_BATCH;
+    
+    // Length of a time step at the default step rate, which the multipliers of TactilePane are tuned for
     protected static final double TIME_STEP = 1d / 60d;
     // Default value for force
     protected static final double DEFAULT_FORCE = 100;
     
     private final TactilePane pane;
-    private final Map<Node, Point2D> locationByNode  = new ConcurrentHashMap<>();
-    private final Map<Node, Bounds> boundsByNode = new HashMap<>();
-    private final Map<Node, Bounds> proximityBoundsByNode = new HashMap<>();
+    private final BodyStore bodies;
     
     PhysicsTimer(TactilePane tactilePane) {
         this.pane = tactilePane;
-        
-        // Keep maps clean
-        pane.getChildren().addListener((ListChangeListener.Change<? extends Node> c) -> {
-            while (c.next()) {
-                for (Node node : c.getRemoved()) {
-                    boundsByNode.remove(node);
-                    proximityBoundsByNode.remove(node);
-                    locationByNode.remove(node);
-                }
-            }
-        });
+        this.bodies = tactilePane.bodies;
     }
     
     private double accumulatedTime;
     private long previousTime = 0;
+    private PhysicsWorker worker;
+    private TactilePane.PhysicsMode mode = TactilePane.PhysicsMode.PULSE;
+    
+    // Whether the TactilePane is showing
+    private boolean attached;
+    // Whether the physics were paused by the user
+    private boolean paused;
+    // Whether all bodies are asleep
+    private boolean idle;
+    // Whether the physics are registered with the PulseScheduler
+    private boolean running;
+    // Settings of the pane for the current pulse
+    private final StepParameters parameters = new StepParameters();
+    // Reused for every collision with a border
+    private final BorderReflection reflection = new BorderReflection();
+    // Scratch space for the bounds of a Node that is relocated
+    private final double[] scratchBounds = new double[4];
+    // Pushes colliding bodies apart at the end of a step, if the pane responds to collisions
+    private final ContactSolver contactSolver = new ContactSolver();
+    // Scratch space for a step: whether a body is stepped, its vector at the
+    // start of the step, and its vector after friction
+    private boolean[] stepped = new boolean[0];
+    private double[] startVx = new double[0], startVy = new double[0];
+    private double[] frictionVx = new double[0], frictionVy = new double[0];
+    // Checks a pair of bodies found by the broad phase, with the threshold of the current step
+    private final BiConsumer<Node, Node> checkPair = this::checkPair;
+    private double proximityThreshold;
+    // Whether pairs are tested with the collision shapes of their bodies in the current step
+    private boolean shapeCollisions;
+    // The smallest proximity radius of the active Nodes as of the last time
+    // the broad phase was updated, which determines their margins in it, and
+    // the proximity threshold it was computed with
+    private double indexedMinRadius = -1;
+    private double indexedThreshold = -1;
+    // Bounds of all active Nodes in the broad phase, in scene coordinates. They
+    // are grown as Nodes are refreshed, and are loose if a Node that touched
+    // them moved inwards or was removed; they are then shrunk again by the
+    // next collision check
+    double extentMinX = Double.POSITIVE_INFINITY, extentMinY = Double.POSITIVE_INFINITY;
+    double extentMaxX = Double.NEGATIVE_INFINITY, extentMaxY = Double.NEGATIVE_INFINITY;
+    private boolean extentLoose;
+    // Pairs of bodies that collide, and that are in each other's proximity, as of the last step
+    private LongHashSet colliding = new LongHashSet();
+    private LongHashSet proximity = new LongHashSet();
+    // The same pairs as of the current step, while it is being checked
+    private LongHashSet nextColliding = new LongHashSet();
+    private LongHashSet nextProximity = new LongHashSet();
+    // Pairs that were tested during the current step, rather than skipped
+    private final LongHashSet tested = new LongHashSet();
+    // Scratch space for the bounds of anchor Nodes that aren't bodies
+    private final double[] anchorBounds = new double[4];
+    // Pairs found by the broad phase that still need to be tested, and the outcome of the tests
+    private long[] candidatePairs = new long[16];
+    private byte[] candidateStates = new byte[16];
+    private int candidateCount;
+    // Events to fire at the end of the current step
+    private long[] eventPairs = new long[16];
+    private int[] eventTypes = new int[16];
+    private double[] eventDistances = new double[16];
+    // Pairs a continuous body collided with during the current step, in the
+    // order of their time of impact, and the active Nodes found along its path
+    private final LongHashSet sweptPairs = new LongHashSet();
+    private long[] sweepPairs = new long[16];
+    private double[] sweepTimes = new double[16];
+    private int sweepCount;
+    private int[] sweepCandidates = new int[16];
+    private int sweepCandidateCount;
+    private final Consumer<Node> addSweepCandidate = this::addSweepCandidate;
+    private int eventCount;
+    private long[] removedPairs = new long[16];
     
-    @Override 
-    public void handle(long currentTime) {
+    // Registered with the PulseScheduler while the physics are running
+    private final PulseScheduler.Task physicsTask = this::handle;
+    private final PulseScheduler.Task anchorsTask = now -> updateAnchors();
+    
+    private void handle(long currentTime) {
+        restorePositions();
+        
+        if (worker != null) {
+            // Positions are integrated by the worker, only publish its results
+            previousTime = currentTime;
+            parameters.update(pane);
+            worker.applyResults();
+            updateAnchors();
+            checkCollisions();
+            bodies.publishVectors();
+            worker.synchronize();
+            return;
+        }
+        
         if (previousTime == 0) {
             previousTime = currentTime;
             return;
@@ -55,292 +147,1076 @@ class PhysicsTimer extends AnimationTimer {
         accumulatedTime += secondsEllapsed;
         previousTime = currentTime;
 
-        while (accumulatedTime >= TIME_STEP) {
+        parameters.update(pane);
+        double timeStep = parameters.timeStep;
+        
+        int steps = 0;
+        int maxSubsteps = pane.getMaxSubsteps();
+        while (accumulatedTime >= timeStep && steps < maxSubsteps) {
+            updatePositions();
+            checkCollisions();
+            accumulatedTime -= timeStep;
+            steps++;
+        }
+        if (accumulatedTime >= timeStep) {
+            // Fell behind, drop the steps that couldn't be made up for
+            accumulatedTime %= timeStep;
+        }
+        
+        if (pane.isInterpolatePositions()) {
+            interpolatePositions(accumulatedTime / timeStep);
+        }
+        bodies.publishVectors();
+        
+        // Stop until woken when there's nothing left to simulate
+        if (!bodies.isAnyAwake()) {
+            idle = true;
+            updateRunning();
+        }
+    }
+    
+    // LIFECYCLE
+    
+    /**
+     * Restarts the physics if they were stopped because all bodies fell asleep.
+     */
+    void wake() {
+        if (idle) {
+            idle = false;
+            updateRunning();
+        }
+    }
+    
+    /**
+     * Sets whether the TactilePane is showing. The physics only run while it is.
+     */
+    void setAttached(boolean attached) {
+        this.attached = attached;
+        updateRunning();
+    }
+    
+    /**
+     * Sets whether the physics were paused by the user.
+     */
+    void setPaused(boolean paused) {
+        this.paused = paused;
+        updateRunning();
+    }
+    
+    boolean isPaused() {
+        return paused;
+    }
+    
+    /**
+     * Sets on which thread positions and vectors are integrated.
+     */
+    void setMode(TactilePane.PhysicsMode mode) {
+        this.mode = mode;
+        updateRunning();
+        bodies.wakeAll();
+    }
+    
+    /**
+     * Performs the given number of steps right away, on the calling thread.
+     */
+    void step(int count) {
+        if (worker != null) {
+            throw new IllegalStateException("Physics can't be stepped manually while a worker thread is running them");
+        }
+        
+        restorePositions();
+        parameters.update(pane);
+        for (int i = 0; i < count; i++) {
             updatePositions();
             checkCollisions();
-            accumulatedTime -= TIME_STEP;
+        }
+        bodies.publishVectors();
+    }
+    
+    // Starts or stops the timer and the worker thread, depending on whether
+    // the physics should run
+    private void updateRunning() {
+        boolean run = attached && !paused && !idle;
+        
+        boolean useWorker = run && mode == TactilePane.PhysicsMode.WORKER;
+        if (useWorker && worker == null) {
+            worker = new PhysicsWorker(pane);
+            worker.start();
+        } else if (!useWorker && worker != null) {
+            worker.stop();
+            worker = null;
+            accumulatedTime = 0;
+        }
+        
+        if (run != running) {
+            running = run;
+            PulseScheduler scheduler = PulseScheduler.getInstance();
+            if (run) {
+                previousTime = 0;
+                accumulatedTime = 0;
+                scheduler.register(PulseScheduler.Phase.PHYSICS, physicsTask);
+                scheduler.register(PulseScheduler.Phase.ANCHORS, anchorsTask);
+            } else {
+                scheduler.unregister(PulseScheduler.Phase.PHYSICS, physicsTask);
+                scheduler.unregister(PulseScheduler.Phase.ANCHORS, anchorsTask);
+            }
+        }
+    }
+    
+    /**
+     * Notifies the physics that a Node was relocated by user input.
+     */
+    void nodeMoved(Node node) {
+        if (worker != null) {
+            worker.submitMove(node, node.getLayoutX(), node.getLayoutY());
         }
     }
     
     // LAYOUT METHODS
     
-    private void updatePositions() {
-        // Copy children to new list, so we don't get a ConcurrentModificationException when calling toFront()
-        List<Node> children = new ArrayList<>();
-        pane.getChildren().stream().forEach(children::add);
+    void updatePositions() {
+        ensureScratchCapacity();
         
-        for (Node node: children) {
-            Point2D vector = TactilePane.getVector(node);
-            
-            if (!vector.equals(Point2D.ZERO)) {
-                // Multiply with FRICTION to model friction
-                vector = vector.multiply(pane.getFrictionMultiplier());
-                TactilePane.setVector(node, vector);
-
-                // If the resulting vector is small enough, set the vector to zero vector
-                if (Math.abs(vector.magnitude()) < pane.getVectorThreshold()) {
-                    vector = Point2D.ZERO;
-                    TactilePane.setVector(node, vector);
-                }
+        // Apply friction and sliding
+        for (int id = 0; id < bodies.size; id++) {
+            stepped[id] = false;
+            int flags = bodies.flags[id];
+            if ((flags & BodyStore.CHILD) == 0) continue;
+            if ((flags & BodyStore.SLEEPING) != 0) {
+                // Anchored and bonded bodies wake up when what they're attached
+                // to does, and follow Nodes that aren't bodies while the physics run
+                if (!isAttachedAwake(id)) continue;
+                flags &= ~BodyStore.SLEEPING;
+                bodies.flags[id] = flags;
             }
+            stepped[id] = true;
             
-            // If the node is in use, update its vector for slide behaviour
-            if (TactilePane.isInUse(node) && TactilePane.isSlideOnRelease(node)) {
-                Point2D prevLocation = locationByNode.get(node);
-                if (prevLocation != null) {
-                    // Calculate change in position
-                    double deltaX = node.getLayoutX() - prevLocation.getX();
-                    double deltaY = node.getLayoutY() - prevLocation.getY();
-
-                    // Update vector
-                    Point2D newVector = TactilePane.getVector(node).add(new Point2D(deltaX , deltaY).multiply(pane.getSlideMultiplier()));
-                    TactilePane.setVector(node, newVector);
-                }
+            Node node = bodies.nodes[id];
+            bodies.previousX[id] = node.getLayoutX();
+            bodies.previousY[id] = node.getLayoutY();
+            
+            double vectorX = bodies.vx[id];
+            double vectorY = bodies.vy[id];
+            startVx[id] = vectorX;
+            startVy[id] = vectorY;
+            
+            if (vectorX != 0 || vectorY != 0) {
+                // Multiply with FRICTION to model friction, or set the vector
+                // to zero vector if the result is small enough
+                double scale = parameters.frictionScale(vectorX, vectorY);
+                vectorX *= scale;
+                vectorY *= scale;
+                bodies.setVector(id, vectorX, vectorY);
             }
+            frictionVx[id] = vectorX;
+            frictionVy[id] = vectorY;
             
-            // Update vector for Bonds
-            for (Bond bond : TactilePane.getBonds(node)) {
-                Node other = bond.getBondNode();
-                if (other == node) continue;
-                
-                Bounds nodeBounds = getBounds(node);
-                Bounds otherBounds = other.localToScene(other.getBoundsInLocal());
+            // If the node is in use, update its vector for slide behaviour
+            int slideFlags = BodyStore.IN_USE | BodyStore.SLIDE_ON_RELEASE | BodyStore.LOCATED;
+            if ((flags & slideFlags) == slideFlags) {
+                // Calculate change in position
+                double deltaX = node.getLayoutX() - bodies.x[id];
+                double deltaY = node.getLayoutY() - bodies.y[id];
 
-                double nodeX = nodeBounds.getMinX() + nodeBounds.getWidth() / 2;
-                double nodeY = nodeBounds.getMinY() + nodeBounds.getHeight() / 2;
-                double otherX = otherBounds.getMinX() + otherBounds.getWidth() / 2;
-                double otherY = otherBounds.getMinY() + otherBounds.getHeight() / 2;
-                
-                Point2D distance = new Point2D(nodeX - otherX, nodeY - otherY);
-                
-                TactilePane.setVector(node, TactilePane.getVector(node).add(distance.normalize().multiply(- bond.getForceMultiplier()*(distance.magnitude() - bond.getDistance()))));
+                // Update vector
+                bodies.setVector(id, bodies.vx[id] + deltaX * parameters.slide, bodies.vy[id] + deltaY * parameters.slide);
             }
+        }
+        
+        // Update vectors for Bonds
+        BondGraph bondGraph = bodies.bondGraph;
+        bondGraph.update(bodies);
+        TactilePane.BondSolver bondSolver = parameters.bondSolver;
+        if (bondSolver == TactilePane.BondSolver.FORCE && bondGraph.count > 0) {
+            bondGraph.solveForces(bodies, parameters.bondScale);
+        }
+        
+        for (int id = 0; id < bodies.size; id++) {
+            if (!stepped[id]) continue;
             
-            Anchor anchor = TactilePane.getAnchor(node);
+            Anchor anchor = bodies.anchors[id];
             // If the node is not actively being used and not anchored update the node's position according to vector
-            if (!TactilePane.isInUse(node) && anchor == null && !vector.equals(Point2D.ZERO)) {
-                layoutNode(node, vector.multiply(TIME_STEP));
-            }
-            // If anchored, update the node's position according to its anchor
-            else if (anchor != null) {
-                Node anchorNode = anchor.getAnchorNode();
-                Bounds anchorBounds = pane.sceneToLocal(anchorNode.localToScene(anchorNode.getBoundsInLocal()));
-                Bounds nodeBounds = node.getBoundsInParent();
-                
-                // Relocate anchored Node
-                double x = anchor.getOffsetX(); 
-                double y = anchor.getOffsetY();
-                switch(anchor.getAlignment().getHpos()) {
-                    case LEFT: 
-                        x += anchorBounds.getMinX();
-                        break;
-                    case CENTER:
-                        x += anchorBounds.getMinX() + anchorBounds.getWidth() / 2 - nodeBounds.getWidth() / 2;
-                        break;
-                    case RIGHT:
-                        x += anchorBounds.getMaxX() - nodeBounds.getWidth();
-                        break;
-                }
-                switch(anchor.getAlignment().getVpos()) {
-                    case TOP:
-                        y += anchorBounds.getMinY();
-                        break;
-                    case CENTER:
-                        y += anchorBounds.getMinY() + anchorBounds.getHeight() / 2 - nodeBounds.getHeight() / 2;
-                        break;
-                    case BOTTOM:
-                        y += anchorBounds.getMaxY() - nodeBounds.getHeight();
-                        break;
-                    case BASELINE:
-                        // TODO Support Baseline alignment?
-                        throw new UnsupportedOperationException("TactilePane does not support baseline alignment");
+            if ((bodies.flags[id] & BodyStore.IN_USE) == 0 && anchor == null) {
+                double deltaX = parameters.displacement(startVx[id], frictionVx[id], bodies.vx[id]);
+                double deltaY = parameters.displacement(startVy[id], frictionVy[id], bodies.vy[id]);
+                if (deltaX != 0 || deltaY != 0) {
+                    layoutNode(id, deltaX, deltaY);
                 }
-                node.setLayoutX(x);
-                node.setLayoutY(y);
+            }
+        }
+        
+        // Move bonded Nodes towards their Bonds
+        if (bondSolver == TactilePane.BondSolver.POSITION && bondGraph.count > 0) {
+            bondGraph.solvePositions(bodies, parameters.bondIterations);
+            
+            // Corrections are in scene coordinates, relocation is in the coordinates of the pane
+            Transform t = pane.getLocalToSceneTransform();
+            double determinant = t.getMxx() * t.getMyy() - t.getMxy() * t.getMyx();
+            for (int id = 0; id < bodies.size; id++) {
+                double correctionX = bondGraph.correctionX[id];
+                double correctionY = bondGraph.correctionY[id];
+                if (!stepped[id] || (correctionX == 0 && correctionY == 0) || determinant == 0) continue;
                 
-                // Only call toFront if necessary
-                while(anchorNode != null && !pane.getChildren().contains(anchorNode)) {
-                    anchorNode = anchorNode.getParent();
-                }
-                if (anchorNode != null && anchor.isToFront() && pane.getChildren().indexOf(node) < pane.getChildren().indexOf(anchorNode)) {
-                    node.toFront();
+                layoutNode(id,
+                        (t.getMyy() * correctionX - t.getMxy() * correctionY) / determinant,
+                        (t.getMxx() * correctionY - t.getMyx() * correctionX) / determinant);
+            }
+        }
+        
+        // Relocate anchored Nodes, after the Nodes they're anchored to
+        AnchorGraph anchorGraph = bodies.anchorGraph;
+        anchorGraph.beginWalk(pane, bodies);
+        try {
+            for (int i = 0; i < anchorGraph.count; i++) {
+                int id = anchorGraph.order[i];
+                if (stepped[id] && AnchorGraph.isAnchoredChild(bodies, id)) {
+                    layoutAnchored(id);
                 }
-                
             }
+        } finally {
+            anchorGraph.endWalk();
+        }
+        
+        for (int id = 0; id < bodies.size; id++) {
+            if (!stepped[id]) continue;
             
             // Record the new location
-            locationByNode.put(node, new Point2D(node.getLayoutX(), node.getLayoutY()));
+            Node node = bodies.nodes[id];
+            bodies.x[id] = node.getLayoutX();
+            bodies.y[id] = node.getLayoutY();
+            bodies.flags[id] |= BodyStore.LOCATED;
+            
+            if (isAtRest(id)) {
+                bodies.flags[id] |= BodyStore.SLEEPING;
+                // What is left of the forces of its Bonds is too small to move it
+                if (bodies.vx[id] != 0 || bodies.vy[id] != 0) {
+                    bodies.setVector(id, 0, 0);
+                }
+            }
+        }
+    }
+    
+    private void ensureScratchCapacity() {
+        int capacity = bodies.nodes.length;
+        if (stepped.length < capacity) {
+            stepped = new boolean[capacity];
+            startVx = new double[capacity];
+            startVy = new double[capacity];
+            frictionVx = new double[capacity];
+            frictionVy = new double[capacity];
+        }
+    }
+    
+    // Whether a child didn't move during the last step, and won't move by
+    // itself. Anchors and Bonds with Nodes that aren't bodies are treated as
+    // static, so they don't keep the physics running
+    private boolean isAtRest(int id) {
+        int flags = bodies.flags[id];
+        if ((flags & BodyStore.IN_USE) != 0) return false;
+        if ((flags & BodyStore.ACTIVE) != 0 && (flags & BodyStore.DIRTY) != 0) return false;
+        if ((flags & BodyStore.ANCHORED) != 0 && isAnchorAwake(id)) return false;
+        if ((flags & BodyStore.BONDED) != 0) {
+            // The forces of Bonds rarely cancel out exactly, so a bonded body
+            // rests once it and the bodies it's bonded to are slow enough
+            return isSlow(id) && areBondsAtRest(id);
+        }
+        if (bodies.vx[id] != 0 || bodies.vy[id] != 0) return false;
+        return bodies.x[id] == bodies.previousX[id] && bodies.y[id] == bodies.previousY[id];
+    }
+    
+    // Whether a stepped body moved slower than the vector threshold during the
+    // last step, and its vector is below the threshold as well
+    private boolean isSlow(int id) {
+        double threshold = parameters.vectorThreshold;
+        double speed = Math.hypot(bodies.vx[id], bodies.vy[id]);
+        double moved = Math.hypot(bodies.x[id] - bodies.previousX[id], bodies.y[id] - bodies.previousY[id]);
+        return (speed == 0 || speed < threshold) && (moved == 0 || moved < threshold * parameters.timeStep);
+    }
+    
+    // Whether the bodies a body is bonded to are asleep, or slow and not in use
+    private boolean areBondsAtRest(int id) {
+        Bond[] nodeBonds = bodies.bonds[id];
+        for (int i = 0; i < nodeBonds.length && nodeBonds[i] != null; i++) {
+            int other = bodies.idOf(nodeBonds[i].getBondNode());
+            if (other < 0 || other == id || bodies.hasFlag(other, BodyStore.SLEEPING)) continue;
+            if (!stepped[other] || bodies.hasFlag(other, BodyStore.IN_USE) || !isSlow(other)) return false;
+        }
+        return true;
+    }
+    
+    // Whether a sleeping body is anchored or bonded to a body that is awake,
+    // or to a Node that isn't a body, which may have moved
+    private boolean isAttachedAwake(int id) {
+        int flags = bodies.flags[id];
+        if ((flags & BodyStore.ANCHORED) != 0) {
+            int anchorId = bodies.idOf(bodies.anchors[id].getAnchorNode());
+            if (anchorId < 0 || !bodies.hasFlag(anchorId, BodyStore.SLEEPING)) return true;
+        }
+        if ((flags & BodyStore.BONDED) != 0) {
+            Bond[] nodeBonds = bodies.bonds[id];
+            for (int i = 0; i < nodeBonds.length && nodeBonds[i] != null; i++) {
+                int other = bodies.idOf(nodeBonds[i].getBondNode());
+                if (other == id) continue;
+                if (other < 0 || !bodies.hasFlag(other, BodyStore.SLEEPING)) return true;
+            }
+        }
+        return false;
+    }
+    
+    // Whether the anchor of a body is a body that is awake
+    private boolean isAnchorAwake(int id) {
+        int anchorId = bodies.idOf(bodies.anchors[id].getAnchorNode());
+        return anchorId >= 0 && !bodies.hasFlag(anchorId, BodyStore.SLEEPING);
+    }
+
+    // Renders the moving children at a position between the last two physics
+    // steps, alpha being the fraction of a step that has passed since the last one.
+    // Anchored children follow them during the ANCHORS phase of the pulse
+    private void interpolatePositions(double alpha) {
+        int skipFlags = BodyStore.IN_USE | BodyStore.ANCHORED;
+        
+        for (int id = 0; id < bodies.size; id++) {
+            int flags = bodies.flags[id];
+            if ((flags & BodyStore.CHILD) == 0 || (flags & BodyStore.LOCATED) == 0 || (flags & skipFlags) != 0) continue;
+            
+            double x = bodies.x[id];
+            double y = bodies.y[id];
+            double renderX = bodies.previousX[id] + (x - bodies.previousX[id]) * alpha;
+            double renderY = bodies.previousY[id] + (y - bodies.previousY[id]) * alpha;
+            if (renderX == x && renderY == y) continue;
+            
+            Node node = bodies.nodes[id];
+            node.setLayoutX(renderX);
+            node.setLayoutY(renderY);
+            bodies.renderX[id] = renderX;
+            bodies.renderY[id] = renderY;
+            bodies.flags[id] |= BodyStore.INTERPOLATED;
+        }
+    }
+    
+    // Moves the children that were rendered at an interpolated position back to
+    // their actual position, unless they have been relocated in the meantime
+    private void restorePositions() {
+        for (int id = 0; id < bodies.size; id++) {
+            if ((bodies.flags[id] & BodyStore.INTERPOLATED) == 0) continue;
+            bodies.flags[id] &= ~BodyStore.INTERPOLATED;
+            
+            Node node = bodies.nodes[id];
+            if (node.getLayoutX() == bodies.renderX[id] && node.getLayoutY() == bodies.renderY[id]) {
+                node.setLayoutX(bodies.x[id]);
+                node.setLayoutY(bodies.y[id]);
+            }
+        }
+    }
+    
+    // Updates the positions of all anchored children
+    private void updateAnchors() {
+        AnchorGraph anchorGraph = bodies.anchorGraph;
+        anchorGraph.beginWalk(pane, bodies);
+        try {
+            for (int i = 0; i < anchorGraph.count; i++) {
+                // A listener may have removed the child or its anchor meanwhile
+                int id = anchorGraph.order[i];
+                if (AnchorGraph.isAnchoredChild(bodies, id)) {
+                    layoutAnchored(id);
+                }
+            }
+        } finally {
+            anchorGraph.endWalk();
+        }
+    }
+    
+    // Relocates a body according to its Anchor
+    private void layoutAnchored(int id) {
+        Node node = bodies.nodes[id];
+        Anchor anchor = bodies.anchors[id];
+        Node anchorNode = anchor.getAnchorNode();
+        
+        // Bounds in the coordinate space of the pane, cached for bodies
+        double anchorMinX, anchorMinY, anchorMaxX, anchorMaxY;
+        int anchorId = bodies.idOf(anchorNode);
+        if (anchorId >= 0) {
+            bodies.updateLocalBounds(anchorId, pane);
+            anchorMinX = bodies.localMinX[anchorId];
+            anchorMinY = bodies.localMinY[anchorId];
+            anchorMaxX = bodies.localMaxX[anchorId];
+            anchorMaxY = bodies.localMaxY[anchorId];
+        } else {
+            BodyStore.localBounds(anchorNode, pane, anchorBounds);
+            anchorMinX = anchorBounds[0];
+            anchorMinY = anchorBounds[1];
+            anchorMaxX = anchorBounds[2];
+            anchorMaxY = anchorBounds[3];
+        }
+        bodies.updateLocalBounds(id, pane);
+        double nodeWidth = bodies.localMaxX[id] - bodies.localMinX[id];
+        double nodeHeight = bodies.localMaxY[id] - bodies.localMinY[id];
+        
+        // Relocate anchored Node
+        double x = anchor.getOffsetX(); 
+        double y = anchor.getOffsetY();
+        switch(anchor.getAlignment().getHpos()) {
+            case LEFT: 
+                x += anchorMinX;
+                break;
+            case CENTER:
+                x += (anchorMinX + anchorMaxX) / 2 - nodeWidth / 2;
+                break;
+            case RIGHT:
+                x += anchorMaxX - nodeWidth;
+                break;
+        }
+        switch(anchor.getAlignment().getVpos()) {
+            case TOP:
+                y += anchorMinY;
+                break;
+            case CENTER:
+                y += (anchorMinY + anchorMaxY) / 2 - nodeHeight / 2;
+                break;
+            case BOTTOM:
+                y += anchorMaxY - nodeHeight;
+                break;
+            case BASELINE:
+                // TODO Support Baseline alignment?
+                throw new UnsupportedOperationException("TactilePane does not support baseline alignment");
+        }
+        node.setLayoutX(x);
+        node.setLayoutY(y);
+        
+        // Only call toFront if necessary. The graph is being walked, so it
+        // isn't rebuilt for the new z-order until the walk ends
+        AnchorGraph anchorGraph = bodies.anchorGraph;
+        int anchorChild = anchorGraph.getAnchorChild(id);
+        if (anchorChild >= 0 && anchor.isToFront() && anchorGraph.getChildIndex(id) < anchorGraph.getChildIndex(anchorChild)) {
+            node.toFront();
+            anchorGraph.movedToFront(id);
         }
     }
 
     /**
-     * Relocates a given Node by delta. If the TactilePane's bordersCollide property 
+     * Relocates a given body by delta. If the TactilePane's bordersCollide property 
      * is set to true, it will be ensured that the Node won't be relocated outside of
      * the TactilePane's bounds. If a Node collides with the border of its TactilePane,
      * it will get a new vector that is the reflection of its current one, to simulate
      * reflection.
      */
-    private void layoutNode(Node node, Point2D delta) {
-        double deltaX = delta.getX();
-        double deltaY = delta.getY();
-        
-        if (!pane.isBordersCollide()) {
-            // Using setLayoutX/setLayoutY instead of relocate, relocate acts strange for Circles
-            node.setLayoutX(node.getLayoutX() + deltaX);
-            node.setLayoutY(node.getLayoutY() + deltaY);
-            return;
+    private void layoutNode(int id, double deltaX, double deltaY) {
+        Node node = bodies.nodes[id];
+        
+        if (pane.isBordersCollide()) {
+            // The layout bounds of the TactilePane, unlike its bounds in local,
+            // don't depend on its children, so they aren't recomputed for every move
+            Bounds paneBounds = pane.getLayoutBounds();
+            double[] nodeBounds = scratchBounds;
+            double bounce = parameters.bounce;
+            
+            for (int bounces = 0; ; bounces++) {
+                BodyStore.parentBounds(node, nodeBounds);
+                if (!reflection.compute(nodeBounds[0], nodeBounds[1], nodeBounds[2], nodeBounds[3],
+                        deltaX, deltaY, paneBounds.getMinX(), paneBounds.getMinY(), paneBounds.getMaxX(), paneBounds.getMaxY())) {
+                    break;
+                }
+                
+                // Relocate node to the wall it collides with
+                node.setLayoutX(node.getLayoutX() + reflection.wallDeltaX);
+                node.setLayoutY(node.getLayoutY() + reflection.wallDeltaY);
+                bodies.setVector(id, reflection.reflectedX * bounce, reflection.reflectedY * bounce);
+                if (bounces == BorderReflection.MAX_BOUNCES - 1) {
+                    return;
+                }
+                
+                // Layout the node for the remaining delta
+                deltaX = reflection.reflectedX;
+                deltaY = reflection.reflectedY;
+            }
         }
         
-        Bounds paneBounds = pane.getBoundsInLocal();
-        Bounds nodeBounds = node.getBoundsInParent();
-
-        // The bounds this node would get when it would be translated by deltaX and deltaY
-        Bounds destination = new BoundingBox(nodeBounds.getMinX() + deltaX, nodeBounds.getMinY() + deltaY, nodeBounds.getWidth(), nodeBounds.getHeight());
+        // Using setLayoutX/setLayoutY instead of relocate, relocate acts strange for Circles
+        node.setLayoutX(node.getLayoutX() + deltaX);
+        node.setLayoutY(node.getLayoutY() + deltaY);
+    }
+    
+    void checkCollisions() {
+        double pt = pane.getProximityThreshold();
+        proximityThreshold = pt;
+        updateBroadPhase();
+        if (extentLoose) {
+            updateExtent();
+        }
         
-        if (paneBounds.contains(destination)) {
-            node.setLayoutX(node.getLayoutX() + deltaX);
-            node.setLayoutY(node.getLayoutY() + deltaY);
-        } else {
-            Point2D trimmedDelta1 = null;   // Delta trimmed so that it stops at the vertical wall the node would collide with (null if there's no such wall)
-            Point2D trimmedDelta2 = null;   // Delta trimmed so that it stops at the horizontal wall the node would collide with (null if there's no such wall)
-            Point2D restDelta;              // delta - td, with td = minimum(td1, td2)
-            Point2D reflectionDelta;        // The delta that is the result of bouncing off a wall
+        // Active Nodes that aren't children are at rest as long as their bounds don't change
+        for (int id = 0; id < bodies.size; id++) {
+            if ((bodies.flags[id] & (BodyStore.ACTIVE | BodyStore.CHILD)) == BodyStore.ACTIVE) {
+                bodies.setFlag(id, BodyStore.SLEEPING, (bodies.flags[id] & BodyStore.DIRTY) == 0);
+            }
+        }
+        
+        // Test every pair of bodies that are within the proximity threshold of each other once
+        nextColliding.clear();
+        nextProximity.clear();
+        tested.clear();
+        shapeCollisions = pane.isShapeCollisionDetection();
+        pane.getBroadPhase().queryPairs(checkPair);
+        testCandidates();
+        
+        // Pairs that weren't found because one of their Nodes isn't part of the scene graph keep their state
+        keepDetached(colliding, nextColliding);
+        keepDetached(proximity, nextProximity);
+        
+        // Find the collisions along the paths of continuous bodies
+        sweepContinuous();
+        
+        // Compare the pairs to those of the last step, and fire the events
+        // only after the broad phase is done, since handlers may change it
+        eventCount = 0;
+        diff(colliding, nextColliding, AREA_LEFT, -1);
+        diff(nextColliding, colliding, AREA_ENTERED, IN_AREA);
+        for (int i = 0; i < sweepCount; i++) {
+            long pair = sweepPairs[i];
+            if (nextColliding.contains(pair)) {
+                queueEvent(AREA_ENTERED, pair, 0);
+            } else {
+                // Fired with the distance at which they ended up
+                queueEvent(AREA_PASSED, pair, distance(AREA_LEFT, pair));
+            }
+        }
+        diff(proximity, nextProximity, PROXIMITY_LEFT, -1);
+        diff(nextProximity, proximity, PROXIMITY_ENTERED, IN_PROXIMITY);
+        
+        LongHashSet swap = colliding;
+        colliding = nextColliding;
+        nextColliding = swap;
+        swap = proximity;
+        proximity = nextProximity;
+        nextProximity = swap;
+        
+        for (int id = 0; id < bodies.size; id++) {
+            if (bodies.hasFlag(id, BodyStore.ACTIVE)) {
+                bodies.setFlag(id, BodyStore.DIRTY, false);
+            }
+        }
+        
+        // Respond to the collisions after clearing the dirty flags, so that
+        // the bodies it moves are checked again in the next step
+        if (pane.isCollisionResponse()) {
+            resolveContacts();
+        }
+        
+        fireEvents();
+    }
+    
+    /**
+     * Pushes the bodies that collide as of this step apart, by changing their
+     * vectors and relocating them out of each other.
+     */
+    private void resolveContacts() {
+        Transform t = pane.getLocalToSceneTransform();
+        contactSolver.solve(bodies, colliding, shapeCollisions, t, pane.getVectorThreshold());
+        if (contactSolver.count == 0) return;
+        
+        // Corrections are in scene coordinates, relocation is in the coordinates of the pane
+        double determinant = t.getMxx() * t.getMyy() - t.getMxy() * t.getMyx();
+        for (int id = 0; id < bodies.size; id++) {
+            double correctionX = contactSolver.correctionX[id];
+            double correctionY = contactSolver.correctionY[id];
+            if (correctionX == 0 && correctionY == 0) continue;
             
-            double xyRatio = deltaX / deltaY;
+            layoutNode(id,
+                    (t.getMyy() * correctionX - t.getMxy() * correctionY) / determinant,
+                    (t.getMxx() * correctionY - t.getMyx() * correctionX) / determinant);
             
-            // Compute td1 if one exists
-            if (deltaX < 0 && destination.getMinX() < paneBounds.getMinX()) {
-                deltaX = paneBounds.getMinX() - nodeBounds.getMinX();
-                deltaY = deltaX / xyRatio;
-                trimmedDelta1 = new Point2D(deltaX, deltaY);
-            } else if (deltaX > 0 && destination.getMaxX() > paneBounds.getMaxX()) {
-                deltaX = paneBounds.getMaxX() - nodeBounds.getMaxX();
-                deltaY = deltaX / xyRatio;
-                trimmedDelta1 = new Point2D(deltaX, deltaY);
+            // Record the new location, so it isn't undone by interpolation
+            Node node = bodies.nodes[id];
+            bodies.x[id] = node.getLayoutX();
+            bodies.y[id] = node.getLayoutY();
+        }
+    }
+    
+    /**
+     * Brings the broad phase up to date with the active Nodes that were added
+     * or moved since it was last updated.
+     */
+    void updateIndex() {
+        proximityThreshold = pane.getProximityThreshold();
+        updateBroadPhase();
+    }
+    
+    /**
+     * Forgets all pairs of a Node that stops being active, so they won't
+     * be mistaken for the pairs of a Node that reuses its id.
+     */
+    void removeContacts(Node node) {
+        int id = bodies.idOf(node);
+        if (id < 0) return;
+        
+        removeContacts(colliding, id);
+        removeContacts(proximity, id);
+        if (bodies.hasFlag(id, BodyStore.INDEXED) && touchesExtent(id)) {
+            extentLoose = true;
+        }
+    }
+    
+    // Finds out whether a pair of active Nodes collide or are in each
+    // other's proximity, and adds them to the pairs of the current step
+    private void checkPair(Node thisNode, Node otherNode) {
+        int thisId = bodies.idOf(thisNode);
+        int otherId = bodies.idOf(otherNode);
+        if (thisId < 0 || otherId < 0) return;
+        long pair = LongHashSet.pair(thisId, otherId);
+        
+        // Nothing changes between two bodies that are both at rest, and
+        // nodes that aren't part of the scene graph aren't checked at all
+        if ((bodies.hasFlag(thisId, BodyStore.SLEEPING) && bodies.hasFlag(otherId, BodyStore.SLEEPING))
+                || thisNode.getParent() == null || otherNode.getParent() == null) {
+            if (colliding.contains(pair)) nextColliding.add(pair);
+            if (proximity.contains(pair)) nextProximity.add(pair);
+            return;
+        }
+        bodies.updateBounds(thisId);
+        bodies.updateBounds(otherId);
+        if (shapeCollisions) {
+            bodies.updateShape(thisId);
+            bodies.updateShape(otherId);
+        }
+        
+        // Tested later on, possibly in parallel
+        if (candidateCount == candidatePairs.length) {
+            candidatePairs = Arrays.copyOf(candidatePairs, candidateCount * 2);
+            candidateStates = Arrays.copyOf(candidateStates, candidateCount * 2);
+        }
+        candidatePairs[candidateCount++] = pair;
+    }
+    
+    // Tests the candidate pairs, in parallel if there are many of them
+    private void testCandidates() {
+        if (candidateCount >= PARALLEL_THRESHOLD && pane.isParallelCollisionDetection()
+                && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            ForkJoinPool.commonPool().invoke(new TestTask(0, candidateCount));
+        } else {
+            testCandidates(0, candidateCount);
+        }
+        
+        // Add the results to the pairs of the current step in the order the
+        // broad phase reported them, so the outcome doesn't depend on threads
+        for (int i = 0; i < candidateCount; i++) {
+            long pair = candidatePairs[i];
+            tested.add(pair);
+            if (candidateStates[i] == PAIR_COLLIDING) {
+                nextColliding.add(pair);
+                // Whether they are in each other's proximity doesn't change while they collide
+                if (proximity.contains(pair)) nextProximity.add(pair);
+            } else if (candidateStates[i] == PAIR_IN_PROXIMITY) {
+                nextProximity.add(pair);
             }
-            // Compute td2 if one exists
-            if (deltaY < 0 && destination.getMinY() < paneBounds.getMinY()) {
-                deltaY = paneBounds.getMinY() - nodeBounds.getMinY();
-                deltaX = deltaY * xyRatio;
-                trimmedDelta2 = new Point2D(deltaX, deltaY);
-            } else if (deltaY > 0 && destination.getMaxY() > paneBounds.getMaxY()) {
-                deltaY = paneBounds.getMaxY() - nodeBounds.getMaxY();
-                deltaX = deltaY * xyRatio;
-                trimmedDelta2 = new Point2D(deltaX, deltaY);
+        }
+        candidateCount = 0;
+    }
+    
+    // Tests a range of candidate pairs. Only reads the cached bounds of the
+    // bodies, which don't change while the pairs are tested, and only writes
+    // the states of its own pairs, so ranges can be tested in parallel.
+    private void testCandidates(int from, int to) {
+        for (int i = from; i < to; i++) {
+            long pair = candidatePairs[i];
+            int thisId = LongHashSet.first(pair);
+            int otherId = LongHashSet.second(pair);
+            double pt = Math.max(proximityRadius(thisId), proximityRadius(otherId));
+            if (isShaped(thisId, otherId)) {
+                candidateStates[i] = testShapes(thisId, otherId, pt);
+            } else if (intersects(thisId, otherId, 0)) {
+                candidateStates[i] = PAIR_COLLIDING;
+            } else if (pt > 0 && boundsDistance(thisId, otherId) <= pt) {
+                candidateStates[i] = PAIR_IN_PROXIMITY;
+            } else {
+                candidateStates[i] = PAIR_APART;
             }
-            // Determine reflectionDelta
-            if (trimmedDelta1 == null || (trimmedDelta2 != null && trimmedDelta1.magnitude() > trimmedDelta2.magnitude())) {
-                // Would hit top/bottom border before left/right
-                restDelta = delta.subtract(trimmedDelta2);
-                reflectionDelta = new Point2D(restDelta.getX(), -restDelta.getY());
+        }
+    }
+    
+    // Tests a candidate pair using the cached collision shapes of its bodies
+    private byte testShapes(int thisId, int otherId, double pt) {
+        // The shapes can't be nearer to each other than their bounds
+        if (!intersects(thisId, otherId, pt)) return PAIR_APART;
+        
+        double distance = bodies.shapeDistance(thisId, otherId);
+        if (distance <= 0) return PAIR_COLLIDING;
+        if (pt > 0 && distance <= pt) return PAIR_IN_PROXIMITY;
+        return PAIR_APART;
+    }
+    
+    // Tests a range of candidate pairs, splitting it among the threads of the pool.
+    // It is never serialized
+    @SuppressWarnings("serial")
+    private final class TestTask extends RecursiveAction {
+        private final int from, to;
+        
+        TestTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_BATCH) {
+                testCandidates(from, to);
             } else {
-                // Would hit left/right border before top/bottom
-                restDelta = delta.subtract(trimmedDelta1);
-                reflectionDelta = new Point2D(-restDelta.getX(), restDelta.getY());
+                int middle = (from + to) >>> 1;
+                invokeAll(new TestTask(from, middle), new TestTask(middle, to));
             }
+        }
+    }
+    
+    // Finds the bodies that continuous bodies collided with along the path
+    // they moved since the last step, which didn't collide at the start of
+    // it. The path of a body is the translation of its bounds; the bodies it
+    // may collide with are assumed to move along a straight line as well.
+    private void sweepContinuous() {
+        sweptPairs.clear();
+        sweepCount = 0;
+        for (int id = 0; id < bodies.size; id++) {
+            if ((bodies.flags[id] & (BodyStore.SWEPT | BodyStore.CONTINUOUS | BodyStore.ACTIVE))
+                    != (BodyStore.SWEPT | BodyStore.CONTINUOUS | BodyStore.ACTIVE)) continue;
+            if (bodies.nodes[id].getParent() == null) continue;
             
-            // Relocate node to the wall it collides with
-            node.setLayoutX(node.getLayoutX() + deltaX);
-            node.setLayoutY(node.getLayoutY() + deltaY);
-            TactilePane.setVector(node, reflectionDelta.multiply(pane.getBounceMultiplier() / TIME_STEP));
+            double deltaX = sweepDeltaX(id), deltaY = sweepDeltaY(id);
+            if (deltaX == 0 && deltaY == 0) continue;
             
-            // Layout the node for the remaining delta
-            layoutNode(node, reflectionDelta);
+            sweepCandidateCount = 0;
+            pane.getBroadPhase().query(Math.min(bodies.startMinX[id], bodies.minX[id]), Math.min(bodies.startMinY[id], bodies.minY[id]),
+                    Math.max(bodies.startMaxX[id], bodies.maxX[id]), Math.max(bodies.startMaxY[id], bodies.maxY[id]), addSweepCandidate);
+            for (int i = 0; i < sweepCandidateCount; i++) {
+                int otherId = sweepCandidates[i];
+                if (otherId == id || bodies.nodes[otherId].getParent() == null) continue;
+                long pair = LongHashSet.pair(id, otherId);
+                if (colliding.contains(pair) || sweptPairs.contains(pair)) continue;
+                
+                // Move this body relative to the other one, from where they both started
+                boolean otherSwept = bodies.hasFlag(otherId, BodyStore.SWEPT);
+                double otherMinX = otherSwept ? bodies.startMinX[otherId] : bodies.minX[otherId];
+                double otherMinY = otherSwept ? bodies.startMinY[otherId] : bodies.minY[otherId];
+                double otherMaxX = otherSwept ? bodies.startMaxX[otherId] : bodies.maxX[otherId];
+                double otherMaxY = otherSwept ? bodies.startMaxY[otherId] : bodies.maxY[otherId];
+                double vectorX = deltaX - (otherSwept ? sweepDeltaX(otherId) : 0);
+                double vectorY = deltaY - (otherSwept ? sweepDeltaY(otherId) : 0);
+                
+                double enter = Math.max(
+                        SpatialQueries.enterTime(bodies.startMinX[id], bodies.startMaxX[id], vectorX, otherMinX, otherMaxX),
+                        SpatialQueries.enterTime(bodies.startMinY[id], bodies.startMaxY[id], vectorY, otherMinY, otherMaxY));
+                double exit = Math.min(
+                        SpatialQueries.exitTime(bodies.startMinX[id], bodies.startMaxX[id], vectorX, otherMinX, otherMaxX),
+                        SpatialQueries.exitTime(bodies.startMinY[id], bodies.startMaxY[id], vectorY, otherMinY, otherMaxY));
+                if (enter < 0 || enter > 1 || enter > exit) continue;
+                
+                sweptPairs.add(pair);
+                if (sweepCount == sweepPairs.length) {
+                    sweepPairs = Arrays.copyOf(sweepPairs, sweepCount * 2);
+                    sweepTimes = Arrays.copyOf(sweepTimes, sweepCount * 2);
+                }
+                // Insert it in order of time of impact, then of pair so the order is stable
+                int j = sweepCount - 1;
+                for (; j >= 0 && (sweepTimes[j] > enter || (sweepTimes[j] == enter && sweepPairs[j] > pair)); j--) {
+                    sweepPairs[j + 1] = sweepPairs[j];
+                    sweepTimes[j + 1] = sweepTimes[j];
+                }
+                sweepPairs[j + 1] = pair;
+                sweepTimes[j + 1] = enter;
+                sweepCount++;
+            }
+        }
+        
+        // The next sweeps start where the bodies are now
+        for (int id = 0; id < bodies.size; id++) {
+            bodies.flags[id] &= ~BodyStore.SWEPT;
         }
     }
     
-    private void checkCollisions() {
-        // Update QuadTree
-        pane.quadTree.update();
-
-        for (Node thisNode : pane.getActiveNodes()) {
-            // Don't do calculations for nodes that aren't part of the scene graph
-            if (thisNode.getParent() == null) continue;
+    // The translation of a body since the start of its sweep
+    private double sweepDeltaX(int id) {
+        return (bodies.minX[id] + bodies.maxX[id] - bodies.startMinX[id] - bodies.startMaxX[id]) / 2;
+    }
+    
+    private double sweepDeltaY(int id) {
+        return (bodies.minY[id] + bodies.maxY[id] - bodies.startMinY[id] - bodies.startMaxY[id]) / 2;
+    }
+    
+    private void addSweepCandidate(Node node) {
+        int id = bodies.idOf(node);
+        if (id < 0 || !bodies.hasFlag(id, BodyStore.ACTIVE)) return;
+        
+        if (sweepCandidateCount == sweepCandidates.length) {
+            sweepCandidates = Arrays.copyOf(sweepCandidates, sweepCandidateCount * 2);
+        }
+        sweepCandidates[sweepCandidateCount++] = id;
+    }
+    
+    // Copies the pairs of the last step with a Node that isn't part of the
+    // scene graph, and that weren't reported by the broad phase
+    private void keepDetached(LongHashSet pairs, LongHashSet nextPairs) {
+        for (int slot = 0; slot < pairs.capacity(); slot++) {
+            long pair = pairs.keyAt(slot);
+            if (pair < 0 || tested.contains(pair)) continue;
             
-            Bounds thisBounds = getBounds(thisNode);
-            Bounds proximityBounds = null;
+            Node node = bodies.nodes[LongHashSet.first(pair)];
+            Node otherNode = bodies.nodes[LongHashSet.second(pair)];
+            if (node != null && otherNode != null && (node.getParent() == null || otherNode.getParent() == null)) {
+                nextPairs.add(pair);
+            }
+        }
+    }
+    
+    // Queues a transition event for every pair that is in pairs but not in
+    // otherPairs, and a stay event for every other tested pair in pairs
+    private void diff(LongHashSet pairs, LongHashSet otherPairs, int transition, int stay) {
+        for (int slot = 0; slot < pairs.capacity(); slot++) {
+            long pair = pairs.keyAt(slot);
+            if (pair < 0) continue;
             
-            double pt = pane.getProximityThreshold();
-            if (pt > 0) {
-                proximityBounds = getProximityBounds(thisNode);
+            // Collisions of continuous bodies are queued in the order they happened
+            if (!otherPairs.contains(pair) && (transition != AREA_ENTERED || !sweptPairs.contains(pair))) {
+                queueEvent(transition, pair, distance(transition, pair));
             }
-
-            List<Node> otherNodes = pane.quadTree.retrieve(thisNode);
-            for (Node otherNode : otherNodes) {
-                if (otherNode.getParent() == null) continue;
-                
-                Bounds otherBounds = getBounds(otherNode);
-
-                if (thisBounds.intersects(otherBounds)) {
-                    if (TactilePane.getNodesColliding(thisNode).add(otherNode)) {
-                        TactilePane.getNodesColliding(otherNode).add(thisNode);
-
-                        thisNode.fireEvent(new TactilePaneEvent(TactilePaneEvent.AREA_ENTERED, thisNode, otherNode));
-                        otherNode.fireEvent(new TactilePaneEvent(TactilePaneEvent.AREA_ENTERED, otherNode, thisNode));
+            // Pairs in each other's proximity only get IN_PROXIMITY events while they don't collide
+            if (stay >= 0 && tested.contains(pair) && (stay != IN_PROXIMITY || !nextColliding.contains(pair))) {
+                queueEvent(stay, pair, distance(stay, pair));
+            }
+        }
+    }
+    
+    private void queueEvent(int type, long pair, double distance) {
+        if (eventCount == eventPairs.length) {
+            eventPairs = Arrays.copyOf(eventPairs, eventCount * 2);
+            eventTypes = Arrays.copyOf(eventTypes, eventCount * 2);
+            eventDistances = Arrays.copyOf(eventDistances, eventCount * 2);
+        }
+        eventPairs[eventCount] = pair;
+        eventTypes[eventCount] = type;
+        eventDistances[eventCount] = distance;
+        eventCount++;
+    }
+    
+    // The distance between the Nodes of a pair for an event of the given
+    // type, computed before any handler gets the chance to move them
+    private double distance(int type, long pair) {
+        if (type == AREA_ENTERED || type == IN_AREA) return 0;
+        
+        int id = LongHashSet.first(pair);
+        int otherId = LongHashSet.second(pair);
+        if (bodies.nodes[id] == null || bodies.nodes[otherId] == null) return Double.NaN;
+        if (shapeCollisions) {
+            // Pairs that the broad phase no longer reports weren't brought up to date
+            bodies.updateShape(id);
+            bodies.updateShape(otherId);
+            if (isShaped(id, otherId)) {
+                return Math.max(0, bodies.shapeDistance(id, otherId));
+            }
+        }
+        return boundsDistance(id, otherId);
+    }
+    
+    // Fires the queued events, and updates the sets of Nodes every Node
+    // collides with or is in the proximity of
+    private void fireEvents() {
+        for (int i = 0; i < eventCount; i++) {
+            long pair = eventPairs[i];
+            Node node = bodies.nodes[LongHashSet.first(pair)];
+            Node otherNode = bodies.nodes[LongHashSet.second(pair)];
+            if (node == null || otherNode == null) continue;
+            
+            switch (eventTypes[i]) {
+                case AREA_ENTERED:
+                    // A handler may have made one of the Nodes inactive already
+                    if (colliding.contains(pair) && TactilePane.getNodesColliding(node).add(otherNode)) {
+                        TactilePane.getNodesColliding(otherNode).add(node);
+                        fireEvents(TactilePaneEvent.AREA_ENTERED, node, otherNode, eventDistances[i]);
                     }
-                    thisNode.fireEvent(new TactilePaneEvent(TactilePaneEvent.IN_AREA, thisNode, otherNode));
-                } else {
-                    if (TactilePane.getNodesColliding(thisNode).remove(otherNode)) {
-                        TactilePane.getNodesColliding(otherNode).remove(thisNode);
-
-                        thisNode.fireEvent(new TactilePaneEvent(TactilePaneEvent.AREA_LEFT, thisNode, otherNode));
-                        otherNode.fireEvent(new TactilePaneEvent(TactilePaneEvent.AREA_LEFT, otherNode, thisNode));
+                    break;
+                case IN_AREA:
+                    if (colliding.contains(pair)) {
+                        fireEvents(TactilePaneEvent.IN_AREA, node, otherNode, eventDistances[i]);
                     }
-                    if (proximityBounds != null && proximityBounds.intersects(otherBounds)) {
-                        if (TactilePane.getNodesInProximity(thisNode).add(otherNode)) {
-                            TactilePane.getNodesInProximity(otherNode).add(thisNode);
-
-                            thisNode.fireEvent(new TactilePaneEvent(TactilePaneEvent.PROXIMITY_ENTERED, thisNode, otherNode));
-                            otherNode.fireEvent(new TactilePaneEvent(TactilePaneEvent.PROXIMITY_ENTERED, otherNode, thisNode));
-                        }
-                        thisNode.fireEvent(new TactilePaneEvent(TactilePaneEvent.IN_PROXIMITY, thisNode, otherNode));
-                    } else {
-                        if (TactilePane.getNodesInProximity(thisNode).remove(otherNode)) {
-                            TactilePane.getNodesInProximity(otherNode).remove(thisNode);
-
-                            thisNode.fireEvent(new TactilePaneEvent(TactilePaneEvent.PROXIMITY_LEFT, thisNode, otherNode));
-                            otherNode.fireEvent(new TactilePaneEvent(TactilePaneEvent.PROXIMITY_LEFT, otherNode, thisNode));
-                        }
+                    break;
+                case AREA_LEFT:
+                    if (TactilePane.getNodesColliding(node).remove(otherNode)) {
+                        TactilePane.getNodesColliding(otherNode).remove(node);
+                        fireEvents(TactilePaneEvent.AREA_LEFT, node, otherNode, eventDistances[i]);
+                    }
+                    break;
+                case AREA_PASSED:
+                    if (TactilePane.getNodesColliding(node).add(otherNode)) {
+                        TactilePane.getNodesColliding(otherNode).add(node);
+                        fireEvents(TactilePaneEvent.AREA_ENTERED, node, otherNode, 0);
+                    }
+                    if (TactilePane.getNodesColliding(node).remove(otherNode)) {
+                        TactilePane.getNodesColliding(otherNode).remove(node);
+                        fireEvents(TactilePaneEvent.AREA_LEFT, node, otherNode, eventDistances[i]);
+                    }
+                    break;
+                case PROXIMITY_ENTERED:
+                    if (proximity.contains(pair) && TactilePane.getNodesInProximity(node).add(otherNode)) {
+                        TactilePane.getNodesInProximity(otherNode).add(node);
+                        fireEvents(TactilePaneEvent.PROXIMITY_ENTERED, node, otherNode, eventDistances[i]);
                     }
+                    break;
+                case IN_PROXIMITY:
+                    if (proximity.contains(pair)) {
+                        fireEvents(TactilePaneEvent.IN_PROXIMITY, node, otherNode, eventDistances[i]);
+                    }
+                    break;
+                case PROXIMITY_LEFT:
+                    if (TactilePane.getNodesInProximity(node).remove(otherNode)) {
+                        TactilePane.getNodesInProximity(otherNode).remove(node);
+                        fireEvents(TactilePaneEvent.PROXIMITY_LEFT, node, otherNode, eventDistances[i]);
+                    }
+                    break;
+            }
+        }
+        // Let go of the Nodes
+        eventCount = 0;
+    }
+    
+    // Fires an event on both Nodes of a pair
+    private static void fireEvents(EventType<TactilePaneEvent> type, Node node, Node otherNode, double distance) {
+        node.fireEvent(new TactilePaneEvent(type, node, otherNode, distance));
+        otherNode.fireEvent(new TactilePaneEvent(type, otherNode, node, distance));
+    }
+    
+    private void removeContacts(LongHashSet pairs, int id) {
+        int count = 0;
+        for (int slot = 0; slot < pairs.capacity(); slot++) {
+            long pair = pairs.keyAt(slot);
+            if (pair >= 0 && (LongHashSet.first(pair) == id || LongHashSet.second(pair) == id)) {
+                if (count == removedPairs.length) {
+                    removedPairs = Arrays.copyOf(removedPairs, count * 2);
                 }
+                removedPairs[count++] = pair;
             }
-            TactilePane.setDirty(thisNode, false);
+        }
+        for (int i = 0; i < count; i++) {
+            pairs.remove(removedPairs[i]);
         }
     }
     
     // HELP METHODS
     
-    private Bounds getBounds(Node node) {
-        Bounds bounds = TactilePane.isDirty(node) ? null : boundsByNode.get(node);
-        if (bounds == null) {
-            bounds = node.localToScene(node.getBoundsInLocal());
-            boundsByNode.put(node, bounds);
-        }
-        return bounds;
-    }
-    
-    private Bounds getProximityBounds(Node node) {
-        Bounds proximityBounds = TactilePane.isDirty(node) ? null : proximityBoundsByNode.get(node);
-        if (proximityBounds == null) {
-            Bounds normalBounds = getBounds(node); 
-            double pt = pane.getProximityThreshold();
-            double x = normalBounds.getMinX() - pt;
-            double y = normalBounds.getMinY() - pt;
-            double w = normalBounds.getWidth() + pt * 2;
-            double h = normalBounds.getHeight() + pt * 2;
-            proximityBounds = new BoundingBox(x, y, w, h);
-            proximityBoundsByNode.put(node, proximityBounds);
-        }
-        return proximityBounds;
-    }
-    
-    private void cleanBoundsCaches() {
-        pane.getChildren()
-                .stream()
-                .filter(TactilePane::isDirty)
-                .forEach(node -> { 
-            boundsByNode.remove(node);
-            proximityBoundsByNode.remove(node);
-        });
+    // Inserts active bodies in the broad phase, and updates the ones whose
+    // bounds changed, with their bounds enlarged by margin on every side.
+    // Only the bodies in the refresh queue of the BodyStore are visited,
+    // unless the margins of all of them changed
+    private void updateBroadPhase() {
+        boolean thresholdChanged = proximityThreshold != indexedThreshold;
+        if (bodies.radiiChanged || thresholdChanged) {
+            bodies.radiiChanged = false;
+            indexedThreshold = proximityThreshold;
+            
+            // Every Node is enlarged by its proximity radius minus half of the
+            // smallest radius. The margins of a pair then add up to at least the
+            // largest radius of the two, and to exactly the proximity threshold
+            // when no Node has a radius of its own.
+            double minRadius = Double.POSITIVE_INFINITY;
+            for (int id = 0; id < bodies.size; id++) {
+                if (bodies.hasFlag(id, BodyStore.ACTIVE)) {
+                    minRadius = Math.min(minRadius, proximityRadius(id));
+                }
+            }
+            // The threshold is the radius of every Node without one of its own,
+            // so changing it changes their margins even if the smallest radius stays
+            if (minRadius != Double.POSITIVE_INFINITY && (minRadius != indexedMinRadius || thresholdChanged)) {
+                indexedMinRadius = minRadius;
+                // The extent is recomputed along the way
+                extentMinX = extentMinY = Double.POSITIVE_INFINITY;
+                extentMaxX = extentMaxY = Double.NEGATIVE_INFINITY;
+                extentLoose = false;
+                for (int id = 0; id < bodies.size; id++) {
+                    if (bodies.hasFlag(id, BodyStore.ACTIVE)) {
+                        refresh(id);
+                    }
+                }
+            }
+        }
+        
+        for (int i = 0; i < bodies.refreshCount; i++) {
+            int id = bodies.refreshQueue[i];
+            bodies.setFlag(id, BodyStore.QUEUED, false);
+            int flags = bodies.flags[id];
+            if ((flags & BodyStore.ACTIVE) == 0) continue;
+            if ((flags & BodyStore.INDEXED) != 0 && !bodies.isDirty(id)) continue;
+            
+            refresh(id);
+        }
+        bodies.refreshCount = 0;
+    }
+    
+    // Recomputes the cached bounds of an active body, and inserts or updates it in the broad phase
+    private void refresh(int id) {
+        boolean indexed = bodies.hasFlag(id, BodyStore.INDEXED);
+        // The extent can't be shrunk when a body that touches it moves inwards
+        if (indexed && touchesExtent(id)) {
+            extentLoose = true;
+        }
+        
+        bodies.updateBounds(id);
+        double margin = proximityRadius(id) - indexedMinRadius / 2;
+        double minX = bodies.minX[id] - margin, minY = bodies.minY[id] - margin;
+        double maxX = bodies.maxX[id] + margin, maxY = bodies.maxY[id] + margin;
+        BroadPhase broadPhase = pane.getBroadPhase();
+        if (indexed) {
+            broadPhase.update(bodies.nodes[id], minX, minY, maxX, maxY);
+        } else {
+            broadPhase.insert(bodies.nodes[id], minX, minY, maxX, maxY);
+            bodies.setFlag(id, BodyStore.INDEXED, true);
+        }
+        
+        extentMinX = Math.min(extentMinX, bodies.minX[id]);
+        extentMinY = Math.min(extentMinY, bodies.minY[id]);
+        extentMaxX = Math.max(extentMaxX, bodies.maxX[id]);
+        extentMaxY = Math.max(extentMaxY, bodies.maxY[id]);
+    }
+    
+    // Whether the cached bounds of a body touch the extent
+    private boolean touchesExtent(int id) {
+        return bodies.minX[id] <= extentMinX || bodies.minY[id] <= extentMinY
+                || bodies.maxX[id] >= extentMaxX || bodies.maxY[id] >= extentMaxY;
+    }
+    
+    // Recomputes the extent from the cached bounds of the active bodies in the broad phase
+    private void updateExtent() {
+        extentMinX = extentMinY = Double.POSITIVE_INFINITY;
+        extentMaxX = extentMaxY = Double.NEGATIVE_INFINITY;
+        for (int id = 0; id < bodies.size; id++) {
+            if ((bodies.flags[id] & (BodyStore.ACTIVE | BodyStore.INDEXED)) == (BodyStore.ACTIVE | BodyStore.INDEXED)) {
+                extentMinX = Math.min(extentMinX, bodies.minX[id]);
+                extentMinY = Math.min(extentMinY, bodies.minY[id]);
+                extentMaxX = Math.max(extentMaxX, bodies.maxX[id]);
+                extentMaxY = Math.max(extentMaxY, bodies.maxY[id]);
+            }
+        }
+        extentLoose = false;
+    }
+    
+    // The proximity radius of a body, or the proximity threshold of the current step if it has none
+    private double proximityRadius(int id) {
+        double radius = bodies.proximityRadius[id];
+        return radius < 0 ? proximityThreshold : radius;
+    }
+    
+    // Whether the cached collision shapes of a pair of bodies are tested, rather than their bounds
+    private boolean isShaped(int id, int otherId) {
+        return shapeCollisions && (bodies.hasFlag(id, BodyStore.SHAPED) || bodies.hasFlag(otherId, BodyStore.SHAPED));
+    }
+    
+    // The distance between the cached bounds of two bodies, 0 if they intersect
+    private double boundsDistance(int id, int otherId) {
+        double dx = Math.max(0, Math.max(bodies.minX[otherId] - bodies.maxX[id], bodies.minX[id] - bodies.maxX[otherId]));
+        double dy = Math.max(0, Math.max(bodies.minY[otherId] - bodies.maxY[id], bodies.minY[id] - bodies.maxY[otherId]));
+        return dx == 0 ? dy : dy == 0 ? dx : Math.sqrt(dx * dx + dy * dy);
+    }
+    
+    // Whether the cached bounds of two bodies intersect, with the bounds of the
+    // first body enlarged by margin on every side
+    private boolean intersects(int id, int otherId, double margin) {
+        return bodies.maxX[otherId] >= bodies.minX[id] - margin
+                && bodies.maxY[otherId] >= bodies.minY[id] - margin
+                && bodies.minX[otherId] <= bodies.maxX[id] + margin
+                && bodies.minY[otherId] <= bodies.maxY[id] + margin;
     }
 }
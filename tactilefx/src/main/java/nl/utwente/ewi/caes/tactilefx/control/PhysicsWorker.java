@@ -0,0 +1,612 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import javafx.geometry.Bounds;
+import javafx.geometry.Point2D;
+import javafx.scene.Node;
+
+/**
+ * Integrates the positions and vectors of the children of a TactilePane on a
+ * dedicated worker thread. The worker never touches the scene graph: it steps
+ * a private copy of the state of every child (its position, vector and bounds),
+ * indexed by the ids the BodyStore of the TactilePane gave them.
+ * <p>
+ * Once per pulse, the JavaFX Application Thread calls {@link #applyResults()}
+ * to lay out the children according to the latest state the worker published,
+ * and {@link #synchronize()} to send the current state of the scene graph back
+ * to the worker. Input that happens in between, such as a drag gesture, reaches
+ * the worker through a lock-free queue. The buffers that carry the state in
+ * either direction are reused, so neither thread allocates per pulse.
+ * <p>
+ * A step follows {@link PhysicsTimer}: friction, sliding, the displacement of
+ * the selected integrator, borders and bouncing are computed by the same
+ * {@link StepParameters} and {@link BorderReflection}, and Bonds are solved by
+ * a {@link BondGraph#copyFrom(BodyStore, Node) copy} of the BondGraph of the
+ * pane, in the coordinate space of the pane instead of in scene coordinates.
+ * Unlike PhysicsTimer, the worker doesn't put resting bodies to sleep, which
+ * only saves work, and doesn't interpolate positions, since the children are
+ * laid out at the latest published step rather than at a fixed time step
+ * behind the pulse.
+ */
+final class PhysicsWorker implements Runnable {
+    // Flags of a body, on top of those of BodyStore
+    private static final int MOVED = 1 << 30;   // Relocated outside of the physics
+    private static final int PUSHED = 1 << 29;  // Vector was set outside of the physics
+    // Flags of BodyStore that are sent to the worker
+    private static final int SENT_FLAGS = BodyStore.CHILD | BodyStore.IN_USE
+            | BodyStore.SLIDE_ON_RELEASE | BodyStore.ANCHORED;
+
+    private final TactilePane pane;
+    private final BodyStore bodies;
+    private final Queue<Move> moves = new ConcurrentLinkedQueue<>();
+    // The latest Snapshot that the worker hasn't processed yet, and one that
+    // may be reused; together with the one the worker uses, they're swapped around
+    private final AtomicReference<Snapshot> pendingSnapshot = new AtomicReference<>();
+    private final AtomicReference<Snapshot> spareSnapshot = new AtomicReference<>();
+    // The same for the Frames the worker publishes
+    private final AtomicReference<Frame> output = new AtomicReference<>();
+    private final AtomicReference<Frame> spareFrame = new AtomicReference<>();
+
+    private Thread thread;
+    private volatile boolean running;
+
+    // STATE OWNED BY THE JAVAFX APPLICATION THREAD
+
+    // What the worker was last told about (or last reported for) every body,
+    // as far as the FX thread is concerned
+    private Node[] knownNodes = new Node[0];
+    private double[] knownX = new double[0], knownY = new double[0];
+    private double[] knownVx = new double[0], knownVy = new double[0];
+    private long[] movedSequences = new long[0], pushedSequences = new long[0];
+    private long sequence;
+
+    // STATE OWNED BY THE WORKER THREAD
+
+    private long processedSequence;
+    // One past the highest id of a body
+    private int count;
+    private Node[] nodes = new Node[0];
+    private int[] flags = new int[0];
+    private double[] x = new double[0], y = new double[0];
+    private double[] prevX = new double[0], prevY = new double[0];
+    private double[] vx = new double[0], vy = new double[0];
+    private double[] startVx = new double[0], startVy = new double[0];
+    private double[] frictionVx = new double[0], frictionVy = new double[0];
+    private double[] offsetX = new double[0], offsetY = new double[0];
+    private double[] width = new double[0], height = new double[0];
+    private final BorderReflection reflection = new BorderReflection();
+
+    // The settings of the pane, as of the last processed Snapshot
+    private Snapshot settings;
+
+    PhysicsWorker(TactilePane pane) {
+        this.pane = pane;
+        this.bodies = pane.bodies;
+    }
+
+    // LIFECYCLE
+
+    void start() {
+        if (running) return;
+
+        running = true;
+        synchronize();
+        thread = new Thread(this, "TactilePane Physics");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the worker thread, and waits until it has finished its current
+     * step, so the worker can be started again without two threads stepping
+     * the same state.
+     */
+    void stop() {
+        if (!running) return;
+
+        running = false;
+        Thread stopped = thread;
+        thread = null;
+        LockSupport.unpark(stopped);
+
+        boolean interrupted = false;
+        while (stopped.isAlive()) {
+            try {
+                stopped.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        // The thread has exited, so its state can be reset from this thread
+        Arrays.fill(knownNodes, null);
+        Arrays.fill(nodes, null);
+        count = 0;
+        settings = null;
+        moves.clear();
+        pendingSnapshot.set(null);
+        output.set(null);
+    }
+
+    @Override
+    public void run() {
+        long previousTime = System.nanoTime();
+        double accumulatedTime = 0;
+
+        while (running) {
+            processInput();
+
+            long currentTime = System.nanoTime();
+            accumulatedTime += (currentTime - previousTime) / 1e9d;
+            previousTime = currentTime;
+
+            int steps = 0;
+            double timeStep = settings == null ? PhysicsTimer.TIME_STEP : settings.parameters.timeStep;
+            while (accumulatedTime >= timeStep && settings != null && steps < settings.maxSubsteps) {
+                step();
+                accumulatedTime -= timeStep;
+                steps++;
+            }
+            if (accumulatedTime >= timeStep) {
+                // Fell behind, drop the steps that couldn't be made up for
+                accumulatedTime %= timeStep;
+            }
+            if (steps > 0) {
+                publish();
+            }
+
+            LockSupport.parkNanos((long) ((timeStep - accumulatedTime) * 1e9d));
+        }
+    }
+
+    // INTERFACE FOR THE JAVAFX APPLICATION THREAD
+
+    /**
+     * Notifies the worker that a Node was relocated by user input.
+     */
+    void submitMove(Node node, double layoutX, double layoutY) {
+        int id = bodies.idOf(node);
+        if (id < 0 || id >= knownNodes.length || knownNodes[id] != node) return;
+
+        moves.offer(new Move(id, node, layoutX, layoutY, sequence));
+        // The worker may take the next Snapshot before this Move, and drop the
+        // Move as part of it, so the Snapshot has to carry the new location as
+        // well. Leaving the known location as it is marks the body as moved
+        // there, and until the worker has processed it, its Frames are ignored.
+        movedSequences[id] = sequence + 1;
+    }
+
+    /**
+     * Lays out the children of the pane according to the latest state published
+     * by the worker. Nodes that are in use or anchored are not relocated, and
+     * results that are older than a change made outside of the physics are ignored.
+     */
+    void applyResults() {
+        Frame frame = output.getAndSet(null);
+        if (frame == null) return;
+
+        int size = Math.min(frame.count, knownNodes.length);
+        for (int id = 0; id < size; id++) {
+            Node node = frame.nodes[id];
+            if (node == null || knownNodes[id] != node || node.getParent() != pane) continue;
+
+            if (frame.sequence >= movedSequences[id]
+                    && (bodies.flags[id] & (BodyStore.IN_USE | BodyStore.ANCHORED)) == 0) {
+                node.setLayoutX(frame.x[id]);
+                node.setLayoutY(frame.y[id]);
+                knownX[id] = frame.x[id];
+                knownY[id] = frame.y[id];
+            }
+            if (frame.sequence >= pushedSequences[id]
+                    && (frame.vx[id] != knownVx[id] || frame.vy[id] != knownVy[id])) {
+                knownVx[id] = frame.vx[id];
+                knownVy[id] = frame.vy[id];
+                TactilePane.setVector(node, new Point2D(knownVx[id], knownVy[id]));
+            }
+        }
+
+        frame.clear();
+        spareFrame.compareAndSet(null, frame);
+    }
+
+    /**
+     * Sends the current state of the pane's children and the pane's settings
+     * to the worker.
+     */
+    void synchronize() {
+        int size = bodies.size;
+        ensureKnownCapacity(size);
+
+        Snapshot snapshot = spareSnapshot.getAndSet(null);
+        if (snapshot == null) {
+            snapshot = new Snapshot();
+        }
+        snapshot.ensureCapacity(size);
+        snapshot.sequence = ++sequence;
+        snapshot.count = size;
+
+        Bounds paneBounds = pane.getLayoutBounds();
+        snapshot.paneMinX = paneBounds.getMinX();
+        snapshot.paneMinY = paneBounds.getMinY();
+        snapshot.paneMaxX = paneBounds.getMaxX();
+        snapshot.paneMaxY = paneBounds.getMaxY();
+        snapshot.bordersCollide = pane.isBordersCollide();
+        snapshot.parameters.update(pane);
+        snapshot.maxSubsteps = pane.getMaxSubsteps();
+
+        for (int id = 0; id < size; id++) {
+            Node node = bodies.nodes[id];
+            int bodyFlags = bodies.flags[id] & SENT_FLAGS;
+            if (node == null || (bodyFlags & BodyStore.CHILD) == 0) {
+                // Not moved by the physics
+                knownNodes[id] = null;
+                snapshot.nodes[id] = null;
+                snapshot.flags[id] = 0;
+                continue;
+            }
+
+            double layoutX = node.getLayoutX();
+            double layoutY = node.getLayoutY();
+            double vectorX = bodies.vx[id];
+            double vectorY = bodies.vy[id];
+
+            if (knownNodes[id] != node) {
+                knownNodes[id] = node;
+                bodyFlags |= MOVED | PUSHED;
+            } else {
+                if (layoutX != knownX[id] || layoutY != knownY[id]) bodyFlags |= MOVED;
+                if (vectorX != knownVx[id] || vectorY != knownVy[id]) bodyFlags |= PUSHED;
+            }
+            if ((bodyFlags & MOVED) != 0) {
+                knownX[id] = layoutX;
+                knownY[id] = layoutY;
+                movedSequences[id] = sequence;
+            }
+            if ((bodyFlags & PUSHED) != 0) {
+                knownVx[id] = vectorX;
+                knownVy[id] = vectorY;
+                pushedSequences[id] = sequence;
+            }
+
+            bodies.updateLocalBounds(id, pane);
+            snapshot.nodes[id] = node;
+            snapshot.x[id] = layoutX;
+            snapshot.y[id] = layoutY;
+            snapshot.vx[id] = vectorX;
+            snapshot.vy[id] = vectorY;
+            snapshot.offsetX[id] = bodies.localMinX[id] - layoutX;
+            snapshot.offsetY[id] = bodies.localMinY[id] - layoutY;
+            snapshot.width[id] = bodies.localMaxX[id] - bodies.localMinX[id];
+            snapshot.height[id] = bodies.localMaxY[id] - bodies.localMinY[id];
+            snapshot.flags[id] = bodyFlags;
+        }
+        // Forget bodies that were deregistered
+        Arrays.fill(knownNodes, size, knownNodes.length, null);
+
+        bodies.bondGraph.update(bodies);
+        snapshot.bondGraph.copyFrom(bodies, pane);
+
+        // Hand the Snapshot over, and keep the one the worker skipped for reuse
+        Snapshot skipped = pendingSnapshot.getAndSet(snapshot);
+        if (skipped != null) {
+            skipped.clear();
+            spareSnapshot.compareAndSet(null, skipped);
+        }
+    }
+
+    private void ensureKnownCapacity(int size) {
+        if (knownNodes.length >= size) return;
+
+        int capacity = Math.max(size, knownNodes.length * 2);
+        knownNodes = Arrays.copyOf(knownNodes, capacity);
+        knownX = Arrays.copyOf(knownX, capacity);
+        knownY = Arrays.copyOf(knownY, capacity);
+        knownVx = Arrays.copyOf(knownVx, capacity);
+        knownVy = Arrays.copyOf(knownVy, capacity);
+        movedSequences = Arrays.copyOf(movedSequences, capacity);
+        pushedSequences = Arrays.copyOf(pushedSequences, capacity);
+    }
+
+    // WORKER METHODS
+
+    private void processInput() {
+        Snapshot snapshot = pendingSnapshot.getAndSet(null);
+        if (snapshot != null) {
+            adopt(snapshot);
+
+            if (settings != null) {
+                settings.clear();
+                spareSnapshot.compareAndSet(null, settings);
+            }
+            settings = snapshot;
+        }
+
+        Move move;
+        while ((move = moves.poll()) != null) {
+            // Moves made before the last Snapshot was taken are part of it
+            if (move.sequence < processedSequence) continue;
+
+            int id = move.id;
+            if (id < count && nodes[id] == move.node) {
+                x[id] = move.layoutX;
+                y[id] = move.layoutY;
+            }
+        }
+    }
+
+    // Brings the body state up to date with a Snapshot, keeping the simulated
+    // state of bodies that were not changed outside of the physics
+    private void adopt(Snapshot snapshot) {
+        int size = snapshot.count;
+        ensureCapacity(size);
+
+        for (int id = 0; id < size; id++) {
+            Node node = snapshot.nodes[id];
+            int bodyFlags = snapshot.flags[id];
+            boolean known = node != null && nodes[id] == node;
+            nodes[id] = node;
+            flags[id] = bodyFlags;
+            if (node == null) continue;
+
+            if (!known || (bodyFlags & MOVED) != 0) {
+                x[id] = snapshot.x[id];
+                y[id] = snapshot.y[id];
+            }
+            if (!known) {
+                prevX[id] = x[id];
+                prevY[id] = y[id];
+            }
+            if (!known || (bodyFlags & PUSHED) != 0) {
+                vx[id] = snapshot.vx[id];
+                vy[id] = snapshot.vy[id];
+            }
+            offsetX[id] = snapshot.offsetX[id];
+            offsetY[id] = snapshot.offsetY[id];
+            width[id] = snapshot.width[id];
+            height[id] = snapshot.height[id];
+        }
+        Arrays.fill(nodes, size, Math.max(size, count), null);
+        Arrays.fill(flags, size, Math.max(size, count), 0);
+
+        count = size;
+        processedSequence = snapshot.sequence;
+    }
+
+    private void ensureCapacity(int size) {
+        if (nodes.length >= size) return;
+
+        int capacity = Math.max(size, nodes.length * 2);
+        nodes = Arrays.copyOf(nodes, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        prevX = Arrays.copyOf(prevX, capacity);
+        prevY = Arrays.copyOf(prevY, capacity);
+        vx = Arrays.copyOf(vx, capacity);
+        vy = Arrays.copyOf(vy, capacity);
+        offsetX = Arrays.copyOf(offsetX, capacity);
+        offsetY = Arrays.copyOf(offsetY, capacity);
+        width = Arrays.copyOf(width, capacity);
+        height = Arrays.copyOf(height, capacity);
+        startVx = new double[capacity];
+        startVy = new double[capacity];
+        frictionVx = new double[capacity];
+        frictionVy = new double[capacity];
+    }
+
+    // Performs a single time step, in the same way as PhysicsTimer.updatePositions()
+    private void step() {
+        Snapshot s = settings;
+        StepParameters parameters = s.parameters;
+
+        // Apply friction and sliding
+        for (int id = 0; id < count; id++) {
+            if ((flags[id] & BodyStore.CHILD) == 0) continue;
+
+            double vectorX = vx[id];
+            double vectorY = vy[id];
+            startVx[id] = vectorX;
+            startVy[id] = vectorY;
+
+            if (vectorX != 0 || vectorY != 0) {
+                double scale = parameters.frictionScale(vectorX, vectorY);
+                vectorX *= scale;
+                vectorY *= scale;
+                vx[id] = vectorX;
+                vy[id] = vectorY;
+            }
+            frictionVx[id] = vectorX;
+            frictionVy[id] = vectorY;
+
+            // If the node is in use, update its vector for slide behaviour
+            int slideFlags = BodyStore.IN_USE | BodyStore.SLIDE_ON_RELEASE;
+            if ((flags[id] & slideFlags) == slideFlags) {
+                vx[id] += (x[id] - prevX[id]) * parameters.slide;
+                vy[id] += (y[id] - prevY[id]) * parameters.slide;
+            }
+        }
+
+        // Update vectors for Bonds
+        BondGraph bondGraph = s.bondGraph;
+        if (parameters.bondSolver == TactilePane.BondSolver.FORCE && bondGraph.count > 0) {
+            updateCenters(bondGraph);
+            bondGraph.solveForces(vx, vy, flags, parameters.bondScale);
+        }
+
+        for (int id = 0; id < count; id++) {
+            // If the node is a child that is not actively being used and not
+            // anchored, update the node's position according to vector
+            if ((flags[id] & (BodyStore.CHILD | BodyStore.IN_USE | BodyStore.ANCHORED)) == BodyStore.CHILD) {
+                double deltaX = parameters.displacement(startVx[id], frictionVx[id], vx[id]);
+                double deltaY = parameters.displacement(startVy[id], frictionVy[id], vy[id]);
+                if (deltaX != 0 || deltaY != 0) {
+                    layoutBody(id, deltaX, deltaY);
+                }
+            }
+        }
+
+        // Move bonded Nodes towards their Bonds
+        if (parameters.bondSolver == TactilePane.BondSolver.POSITION && bondGraph.count > 0) {
+            updateCenters(bondGraph);
+            bondGraph.solvePositions(flags, count, parameters.bondIterations);
+            for (int id = 0; id < count; id++) {
+                double correctionX = bondGraph.correctionX[id];
+                double correctionY = bondGraph.correctionY[id];
+                if (correctionX != 0 || correctionY != 0) {
+                    layoutBody(id, correctionX, correctionY);
+                }
+            }
+        }
+
+        // Record the new location
+        System.arraycopy(x, 0, prevX, 0, count);
+        System.arraycopy(y, 0, prevY, 0, count);
+    }
+
+    // Sets the centers of the bodies in a BondGraph, in the coordinate space of the pane
+    private void updateCenters(BondGraph bondGraph) {
+        bondGraph.ensureCapacity(count);
+        for (int id = 0; id < count; id++) {
+            bondGraph.centerX[id] = x[id] + offsetX[id] + width[id] / 2;
+            bondGraph.centerY[id] = y[id] + offsetY[id] + height[id] / 2;
+        }
+    }
+
+    // Counterpart of PhysicsTimer.layoutNode for the worker's body state
+    private void layoutBody(int id, double deltaX, double deltaY) {
+        Snapshot s = settings;
+
+        for (int bounces = 0; s.bordersCollide; bounces++) {
+            double minX = x[id] + offsetX[id];
+            double minY = y[id] + offsetY[id];
+            if (!reflection.compute(minX, minY, minX + width[id], minY + height[id],
+                    deltaX, deltaY, s.paneMinX, s.paneMinY, s.paneMaxX, s.paneMaxY)) {
+                break;
+            }
+
+            // Relocate body to the wall it collides with
+            x[id] += reflection.wallDeltaX;
+            y[id] += reflection.wallDeltaY;
+            vx[id] = reflection.reflectedX * s.parameters.bounce;
+            vy[id] = reflection.reflectedY * s.parameters.bounce;
+            if (bounces == BorderReflection.MAX_BOUNCES - 1) {
+                return;
+            }
+
+            // Layout the body for the remaining delta
+            deltaX = reflection.reflectedX;
+            deltaY = reflection.reflectedY;
+        }
+
+        x[id] += deltaX;
+        y[id] += deltaY;
+    }
+
+    private void publish() {
+        Frame frame = spareFrame.getAndSet(null);
+        if (frame == null) {
+            frame = new Frame();
+        }
+        frame.ensureCapacity(count);
+        frame.sequence = processedSequence;
+        frame.count = count;
+        System.arraycopy(nodes, 0, frame.nodes, 0, count);
+        System.arraycopy(x, 0, frame.x, 0, count);
+        System.arraycopy(y, 0, frame.y, 0, count);
+        System.arraycopy(vx, 0, frame.vx, 0, count);
+        System.arraycopy(vy, 0, frame.vy, 0, count);
+
+        // Keep the Frame the FX thread skipped for reuse
+        Frame skipped = output.getAndSet(frame);
+        if (skipped != null) {
+            skipped.clear();
+            spareFrame.compareAndSet(null, skipped);
+        }
+    }
+
+    // NESTED CLASSES
+
+    // A relocation of a Node by user input, made after the Snapshot with the given sequence
+    private static final class Move {
+        final int id;
+        final Node node;
+        final double layoutX, layoutY;
+        final long sequence;
+
+        Move(int id, Node node, double layoutX, double layoutY, long sequence) {
+            this.id = id;
+            this.node = node;
+            this.layoutX = layoutX;
+            this.layoutY = layoutY;
+            this.sequence = sequence;
+        }
+    }
+
+    // The state of the scene graph, sent from the FX thread to the worker
+    private static final class Snapshot {
+        long sequence;
+        int count;
+        Node[] nodes = new Node[0];
+        double[] x = new double[0], y = new double[0];
+        double[] vx = new double[0], vy = new double[0];
+        double[] offsetX = new double[0], offsetY = new double[0];
+        double[] width = new double[0], height = new double[0];
+        int[] flags = new int[0];
+        final BondGraph bondGraph = new BondGraph();
+
+        double paneMinX, paneMinY, paneMaxX, paneMaxY;
+        boolean bordersCollide;
+        final StepParameters parameters = new StepParameters();
+        int maxSubsteps;
+
+        void ensureCapacity(int size) {
+            if (nodes.length >= size) return;
+
+            int capacity = Math.max(size, nodes.length * 2);
+            nodes = new Node[capacity];
+            x = new double[capacity]; y = new double[capacity];
+            vx = new double[capacity]; vy = new double[capacity];
+            offsetX = new double[capacity]; offsetY = new double[capacity];
+            width = new double[capacity]; height = new double[capacity];
+            flags = new int[capacity];
+        }
+
+        // Releases references to Nodes so a spare Snapshot doesn't keep them alive
+        void clear() {
+            Arrays.fill(nodes, 0, count, null);
+            count = 0;
+        }
+    }
+
+    // The simulated state of the bodies, published from the worker to the FX thread
+    private static final class Frame {
+        long sequence;
+        int count;
+        Node[] nodes = new Node[0];
+        double[] x = new double[0], y = new double[0];
+        double[] vx = new double[0], vy = new double[0];
+
+        void ensureCapacity(int size) {
+            if (nodes.length >= size) return;
+
+            int capacity = Math.max(size, nodes.length * 2);
+            nodes = new Node[capacity];
+            x = new double[capacity]; y = new double[capacity];
+            vx = new double[capacity]; vy = new double[capacity];
+        }
+
+        // Releases references to Nodes so a spare Frame doesn't keep them alive
+        void clear() {
+            Arrays.fill(nodes, 0, count, null);
+            count = 0;
+        }
+    }
+}
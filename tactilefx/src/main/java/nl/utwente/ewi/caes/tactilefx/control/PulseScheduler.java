@@ -0,0 +1,201 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.animation.AnimationTimer;
+
+/**
+ * Runs the per-frame work of TactileFX from a single {@code AnimationTimer}.
+ * Instead of starting timers of their own, {@code TactilePanes},
+ * {@code DebugParents} and {@code MouseToTouchMappers} register a {@link Task}
+ * for one of the {@link Phase Phases} of a pulse. During every pulse, the
+ * phases are run in the order in which they are declared, and the tasks of a
+ * phase in the order in which they were registered.
+ * <p>
+ * The scheduler only runs while at least one task is registered. It also
+ * keeps track of how long every phase takes, see {@link #getPhaseTime(Phase)}.
+ * <p>
+ * Like the rest of the scene graph, the scheduler may only be used from the
+ * JavaFX Application Thread.
+ */
+public final class PulseScheduler {
+    private static final Phase[] PHASES = Phase.values();
+    // Weight of the last pulse in the average phase times
+    private static final double AVERAGE_WEIGHT = 0.05;
+
+    private static PulseScheduler instance;
+
+    /**
+     * Returns the scheduler that is shared by all of TactileFX.
+     */
+    public static PulseScheduler getInstance() {
+        if (instance == null) {
+            instance = new PulseScheduler();
+        }
+        return instance;
+    }
+
+    private final List<List<Task>> tasksByPhase = new ArrayList<>();
+    // Copies of tasksByPhase that are iterated during a pulse, so tasks can
+    // (un)register while it runs
+    private final Task[][] runnableTasksByPhase = new Task[PHASES.length][];
+    private boolean tasksChanged;
+
+    private final long[] phaseTimes = new long[PHASES.length];
+    private final double[] averagePhaseTimes = new double[PHASES.length];
+
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            pulse(now);
+        }
+    };
+    private boolean running;
+
+    private PulseScheduler() {
+        for (Phase phase : PHASES) {
+            tasksByPhase.add(new ArrayList<>());
+            runnableTasksByPhase[phase.ordinal()] = new Task[0];
+        }
+    }
+
+    /**
+     * Registers a task to be run during the given phase of every pulse, until
+     * it is unregistered. Registering a task that is already registered for
+     * that phase has no effect.
+     */
+    public void register(Phase phase, Task task) {
+        if (phase == null || task == null) {
+            throw new NullPointerException("Phase and task may not be null");
+        }
+
+        List<Task> tasks = tasksByPhase.get(phase.ordinal());
+        if (tasks.contains(task)) return;
+
+        tasks.add(task);
+        tasksChanged = true;
+        if (!running) {
+            running = true;
+            timer.start();
+        }
+    }
+
+    /**
+     * Unregisters a task from the given phase. A task that is unregistered
+     * during a pulse is not run again, not even during that same pulse.
+     */
+    public void unregister(Phase phase, Task task) {
+        if (phase == null) {
+            throw new NullPointerException("Phase may not be null");
+        }
+
+        if (!tasksByPhase.get(phase.ordinal()).remove(task)) return;
+
+        tasksChanged = true;
+        if (running && isEmpty()) {
+            running = false;
+            timer.stop();
+        }
+    }
+
+    /**
+     * Returns how many nanoseconds the tasks of the given phase took during
+     * the last pulse.
+     */
+    public long getPhaseTime(Phase phase) {
+        return phaseTimes[phase.ordinal()];
+    }
+
+    /**
+     * Returns how many nanoseconds the tasks of the given phase took per pulse,
+     * averaged over recent pulses.
+     */
+    public double getAveragePhaseTime(Phase phase) {
+        return averagePhaseTimes[phase.ordinal()];
+    }
+
+    // HELP METHODS
+
+    private void pulse(long now) {
+        for (Phase phase : PHASES) {
+            int index = phase.ordinal();
+            long start = System.nanoTime();
+
+            // Tasks that are registered during a phase are run from the next phase onwards
+            if (tasksChanged) {
+                updateRunnableTasks();
+            }
+            List<Task> registered = tasksByPhase.get(index);
+            for (Task task : runnableTasksByPhase[index]) {
+                // Skip tasks that were unregistered by an earlier task during this pulse
+                if (tasksChanged && !registered.contains(task)) continue;
+                task.handle(now);
+            }
+
+            long time = System.nanoTime() - start;
+            phaseTimes[index] = time;
+            averagePhaseTimes[index] += (time - averagePhaseTimes[index]) * AVERAGE_WEIGHT;
+        }
+    }
+
+    private void updateRunnableTasks() {
+        for (Phase phase : PHASES) {
+            List<Task> tasks = tasksByPhase.get(phase.ordinal());
+            runnableTasksByPhase[phase.ordinal()] = tasks.toArray(new Task[tasks.size()]);
+        }
+        tasksChanged = false;
+    }
+
+    private boolean isEmpty() {
+        for (List<Task> tasks : tasksByPhase) {
+            if (!tasks.isEmpty()) return false;
+        }
+        return true;
+    }
+
+    // NESTED CLASSES
+
+    /**
+     * The phases of a pulse, in the order in which they are run.
+     */
+    public enum Phase {
+        /**
+         * Represents generating or processing input, such as the synthesized
+         * TouchEvents of a {@code MouseToTouchMapper}.
+         */
+        INPUT,
+
+        /**
+         * Represents stepping the physics of the {@code TactilePanes}, and
+         * firing their collision events.
+         */
+        PHYSICS,
+
+        /**
+         * Represents relocating anchored {@code Nodes}, after all Nodes they
+         * may be anchored to have been moved by the physics.
+         */
+        ANCHORS,
+
+        /**
+         * Represents updating overlays that visualise the state of the
+         * scene graph, such as the overlay of a {@code DebugParent}.
+         */
+        OVERLAY
+    }
+
+    /**
+     * Work that is run during a phase of every pulse.
+     */
+    @FunctionalInterface
+    public interface Task {
+        /**
+         * Called once per pulse while this task is registered.
+         *
+         * @param now   the timestamp of the current pulse in nanoseconds, as
+         * passed to {@link AnimationTimer#handle(long)}
+         */
+        void handle(long now);
+    }
+}
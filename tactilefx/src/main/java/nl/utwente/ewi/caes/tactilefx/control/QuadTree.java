@@ -1,194 +1,482 @@
 package nl.utwente.ewi.caes.tactilefx.control;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
+import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
-import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleDoubleProperty;
-import javafx.beans.property.SimpleObjectProperty;
-import javafx.geometry.BoundingBox;
-import javafx.geometry.Bounds;
+import javafx.beans.property.SimpleIntegerProperty;
 import javafx.scene.Node;
 
-class QuadTree {
-
-    private final int MAX_DEPTH = 5;
-    private final int MAX_OBJECTS = 10;
-
-    private QuadTree parent;
+/**
+ * A {@link BroadPhase} that recursively divides the bounds of a TactilePane
+ * into four quadrants. Every Node is stored in the smallest quadrant that
+ * fully contains its bounds; Nodes that aren't inside the bounds of the tree
+ * are stored in the root. A quadrant is split when it holds
+ * {@link #maxObjectsProperty() maxObjects} Nodes, up to a depth of
+ * {@link #maxDepthProperty() maxDepth}. When Nodes leave, quadrants whose
+ * children together hold no more than half of maxObjects Nodes are merged
+ * again, so the tree doesn't stay fragmented after Nodes have been crowded
+ * in one place.
+ * <p>
+ * Nodes that lie on the border between two quadrants can't go into either
+ * of them, so large Nodes and Nodes on the center lines of the pane pile up
+ * near the root, where they are compared with every other Node. Setting the
+ * {@link #loosenessProperty() looseness} above 1 turns the tree into a loose
+ * quadtree, in which every quadrant accepts Nodes that stick out of it by a
+ * bit, so nearly all Nodes end up at a depth that matches their size.
+ * <p>
+ * This is the default broad phase of a TactilePane. It copes well with Nodes
+ * of very different sizes that are spread unevenly over the pane.
+ */
+public class QuadTree implements BroadPhase {
+    // Bounds on the values the adaptive mode may choose
+    private static final int MIN_ADAPTIVE_OBJECTS = 2;
+    private static final int MAX_ADAPTIVE_OBJECTS = 256;
+    private static final int MAX_ADAPTIVE_DEPTH = 12;
+    // Number of calls to queryPairs over which the cost is measured in adaptive mode
+    static final int TUNE_INTERVAL = 60;
+    // Number of measurements to wait at most before trying another value after a failed try
+    private static final int MAX_TUNE_BACKOFF = 16;
+
+    private final QuadTree root;
+    private final QuadTree parent;
     private QuadTree[] children;
+    // Children that were merged, kept to be reused by the next split
+    private QuadTree[] mergedChildren;
     private final int level;
-    private final Map<Node, Bounds> proximityBoundsByObject = new HashMap<>();
+    private double minX, minY, maxX, maxY;
+    // The bounds a Node must fit in to be stored in this quadrant, which are
+    // the bounds scaled around their center by the looseness of the tree
+    private double looseMinX, looseMinY, looseMaxX, looseMaxY;
+    // The Nodes stored in this quadrant
+    private Entry[] entries = new Entry[10];
+    private int count;
+    // The number of Nodes stored in this quadrant and its descendants
+    private int size;
+
+    // Only kept by the root: the entry of every Node, and a buffer for queryPairs
+    private final Map<Node, Entry> entryByObject;
+    private Entry[] ancestorEntries;
+
+    // Only kept by the root: what is measured and tried by the adaptive mode
+    private long tests;
+    private int calls;
+    private double baselineCost;
+    private int previousMaxObjects;
+    private boolean trying;
+    private int tuneDirection = -1;
+    private int tuneBackoff = 1;
+    private int tuneWait;
 
     /**
-     * Constructor of the QuadTree
-     *
-     * @param bounds The bounds of the 2D space that this QuadTree divides
+     * Constructor of the QuadTree. Its bounds are set by the TactilePane it
+     * is used by.
      */
-    public QuadTree(Bounds bounds) {
-        setBounds(bounds);
+    public QuadTree() {
+        this.root = this;
+        this.parent = null;
         this.level = 0;
+        this.entryByObject = new HashMap<>();
+        this.ancestorEntries = new Entry[10];
+        // Anything that doesn't fit anywhere else is stored in the root
+        this.looseMinX = this.looseMinY = Double.NEGATIVE_INFINITY;
+        this.looseMaxX = this.looseMaxY = Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Constructor of a QuadTree that splits quadrants holding the given
+     * number of Nodes, up to the given depth.
+     *
+     * @param maxObjects    the number of Nodes at which a quadrant is split,
+     *                      must be at least 1
+     * @param maxDepth      the maximum depth of the tree, must be at least 0
+     */
+    public QuadTree(int maxObjects, int maxDepth) {
+        this();
+        setMaxObjects(maxObjects);
+        setMaxDepth(maxDepth);
     }
 
-    private QuadTree(Bounds bounds, QuadTree parent) {
-        setBounds(bounds);
+    private QuadTree(double minX, double minY, double maxX, double maxY, QuadTree parent) {
+        this.root = parent.root;
         this.parent = parent;
         this.level = parent.level + 1;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.entryByObject = null;
+
+        double looseness = root.getLooseness();
+        double halfWidth = (maxX - minX) / 2 * looseness;
+        double halfHeight = (maxY - minY) / 2 * looseness;
+        double centerX = (minX + maxX) / 2;
+        double centerY = (minY + maxY) / 2;
+        this.looseMinX = centerX - halfWidth;
+        this.looseMinY = centerY - halfHeight;
+        this.looseMaxX = centerX + halfWidth;
+        this.looseMaxY = centerY + halfHeight;
     }
 
+    // PROPERTIES
+
     /**
-     * The maximum distance between two {@code ActionGroups} at which they are
-     * considered neighbours, and thus a proximity event is fired. An
-     * IllegalArgumentException is thrown when this value is set lower than 0.
+     * The number of Nodes at which a quadrant is split into four. Must be at
+     * least 1. Lower values make the quadrants smaller, so fewer Nodes are
+     * compared with each other, at the cost of a deeper tree. Changing it
+     * distributes all Nodes over the quadrants again.
      *
-     * @defaultvalue 25.0
+     * @defaultvalue 10
      */
-    private DoubleProperty proximityThreshold;
+    private IntegerProperty maxObjects;
 
-    public final void setProximityThreshold(double threshold) {
-        proximityThresholdProperty().set(threshold);
+    public final int getMaxObjects() {
+        return maxObjectsProperty().get();
     }
 
-    public final double getProximityThreshold() {
-        return proximityThresholdProperty().get();
+    public final void setMaxObjects(int maxObjects) {
+        maxObjectsProperty().set(maxObjects);
     }
 
-    public final DoubleProperty proximityThresholdProperty() {
-        if (proximityThreshold == null) {
+    public final IntegerProperty maxObjectsProperty() {
+        if (maxObjects == null) {
+            maxObjects = new SimpleIntegerProperty(10) {
+                @Override
+                public void set(int value) {
+                    if (value < 1) {
+                        throw new IllegalArgumentException("maxObjects must be at least 1");
+                    }
+                    if (value != get()) {
+                        super.set(value);
+                        rebuild();
+                    }
+                }
+            };
+        }
+        return maxObjects;
+    }
 
-            double value = 25.0;
-            if (parent != null) {
-                value = parent.getProximityThreshold();
-            }
+    /**
+     * The maximum depth of the tree, where the root has depth 0. Must be at
+     * least 0. Changing it distributes all Nodes over the quadrants again.
+     *
+     * @defaultvalue 5
+     */
+    private IntegerProperty maxDepth;
+
+    public final int getMaxDepth() {
+        return maxDepthProperty().get();
+    }
+
+    public final void setMaxDepth(int maxDepth) {
+        maxDepthProperty().set(maxDepth);
+    }
 
-            proximityThreshold = new SimpleDoubleProperty(value) {
+    public final IntegerProperty maxDepthProperty() {
+        if (maxDepth == null) {
+            maxDepth = new SimpleIntegerProperty(5) {
                 @Override
-                public void set(double value) {
-                    if (value >= 0) {
+                public void set(int value) {
+                    if (value < 0) {
+                        throw new IllegalArgumentException("maxDepth must be at least 0");
+                    }
+                    if (value != get()) {
                         super.set(value);
-                        if (children != null) {
-                            for (QuadTree child : children) {
-                                child.setProximityThreshold(value);
-                            }
-                        }
-                    } else {
-                        throw new IllegalArgumentException("Proximity threshold should be a positive value");
+                        rebuild();
                     }
                 }
             };
         }
-        return proximityThreshold;
+        return maxDepth;
     }
 
     /**
-     * The bounds of the QuadTree
+     * The factor by which the bounds of a quadrant are scaled around their
+     * center to decide which Nodes fit in it. Must be at least 1. At 1, a
+     * Node is only stored in a quadrant that fully contains it. At 2, every
+     * Node that is at most half as large as a quadrant fits in the one that
+     * contains its center, at the cost of comparing Nodes of neighbouring
+     * quadrants with each other. Changing it distributes all Nodes over the
+     * quadrants again.
+     *
+     * @defaultvalue 1.0
      */
-    private ObjectProperty<Bounds> bounds;
+    private DoubleProperty looseness;
 
-    public final void setBounds(Bounds bounds) {
-        boundsProperty().set(bounds);
+    public final double getLooseness() {
+        return loosenessProperty().get();
     }
 
-    public final Bounds getBounds() {
-        return boundsProperty().get();
+    public final void setLooseness(double looseness) {
+        loosenessProperty().set(looseness);
     }
 
-    public final ObjectProperty<Bounds> boundsProperty() {
-        if (bounds == null) {
-            bounds = new SimpleObjectProperty<Bounds>() {
+    public final DoubleProperty loosenessProperty() {
+        if (looseness == null) {
+            looseness = new SimpleDoubleProperty(1.0) {
                 @Override
-                public void set(Bounds value) {
-                    if (!value.equals(get())) {
+                public void set(double value) {
+                    if (!(value >= 1)) {
+                        throw new IllegalArgumentException("Looseness must be at least 1");
+                    }
+                    if (value != get()) {
                         super.set(value);
-                        // Update bounds of children
-                        if (children != null) {
-                            double halfWidth = getBounds().getWidth() / 2.0;
-                            double halfHeight = getBounds().getHeight() / 2.0;
-                            double x = getBounds().getMinX();
-                            double y = getBounds().getMinY();
-
-                            children[0].setBounds(new BoundingBox(x, y, halfWidth, halfHeight));
-                            children[1].setBounds(new BoundingBox(x + halfWidth, y, halfWidth, halfHeight));
-                            children[2].setBounds(new BoundingBox(x + halfWidth, y + halfHeight, halfWidth, halfHeight));
-                            children[3].setBounds(new BoundingBox(x, y + halfHeight, halfWidth, halfHeight));
-                        }
-                        // If root, update
-                        if (parent == null) {
-                            update();
-                        }
+                        rebuild();
                     }
                 }
             };
         }
-        return bounds;
+        return looseness;
     }
 
     /**
-     * Clears the QuadTree and its children
+     * Whether the QuadTree tunes {@link #maxObjectsProperty() maxObjects} and
+     * {@link #maxDepthProperty() maxDepth} by itself. It then counts the
+     * number of bounds that are compared by {@link #queryPairs(BiConsumer)}
+     * and the number of quadrants it visits, and tries whether halving or
+     * doubling maxObjects lowers that cost, keeping the value that does. The
+     * depth is increased when quadrants at the maximum depth hold more than
+     * twice maxObjects Nodes. Properties that are bound are left alone.
+     *
+     * @defaultvalue false
      */
-    public void clear() {
+    private BooleanProperty adaptive;
+
+    public final boolean isAdaptive() {
+        return adaptiveProperty().get();
+    }
+
+    public final void setAdaptive(boolean adaptive) {
+        adaptiveProperty().set(adaptive);
+    }
+
+    public final BooleanProperty adaptiveProperty() {
+        if (adaptive == null) {
+            adaptive = new SimpleBooleanProperty(false) {
+                @Override
+                public void set(boolean value) {
+                    super.set(value);
+                    // Start measuring from scratch
+                    tests = 0;
+                    calls = 0;
+                    trying = false;
+                    tuneBackoff = 1;
+                    tuneWait = 0;
+                }
+            };
+        }
+        return adaptive;
+    }
+
+    // BROAD PHASE
+
+    /**
+     * Sets the bounds of the 2D space that this QuadTree divides. All Nodes
+     * are distributed over the quadrants again.
+     */
+    @Override
+    public void setBounds(double minX, double minY, double maxX, double maxY) {
+        if (minX == this.minX && minY == this.minY && maxX == this.maxX && maxY == this.maxY) return;
+
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        rebuild();
+    }
+
+    @Override
+    public void insert(Node node, double minX, double minY, double maxX, double maxY) {
+        update(node, minX, minY, maxX, maxY);
+    }
+
+    @Override
+    public void update(Node node, double minX, double minY, double maxX, double maxY) {
+        Entry entry = entryByObject.get(node);
+        if (entry == null) {
+            entry = new Entry(node);
+            entryByObject.put(node, entry);
+        }
+        entry.minX = minX;
+        entry.minY = minY;
+        entry.maxX = maxX;
+        entry.maxY = maxY;
+
+        if (entry.quadrant != null) {
+            if (entry.quadrant == getTreeNode(entry)) {
+                // Still belongs in the same quadrant
+                return;
+            }
+            detach(entry);
+        }
+        add(entry);
+    }
+
+    @Override
+    public void remove(Node node) {
+        Entry entry = entryByObject.remove(node);
+        if (entry != null) {
+            detach(entry);
+        }
+    }
+
+    @Override
+    public void query(double minX, double minY, double maxX, double maxY, Consumer<? super Node> consumer) {
+        for (int i = 0; i < count; i++) {
+            Entry entry = entries[i];
+            if (entry.intersects(minX, minY, maxX, maxY)) {
+                consumer.accept(entry.node);
+            }
+        }
         if (children != null) {
-            for (int i = 0; i < 4; i++) {
-                children[i].clear();
-                children[i] = null;
+            for (QuadTree child : children) {
+                if (child.size > 0 && child.overlaps(minX, minY, maxX, maxY)) {
+                    child.query(minX, minY, maxX, maxY, consumer);
+                }
             }
         }
-        proximityBoundsByObject.clear();
-        parent = null;
+    }
+
+    @Override
+    public void queryPairs(BiConsumer<? super Node, ? super Node> consumer) {
+        if (ancestorEntries.length < entryByObject.size()) {
+            ancestorEntries = new Entry[entryByObject.size()];
+        }
+        queryPairs(0, consumer);
+
+        if (isAdaptive() && ++calls == TUNE_INTERVAL) {
+            tune();
+        }
     }
 
     /**
-     * Inserts a node into the QuadTree
-     *
-     * @param node The node that is to be inserted
+     * Clears the QuadTree and its children
      */
-    public void insert(Node node) {
-        Bounds bounds = node.localToScene(node.getBoundsInLocal());
-        if (getProximityThreshold() > 0) {
-            Bounds boundsAround = getProximityBounds(bounds);
-            insert(node, boundsAround);
-        } else {
-            insert(node, bounds);
+    @Override
+    public void clear() {
+        children = null;
+        mergedChildren = null;
+        count = 0;
+        size = 0;
+        Arrays.fill(entries, null);
+        entryByObject.clear();
+        Arrays.fill(ancestorEntries, null);
+    }
+
+    // HELP METHODS
+
+    // Distributes all Nodes over the quadrants again
+    private void rebuild() {
+        // Only the root can be configured, but the properties are created lazily
+        if (root != this) return;
+
+        children = null;
+        mergedChildren = null;
+        count = 0;
+        size = 0;
+        Arrays.fill(entries, null);
+        for (Entry entry : entryByObject.values()) {
+            entry.quadrant = null;
+            add(entry);
         }
     }
 
-    private void insert(Node node, Bounds bounds) {
-        QuadTree insertNode = getTreeNode(bounds);
-        if (insertNode == this || insertNode == null) {
-            proximityBoundsByObject.put(node, bounds);
+    // Adds an entry to the quadrant it belongs in
+    private void add(Entry entry) {
+        QuadTree quadrant = getTreeNode(entry);
+        quadrant.addEntry(entry);
+        for (QuadTree ancestor = quadrant; ancestor != null; ancestor = ancestor.parent) {
+            ancestor.size++;
+        }
 
-            Set<Node> objects = proximityBoundsByObject.keySet();
-            if (objects.size() >= MAX_OBJECTS && this.level < MAX_DEPTH && children == null) {
-                split();
+        if (quadrant.count >= root.getMaxObjects() && quadrant.level < root.getMaxDepth() && quadrant.children == null) {
+            quadrant.split();
+        }
+    }
+
+    // Removes an entry from its quadrant, and merges the quadrants that hold too few Nodes
+    private void detach(Entry entry) {
+        QuadTree quadrant = entry.quadrant;
+        quadrant.removeEntry(entry);
+
+        // Merge the largest quadrant that became small enough
+        int threshold = root.getMaxObjects() / 2;
+        QuadTree merge = null;
+        for (QuadTree ancestor = quadrant; ancestor != null; ancestor = ancestor.parent) {
+            ancestor.size--;
+            if (ancestor.children != null && ancestor.size <= threshold) {
+                merge = ancestor;
             }
-        } else {
-            insertNode.insert(node, bounds);
+        }
+        if (merge != null) {
+            merge.merge();
         }
     }
 
+    private void addEntry(Entry entry) {
+        if (count == entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(count * 2, 1));
+        }
+        entry.quadrant = this;
+        entry.index = count;
+        entries[count++] = entry;
+    }
+
+    private void removeEntry(Entry entry) {
+        // Move the last entry into its place
+        Entry last = entries[--count];
+        entries[entry.index] = last;
+        last.index = entry.index;
+        entries[count] = null;
+        entry.quadrant = null;
+    }
+
     /**
-     * Returns the QuadTree that should store an object with the given Bounds
+     * Returns the smallest quadrant of the tree that fully contains the bounds
+     * of the given entry, or the root if there is none.
      *
-     * @param objectBounds The bounds of a certain object
+     * @param entry The entry of a certain object
      * @return The QuadTree it belongs to
      */
-    private QuadTree getTreeNode(Bounds objectBounds) {
-        if (this.getBounds().contains(objectBounds)) {
-            if (children != null) {
-                for (int i = 0; i < 4; i++) {
-                    if (children[i].getBounds().contains(objectBounds)) {
-                        return children[i];
-                    }
-                }
+    private QuadTree getTreeNode(Entry entry) {
+        QuadTree quadrant = root;
+        while (quadrant.children != null) {
+            QuadTree next = quadrant.getChild(entry);
+            if (next == null) break;
+            quadrant = next;
+        }
+        return quadrant;
+    }
+
+    /**
+     * Returns the child the given entry fits in, or null if there is none.
+     * That is the child that contains the center of its bounds, if the
+     * bounds fit in the loose bounds of that child.
+     */
+    private QuadTree getChild(Entry entry) {
+        double centerX = (entry.minX + entry.maxX) / 2;
+        double centerY = (entry.minY + entry.maxY) / 2;
+        for (QuadTree child : children) {
+            if (centerX >= child.minX && centerY >= child.minY && centerX <= child.maxX && centerY <= child.maxY) {
+                return child.fits(entry) ? child : null;
             }
-            return this;
         }
-        return parent;
+        return null;
+    }
+
+    private boolean fits(Entry entry) {
+        return entry.minX >= looseMinX && entry.minY >= looseMinY && entry.maxX <= looseMaxX && entry.maxY <= looseMaxY;
+    }
+
+    private boolean overlaps(double minX, double minY, double maxX, double maxY) {
+        return looseMaxX >= minX && looseMaxY >= minY && looseMinX <= maxX && looseMinY <= maxY;
     }
 
     /**
@@ -196,115 +484,204 @@ class QuadTree {
      * the corresponding child nodes.
      */
     private void split() {
-        double halfWidth = getBounds().getWidth() / 2.0;
-        double halfHeight = getBounds().getHeight() / 2.0;
-        double x = getBounds().getMinX();
-        double y = getBounds().getMinY();
-
-        children = new QuadTree[4];
-        children[0] = new QuadTree(
-                new BoundingBox(x, y, halfWidth, halfHeight), this);
-        children[1] = new QuadTree(new BoundingBox(x + halfWidth, y, halfWidth,
-                halfHeight), this);
-        children[2] = new QuadTree(new BoundingBox(x + halfWidth, y
-                + halfHeight, halfWidth, halfHeight), this);
-        children[3] = new QuadTree(new BoundingBox(x, y + halfHeight,
-                halfWidth, halfHeight), this);
-
-        Iterator<Node> iterator = proximityBoundsByObject.keySet().iterator();
-        while (iterator.hasNext()) {
-            Node object = iterator.next();
-            Bounds objectBounds = proximityBoundsByObject.get(object);
-            QuadTree insertNode = getTreeNode(objectBounds);
-
-            if (insertNode != this && insertNode != null) {
-                iterator.remove();
-                insertNode.proximityBoundsByObject.put(object, objectBounds);
+        if (mergedChildren != null) {
+            // They were emptied when they were merged
+            children = mergedChildren;
+            mergedChildren = null;
+        } else {
+            double halfWidth = (maxX - minX) / 2.0;
+            double halfHeight = (maxY - minY) / 2.0;
+            double x = minX;
+            double y = minY;
+
+            children = new QuadTree[4];
+            children[0] = new QuadTree(x, y, x + halfWidth, y + halfHeight, this);
+            children[1] = new QuadTree(x + halfWidth, y, maxX, y + halfHeight, this);
+            children[2] = new QuadTree(x + halfWidth, y + halfHeight, maxX, maxY, this);
+            children[3] = new QuadTree(x, y + halfHeight, x + halfWidth, maxY, this);
+        }
+
+        for (int i = count - 1; i >= 0; i--) {
+            Entry entry = entries[i];
+            QuadTree child = getChild(entry);
+            if (child != null) {
+                removeEntry(entry);
+                child.addEntry(entry);
+                child.size++;
             }
         }
     }
 
     /**
-     * Removes a node from the QuadTree
-     *
-     * @param node The node that is to be removed
+     * Moves all objects of the descendants of this node into this node, and
+     * removes its children.
      */
-    public void remove(Node node) {
-        Bounds bounds = node.localToScene(node.getBoundsInLocal());
-        QuadTree removeNode = getTreeNode(getProximityBounds(bounds));
+    private void merge() {
+        for (QuadTree child : children) {
+            child.moveEntriesTo(this);
+        }
+        mergedChildren = children;
+        children = null;
+    }
 
-        if (removeNode == this || removeNode == null) {
-            proximityBoundsByObject.remove(node);
-        } else {
-            removeNode.remove(node);
+    private void moveEntriesTo(QuadTree quadrant) {
+        for (int i = 0; i < count; i++) {
+            quadrant.addEntry(entries[i]);
+            entries[i] = null;
+        }
+        count = 0;
+        size = 0;
+        if (children != null) {
+            for (QuadTree child : children) {
+                child.moveEntriesTo(quadrant);
+            }
+            mergedChildren = children;
+            children = null;
         }
     }
 
-    /**
-     * Updates the QuadTree. Each object that has changed bounds is inserted
-     * again.
-     */
-    public void update() {
-        Iterator<Node> iterator = proximityBoundsByObject.keySet().iterator();
-        List<Node> objectsToAdd = new ArrayList<>();
-        List<Bounds> boundsToAdd = new ArrayList<>();
+    // Reports the pairs within this quadrant and its children, and the pairs
+    // of the Nodes in them with the Nodes in the ancestors of this quadrant,
+    // which are the first ancestorCount entries of the buffer of the root
+    private void queryPairs(int ancestorCount, BiConsumer<? super Node, ? super Node> consumer) {
+        Entry[] ancestors = root.ancestorEntries;
+        int total = ancestorCount;
+        // Pairs within this quadrant are found by comparing every Node to the ones added before it
+        for (int i = 0; i < count; i++) {
+            Entry entry = entries[i];
+            for (int j = 0; j < total; j++) {
+                Entry other = ancestors[j];
+                if (other.intersects(entry.minX, entry.minY, entry.maxX, entry.maxY)) {
+                    consumer.accept(other.node, entry.node);
+                }
+            }
+            ancestors[total++] = entry;
+        }
+        // Every quadrant visited and every pair of bounds compared counts as one unit of cost
+        root.tests += 1 + (long) count * (ancestorCount + total) / 2;
+        if (children != null) {
+            for (QuadTree child : children) {
+                if (child.size > 0) {
+                    child.queryPairs(total, consumer);
+                }
+            }
+            if (root.getLooseness() > 1) {
+                // The loose bounds of the children overlap, so Nodes in different children may intersect
+                for (int i = 0; i < children.length; i++) {
+                    for (int j = i + 1; j < children.length; j++) {
+                        children[i].queryPairs(children[j], consumer);
+                    }
+                }
+            }
+        }
+    }
 
-        while (iterator.hasNext()) {
-            Node object = iterator.next();
-            if (!TactilePane.isDirty(object)) continue;
-            
-            Bounds bounds = object.localToScene(object.getBoundsInLocal());
-            Bounds boundsAround = getProximityBounds(bounds);
+    // Reports the pairs of a Node in this quadrant or its descendants with
+    // a Node in the other quadrant or its descendants
+    private void queryPairs(QuadTree other, BiConsumer<? super Node, ? super Node> consumer) {
+        if (size == 0 || other.size == 0 || !overlaps(other.looseMinX, other.looseMinY, other.looseMaxX, other.looseMaxY)) return;
 
-            iterator.remove();
-            objectsToAdd.add(object);
-            boundsToAdd.add(boundsAround);
+        for (int i = 0; i < count; i++) {
+            other.queryPairs(entries[i], consumer);
         }
-
-        for (int i = 0; i < objectsToAdd.size(); i++) {
-            insert(objectsToAdd.get(i), boundsToAdd.get(i));
+        if (children != null) {
+            for (QuadTree child : children) {
+                child.queryPairs(other, consumer);
+            }
         }
+    }
 
+    // Reports the pairs of the given entry with the Nodes in this quadrant and its descendants
+    private void queryPairs(Entry entry, BiConsumer<? super Node, ? super Node> consumer) {
+        root.tests += 1 + count;
+        for (int i = 0; i < count; i++) {
+            Entry other = entries[i];
+            if (other.intersects(entry.minX, entry.minY, entry.maxX, entry.maxY)) {
+                consumer.accept(entry.node, other.node);
+            }
+        }
         if (children != null) {
-            for (int i = 0; i < 4; i++) {
-                children[i].update();
+            for (QuadTree child : children) {
+                if (child.size > 0 && child.overlaps(entry.minX, entry.minY, entry.maxX, entry.maxY)) {
+                    child.queryPairs(entry, consumer);
+                }
             }
         }
     }
 
-    // Help method to get the Bounds needed for proximity detection
-    private Bounds getProximityBounds(Bounds bounds) {
-        double x = bounds.getMinX() - getProximityThreshold() / 2;
-        double y = bounds.getMinY() - getProximityThreshold() / 2;
-        double w = bounds.getWidth() + getProximityThreshold();
-        double h = bounds.getHeight() + getProximityThreshold();
-        return new BoundingBox(x, y, w, h);
-    }
+    // Called by the root in adaptive mode after every TUNE_INTERVAL calls to queryPairs
+    private void tune() {
+        double cost = (double) tests / calls;
+        tests = 0;
+        calls = 0;
+
+        if (!maxDepthProperty().isBound() && getMaxDepth() < MAX_ADAPTIVE_DEPTH
+                && hasCrowdedLeaf(getMaxDepth(), 2 * getMaxObjects())) {
+            // Quadrants are crowded because they can't be split any further
+            setMaxDepth(getMaxDepth() + 1);
+            trying = false;
+            return;
+        }
+        if (maxObjectsProperty().isBound()) return;
+
+        if (trying) {
+            trying = false;
+            if (cost < baselineCost * 0.95) {
+                // Better, try to go further in the same direction next time
+                tuneBackoff = 1;
+            } else {
+                // Not worth it, go back and try the other direction after a while
+                setMaxObjects(previousMaxObjects);
+                tuneDirection = -tuneDirection;
+                tuneWait = tuneBackoff;
+                tuneBackoff = Math.min(tuneBackoff * 2, MAX_TUNE_BACKOFF);
+            }
+            return;
+        }
+        if (tuneWait > 0) {
+            tuneWait--;
+            return;
+        }
 
-    /**
-     * Retrieves all the nodes that could be in the proximity (or collide
-     * with) the given node.
-     *
-     * @param node The node to find neighbours for
-     */
-    public List<Node> retrieve(Node node) {
-        List<Node> returnObjects = retrieve(node, new ArrayList<>());
-        returnObjects.remove(node);
-        return returnObjects;
+        int next = tuneDirection > 0 ? getMaxObjects() * 2 : getMaxObjects() / 2;
+        if (next < MIN_ADAPTIVE_OBJECTS || next > MAX_ADAPTIVE_OBJECTS) {
+            tuneDirection = -tuneDirection;
+            return;
+        }
+        baselineCost = cost;
+        previousMaxObjects = getMaxObjects();
+        trying = true;
+        setMaxObjects(next);
     }
 
-    private List<Node> retrieve(Node node, List<Node> returnObjects) {
-        QuadTree retrieveNode = getTreeNode(proximityBoundsByObject.get(node));
-
-        if ((retrieveNode == this || retrieveNode == null || retrieveNode.level < this.level) && children != null) {
+    // Whether a quadrant at the given depth holds more than the given number of Nodes
+    private boolean hasCrowdedLeaf(int depth, int crowded) {
+        if (level == depth) {
+            return count > crowded;
+        }
+        if (children != null) {
             for (QuadTree child : children) {
-                child.retrieve(node, returnObjects);
+                if (child.size > crowded && child.hasCrowdedLeaf(depth, crowded)) {
+                    return true;
+                }
             }
-        } else if (retrieveNode != null && retrieveNode.level > this.level) {
-            retrieveNode.retrieve(node, returnObjects);
         }
+        return false;
+    }
 
-        returnObjects.addAll(proximityBoundsByObject.keySet());
-        return returnObjects;
+    // A Node with its bounds and the quadrant it is stored in
+    private static class Entry {
+        final Node node;
+        double minX, minY, maxX, maxY;
+        QuadTree quadrant;
+        int index;
+
+        Entry(Node node) {
+            this.node = node;
+        }
+
+        boolean intersects(double minX, double minY, double maxX, double maxY) {
+            return this.maxX >= minX && this.maxY >= minY && this.minX <= maxX && this.minY <= maxY;
+        }
     }
 }
@@ -0,0 +1,292 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.scene.Node;
+
+/**
+ * A {@link BroadPhase} that divides the scene into a uniform grid of square
+ * cells. Every Node is stored in each cell its bounds overlap, and only the
+ * cells that contain a Node are kept, so the grid is unbounded.
+ * <p>
+ * Updating a Node that stays within the same cells doesn't touch the grid at
+ * all, and a query only visits the cells it overlaps. This makes the grid
+ * faster than a {@link QuadTree} for many Nodes of about the same size, as
+ * long as the cell size is in the order of the size of the Nodes (including
+ * the proximity threshold). Nodes that are much larger than a cell are stored
+ * in many cells, which makes them more expensive to update.
+ */
+public class SpatialHashGrid implements BroadPhase {
+    // Only cells that contain a Node are kept in the map
+    private final LongHashMap<Cell> cells = new LongHashMap<>();
+    private final Map<Node, Entry> entries = new HashMap<>();
+    // All entries, so they can be iterated without allocating
+    private Entry[] allEntries = new Entry[16];
+    private int entryCount;
+    // Empty cells that can be reused, so moving Nodes don't create garbage
+    private Cell[] freeCells = new Cell[16];
+    private int freeCellCount;
+    // Stamp of the current query, used to report every Node only once
+    private int stamp;
+
+    /**
+     * Constructs a SpatialHashGrid with cells of 100 by 100.
+     */
+    public SpatialHashGrid() {
+        this(100.0);
+    }
+
+    /**
+     * Constructs a SpatialHashGrid with cells of the given size.
+     *
+     * @param cellSize  the width and height of a cell, must be greater than 0
+     */
+    public SpatialHashGrid(double cellSize) {
+        setCellSize(cellSize);
+    }
+
+    /**
+     * The width and height of a cell of the grid, in scene coordinates. Must be
+     * greater than 0. Changing it redistributes all Nodes over the new cells.
+     *
+     * @defaultvalue 100.0
+     */
+    private DoubleProperty cellSize;
+
+    public final double getCellSize() {
+        return cellSizeProperty().get();
+    }
+
+    public final void setCellSize(double cellSize) {
+        cellSizeProperty().set(cellSize);
+    }
+
+    public final DoubleProperty cellSizeProperty() {
+        if (cellSize == null) {
+            cellSize = new SimpleDoubleProperty(100.0) {
+                @Override
+                public void set(double value) {
+                    if (!(value > 0)) {
+                        throw new IllegalArgumentException("Cell size must be greater than 0");
+                    }
+                    if (value != get()) {
+                        super.set(value);
+                        rehash();
+                    }
+                }
+            };
+        }
+        return cellSize;
+    }
+
+    @Override
+    public void insert(Node node, double minX, double minY, double maxX, double maxY) {
+        update(node, minX, minY, maxX, maxY);
+    }
+
+    @Override
+    public void update(Node node, double minX, double minY, double maxX, double maxY) {
+        Entry entry = entries.get(node);
+        if (entry == null) {
+            entry = new Entry(node);
+            entries.put(node, entry);
+            if (entryCount == allEntries.length) {
+                allEntries = Arrays.copyOf(allEntries, entryCount * 2);
+            }
+            entry.index = entryCount;
+            allEntries[entryCount++] = entry;
+        } else if (cell(minX) != entry.cellMinX || cell(minY) != entry.cellMinY
+                || cell(maxX) != entry.cellMaxX || cell(maxY) != entry.cellMaxY) {
+            removeFromCells(entry);
+            entry.inCells = false;
+        }
+        entry.minX = minX;
+        entry.minY = minY;
+        entry.maxX = maxX;
+        entry.maxY = maxY;
+        if (!entry.inCells) {
+            addToCells(entry);
+        }
+    }
+
+    @Override
+    public void remove(Node node) {
+        Entry entry = entries.remove(node);
+        if (entry != null) {
+            removeFromCells(entry);
+            // Move the last entry into its place
+            Entry last = allEntries[--entryCount];
+            allEntries[entry.index] = last;
+            last.index = entry.index;
+            allEntries[entryCount] = null;
+        }
+    }
+
+    @Override
+    public void query(double minX, double minY, double maxX, double maxY, Consumer<? super Node> consumer) {
+        stamp++;
+        int cellMinX = cell(minX), cellMinY = cell(minY);
+        int cellMaxX = cell(maxX), cellMaxY = cell(maxY);
+
+        if ((long) (cellMaxX - cellMinX + 1) * (cellMaxY - cellMinY + 1) > entries.size()) {
+            // Cheaper to test every Node than to visit every cell
+            for (int i = 0; i < entryCount; i++) {
+                visit(allEntries[i], minX, minY, maxX, maxY, consumer);
+            }
+            return;
+        }
+
+        for (int x = cellMinX; x <= cellMaxX; x++) {
+            for (int y = cellMinY; y <= cellMaxY; y++) {
+                Cell cell = cells.get(key(x, y));
+                if (cell == null) continue;
+                for (int i = 0; i < cell.count; i++) {
+                    visit(cell.entries[i], minX, minY, maxX, maxY, consumer);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void queryPairs(BiConsumer<? super Node, ? super Node> consumer) {
+        for (int slot = 0; slot < cells.capacity(); slot++) {
+            Cell cell = cells.valueAt(slot);
+            if (cell == null) continue;
+            long key = cells.keyAt(slot);
+            int x = (int) (key >> 32);
+            int y = (int) key;
+            for (int i = 0; i < cell.count; i++) {
+                Entry entry = cell.entries[i];
+                for (int j = i + 1; j < cell.count; j++) {
+                    Entry other = cell.entries[j];
+                    if (entry.maxX < other.minX || entry.maxY < other.minY
+                            || entry.minX > other.maxX || entry.minY > other.maxY) continue;
+                    
+                    // Two Nodes share every cell their intersection overlaps, only report
+                    // them in the cell that contains the top left corner of it
+                    if (cell(Math.max(entry.minX, other.minX)) == x && cell(Math.max(entry.minY, other.minY)) == y) {
+                        consumer.accept(entry.node, other.node);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        cells.clear();
+        entries.clear();
+        Arrays.fill(allEntries, null);
+        entryCount = 0;
+    }
+
+    // HELP METHODS
+
+    private void visit(Entry entry, double minX, double minY, double maxX, double maxY, Consumer<? super Node> consumer) {
+        // Skip Nodes that were already found in another cell
+        if (entry.stamp == stamp) return;
+        entry.stamp = stamp;
+
+        if (entry.maxX >= minX && entry.maxY >= minY && entry.minX <= maxX && entry.minY <= maxY) {
+            consumer.accept(entry.node);
+        }
+    }
+
+    private void addToCells(Entry entry) {
+        entry.cellMinX = cell(entry.minX);
+        entry.cellMinY = cell(entry.minY);
+        entry.cellMaxX = cell(entry.maxX);
+        entry.cellMaxY = cell(entry.maxY);
+        for (int x = entry.cellMinX; x <= entry.cellMaxX; x++) {
+            for (int y = entry.cellMinY; y <= entry.cellMaxY; y++) {
+                long key = key(x, y);
+                Cell cell = cells.get(key);
+                if (cell == null) {
+                    cell = freeCellCount > 0 ? freeCells[--freeCellCount] : new Cell();
+                    cells.put(key, cell);
+                }
+                cell.add(entry);
+            }
+        }
+        entry.inCells = true;
+    }
+
+    private void removeFromCells(Entry entry) {
+        for (int x = entry.cellMinX; x <= entry.cellMaxX; x++) {
+            for (int y = entry.cellMinY; y <= entry.cellMaxY; y++) {
+                long key = key(x, y);
+                Cell cell = cells.get(key);
+                if (cell == null) continue;
+                cell.remove(entry);
+                // Only keep cells that contain a Node
+                if (cell.count == 0) {
+                    cells.remove(key);
+                    if (freeCellCount == freeCells.length) {
+                        freeCells = Arrays.copyOf(freeCells, freeCellCount * 2);
+                    }
+                    freeCells[freeCellCount++] = cell;
+                }
+            }
+        }
+    }
+
+    // Distributes all Nodes over the cells after the cell size changed
+    private void rehash() {
+        cells.clear();
+        for (int i = 0; i < entryCount; i++) {
+            addToCells(allEntries[i]);
+        }
+    }
+
+    private int cell(double coordinate) {
+        return (int) Math.floor(coordinate / getCellSize());
+    }
+
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    // The Nodes that overlap a cell
+    private static class Cell {
+        Entry[] entries = new Entry[4];
+        int count;
+
+        void add(Entry entry) {
+            if (count == entries.length) {
+                entries = Arrays.copyOf(entries, count * 2);
+            }
+            entries[count++] = entry;
+        }
+
+        void remove(Entry entry) {
+            for (int i = 0; i < count; i++) {
+                if (entries[i] == entry) {
+                    entries[i] = entries[--count];
+                    entries[count] = null;
+                    return;
+                }
+            }
+        }
+    }
+
+    // A Node with its bounds and the range of cells it is stored in
+    private static class Entry {
+        final Node node;
+        double minX, minY, maxX, maxY;
+        int cellMinX, cellMinY, cellMaxX, cellMaxY;
+        boolean inCells;
+        int stamp;
+        // Index in allEntries
+        int index;
+
+        Entry(Node node) {
+            this.node = node;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javafx.geometry.Point2D;
+import javafx.scene.Node;
+
+/**
+ * Answers queries about the positions of the active Nodes of a TactilePane,
+ * using its broad phase to find candidates and the cached bounds of the
+ * bodies to check them, so the scene graph is only read for Nodes that moved
+ * since their bounds were last cached.
+ * <p>
+ * All coordinates and distances are in the coordinate space of the scene.
+ * The distance between two bounds is the length of the shortest line between
+ * them, which is 0 if they intersect.
+ */
+final class SpatialQueries {
+    // Radius of the first search for the nearest Nodes, doubled until enough are found
+    private static final double INITIAL_SEARCH_RADIUS = 64;
+    // Shortest part of the path of a sweep that is queried at once, and the
+    // maximum number of parts, so very long paths don't cost too many queries
+    private static final double MIN_SWEEP_PART = 64;
+    private static final int MAX_SWEEP_PARTS = 64;
+
+    private final TactilePane pane;
+    private final BodyStore bodies;
+    private final PhysicsTimer physics;
+
+    // Ids of the candidates found by the broad phase for the current query
+    private int[] candidates = new int[16];
+    private int candidateCount;
+    private final Consumer<Node> addCandidate = this::addCandidate;
+    // Distances of the candidates to the bounds of the current query
+    private double[] distances = new double[16];
+
+    SpatialQueries(TactilePane pane, BodyStore bodies, PhysicsTimer physics) {
+        this.pane = pane;
+        this.bodies = bodies;
+        this.physics = physics;
+    }
+
+    /**
+     * Returns the active Nodes that are within the given distance of the given
+     * bounds, except for the excluded Node, which may be null.
+     */
+    List<Node> within(double minX, double minY, double maxX, double maxY, Node excluded, double distance) {
+        physics.updateIndex();
+        findCandidates(minX - distance, minY - distance, maxX + distance, maxY + distance, excluded);
+
+        List<Node> result = new ArrayList<>();
+        for (int i = 0; i < candidateCount; i++) {
+            int id = candidates[i];
+            if (distance(id, minX, minY, maxX, maxY) <= distance) {
+                result.add(bodies.nodes[id]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns at most k active Nodes that are within maxDistance of the given
+     * bounds, except for the excluded Node, ordered from near to far.
+     */
+    List<Node> nearest(double minX, double minY, double maxX, double maxY, Node excluded, int k, double maxDistance) {
+        if (k == 0) return new ArrayList<>();
+        physics.updateIndex();
+
+        // Search ever larger areas until k Nodes are found whose distance is
+        // no larger than the radius of the area, since nothing outside of it is nearer
+        double radius = Math.min(INITIAL_SEARCH_RADIUS, maxDistance);
+        while (true) {
+            findCandidates(minX - radius, minY - radius, maxX + radius, maxY + radius, excluded);
+
+            int found = 0;
+            for (int i = 0; i < candidateCount; i++) {
+                distances[i] = distance(candidates[i], minX, minY, maxX, maxY);
+                if (distances[i] <= radius) {
+                    found++;
+                }
+            }
+            if (found >= k || radius >= maxDistance) break;
+
+            // No need to search further than the bounds of all active Nodes,
+            // which the physics keeps up to date, or a bit larger
+            if (minX - radius <= physics.extentMinX && minY - radius <= physics.extentMinY
+                    && maxX + radius >= physics.extentMaxX && maxY + radius >= physics.extentMaxY) break;
+
+            radius = Math.min(radius * 2, maxDistance);
+        }
+
+        // Sort the candidates that are near enough by distance, then by id so the order is stable
+        int count = 0;
+        for (int i = 0; i < candidateCount; i++) {
+            if (distances[i] <= maxDistance) {
+                candidates[count] = candidates[i];
+                distances[count] = distances[i];
+                count++;
+            }
+        }
+        for (int i = 1; i < count; i++) {
+            int id = candidates[i];
+            double distance = distances[i];
+            int j = i - 1;
+            for (; j >= 0 && (distances[j] > distance || (distances[j] == distance && candidates[j] > id)); j--) {
+                candidates[j + 1] = candidates[j];
+                distances[j + 1] = distances[j];
+            }
+            candidates[j + 1] = id;
+            distances[j + 1] = distance;
+        }
+
+        List<Node> result = new ArrayList<>(Math.min(k, count));
+        for (int i = 0; i < count && i < k; i++) {
+            result.add(bodies.nodes[candidates[i]]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the first active Node, other than the excluded Node, that the
+     * given bounds hit when they are moved along the given vector, or null.
+     * Nodes that already intersect the bounds before they move are ignored.
+     */
+    SweepHit sweep(double minX, double minY, double maxX, double maxY, double vx, double vy, Node excluded) {
+        double length = Math.hypot(vx, vy);
+        if (length == 0) return null;
+        physics.updateIndex();
+
+        // Walk along the vector in parts, so only the Nodes near the path are
+        // checked instead of all Nodes in the bounds of the whole path
+        double partLength = Math.max(MIN_SWEEP_PART, 2 * Math.max(maxX - minX, maxY - minY));
+        int parts = (int) Math.min(MAX_SWEEP_PARTS, Math.ceil(length / partLength));
+        for (int part = 0; part < parts; part++) {
+            double start = (double) part / parts;
+            double end = (double) (part + 1) / parts;
+            findCandidates(Math.min(minX + vx * start, minX + vx * end), Math.min(minY + vy * start, minY + vy * end),
+                    Math.max(maxX + vx * start, maxX + vx * end), Math.max(maxY + vy * start, maxY + vy * end), excluded);
+
+            // A Node that is hit before the end of this part is near the path
+            // of this part or an earlier one, so it has been found by now
+            int hit = -1;
+            double hitTime = Double.POSITIVE_INFINITY;
+            boolean hitOnX = false;
+            for (int i = 0; i < candidateCount; i++) {
+                int id = candidates[i];
+                double enterX = enterTime(minX, maxX, vx, bodies.minX[id], bodies.maxX[id]);
+                double enterY = enterTime(minY, maxY, vy, bodies.minY[id], bodies.maxY[id]);
+                double exitX = exitTime(minX, maxX, vx, bodies.minX[id], bodies.maxX[id]);
+                double exitY = exitTime(minY, maxY, vy, bodies.minY[id], bodies.maxY[id]);
+                double enter = Math.max(enterX, enterY);
+                if (enter < 0 || enter > end || enter > Math.min(exitX, exitY)) continue;
+
+                if (enter < hitTime || (enter == hitTime && id < hit)) {
+                    hit = id;
+                    hitTime = enter;
+                    hitOnX = enterX >= enterY;
+                }
+            }
+            if (hit >= 0) {
+                Point2D normal = hitOnX ? new Point2D(-Math.signum(vx), 0) : new Point2D(0, -Math.signum(vy));
+                return new SweepHit(bodies.nodes[hit], hitTime, hitTime * length, normal);
+            }
+        }
+        return null;
+    }
+
+    // HELP METHODS
+
+    // The time, as a fraction of the vector, at which bounds moving along an
+    // axis start to overlap other bounds; negative infinity if they always
+    // overlap, positive infinity if they never do
+    static double enterTime(double min, double max, double vector, double otherMin, double otherMax) {
+        if (vector > 0) return (otherMin - max) / vector;
+        if (vector < 0) return (otherMax - min) / vector;
+        return max >= otherMin && min <= otherMax ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+    }
+
+    // The time at which bounds moving along an axis stop overlapping other bounds
+    static double exitTime(double min, double max, double vector, double otherMin, double otherMax) {
+        if (vector > 0) return (otherMax - min) / vector;
+        if (vector < 0) return (otherMin - max) / vector;
+        return max >= otherMin && min <= otherMax ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+    }
+
+    // Collects the ids of the active Nodes whose bounds may intersect the given
+    // bounds. The broad phase must have been brought up to date for the query
+    private void findCandidates(double minX, double minY, double maxX, double maxY, Node excluded) {
+        candidateCount = 0;
+        pane.getBroadPhase().query(minX, minY, maxX, maxY, addCandidate);
+
+        // The broad phase may report more than asked for
+        int count = 0;
+        for (int i = 0; i < candidateCount; i++) {
+            int id = candidates[i];
+            if (bodies.nodes[id] != excluded && distance(id, minX, minY, maxX, maxY) == 0) {
+                candidates[count++] = id;
+            }
+        }
+        candidateCount = count;
+    }
+
+    private void addCandidate(Node node) {
+        int id = bodies.idOf(node);
+        if (id < 0 || !bodies.hasFlag(id, BodyStore.ACTIVE)) return;
+
+        if (candidateCount == candidates.length) {
+            candidates = Arrays.copyOf(candidates, candidateCount * 2);
+            distances = Arrays.copyOf(distances, candidateCount * 2);
+        }
+        candidates[candidateCount++] = id;
+    }
+
+    // The distance between the cached bounds of a body and the given bounds
+    private double distance(int id, double minX, double minY, double maxX, double maxY) {
+        double dx = Math.max(0, Math.max(bodies.minX[id] - maxX, minX - bodies.maxX[id]));
+        double dy = Math.max(0, Math.max(bodies.minY[id] - maxY, minY - bodies.maxY[id]));
+        return dx == 0 ? dy : dy == 0 ? dx : Math.sqrt(dx * dx + dy * dy);
+    }
+}
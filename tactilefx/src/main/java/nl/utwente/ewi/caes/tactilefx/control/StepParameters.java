@@ -0,0 +1,119 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import nl.utwente.ewi.caes.tactilefx.control.TactilePane.BondSolver;
+import nl.utwente.ewi.caes.tactilefx.control.TactilePane.Integrator;
+
+/**
+ * The settings of a TactilePane that apply to a single physics step, scaled to
+ * the length of the step. The multipliers of TactilePane are tuned for steps of
+ * {@link PhysicsTimer#TIME_STEP}; this class derives the values that give the
+ * same motion at the step rate the TactilePane is configured with.
+ */
+final class StepParameters {
+    // Length of a step in seconds
+    double timeStep = PhysicsTimer.TIME_STEP;
+    // Scalar by which a vector is multiplied every step
+    double friction;
+    // Scalar by which the distance a Node in use moved is added to its vector
+    double slide;
+    // Scalar by which the forces of Bonds are multiplied
+    double bondScale;
+    BondSolver bondSolver = BondSolver.FORCE;
+    int bondIterations;
+    double bounceMultiplier;
+    // Scalar by which the remaining displacement of a Node that hits a border
+    // is multiplied to get its new vector
+    double bounce;
+    double vectorThreshold;
+    Integrator integrator = Integrator.EXPLICIT_EULER;
+
+    /**
+     * Reads the settings of the given TactilePane.
+     */
+    void update(TactilePane pane) {
+        double frictionMultiplier = pane.getFrictionMultiplier();
+        double ratio = PhysicsTimer.TIME_STEP * pane.getStepRate();
+
+        timeStep = 1 / pane.getStepRate();
+        friction = Math.pow(frictionMultiplier, 1 / ratio);
+        // Chosen so that a Node that is dragged at a constant speed builds up
+        // the same vector at every step rate
+        if (frictionMultiplier < 1) {
+            slide = pane.getSlideMultiplier() * ratio * (1 - friction) / (1 - frictionMultiplier);
+        } else {
+            slide = pane.getSlideMultiplier();
+        }
+        bondScale = 1 / ratio;
+        bondSolver = pane.getBondSolver();
+        bondIterations = pane.getBondIterations();
+        bounceMultiplier = pane.getBounceMultiplier();
+        bounce = bounceMultiplier / timeStep;
+        vectorThreshold = pane.getVectorThreshold();
+        integrator = pane.getIntegrator();
+    }
+
+    /**
+     * Returns the scalar by which friction multiplies the given vector during
+     * a step, which is 0 if the result would drop below the vector threshold.
+     */
+    double frictionScale(double vectorX, double vectorY) {
+        return Math.hypot(vectorX * friction, vectorY * friction) < vectorThreshold ? 0 : friction;
+    }
+
+    /**
+     * Returns the distance a Node that isn't in use or held by Bonds moves
+     * during the given number of seconds, if it starts at the given speed
+     * and is only slowed down by friction, as the integrator would move it.
+     */
+    double slideDistance(double speed, double seconds) {
+        // Each step the vector is multiplied by friction, until it drops below
+        // the vector threshold and becomes 0. Count the steps before that
+        double steps = Math.floor(seconds / timeStep);
+        double moving = steps;
+        if (speed < vectorThreshold) {
+            moving = 0;
+        } else if (friction < 1 && vectorThreshold > 0) {
+            moving = Math.min(steps, Math.max(0, Math.floor(Math.log(vectorThreshold / speed) / Math.log(friction))));
+        }
+
+        // The sum of the vectors after friction of those steps
+        double sum = friction < 1
+                ? speed * friction * (1 - Math.pow(friction, moving)) / (1 - friction)
+                : speed * moving;
+        // Without other forces, the vector after friction is also the vector at
+        // the end of the step, so both kinds of Euler move by it
+        if (integrator != Integrator.VERLET) {
+            return sum * timeStep;
+        }
+
+        // Verlet moves by the average of the vectors at the start and end of
+        // each step. The vector at the start of a step is the one at the end
+        // of the step before, so it adds the speed and loses the last vector.
+        // If the Node stops within the time, the step in which it stops moves
+        // it by half of its last vector as well
+        double last = friction < 1 ? speed * Math.pow(friction, moving) : speed;
+        double distance = (2 * sum + speed - last) / 2;
+        if (moving < steps) {
+            distance += last / 2;
+        }
+        return distance * timeStep;
+    }
+
+    /**
+     * Returns the distance a Node moves along one axis during a step.
+     *
+     * @param startVector   the vector at the start of the step
+     * @param frictionVector    the vector after friction has been applied
+     * @param endVector     the vector after all forces have been applied
+     */
+    double displacement(double startVector, double frictionVector, double endVector) {
+        switch (integrator) {
+            case SEMI_IMPLICIT_EULER:
+                return endVector * timeStep;
+            case VERLET:
+                return (startVector + endVector) / 2 * timeStep;
+            default:
+                return frictionVector * timeStep;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import javafx.scene.Node;
+
+/**
+ * A {@link BroadPhase} that keeps the begin and end points of the bounds of
+ * all Nodes sorted along both axes, together with the set of pairs of Nodes
+ * whose bounds intersect.
+ * <p>
+ * Whenever bounds change, the points are sorted again by insertion sort.
+ * Because Nodes only move a little between two steps, the points are nearly
+ * sorted already, so this takes little more than a single pass. Two Nodes can
+ * only start or stop intersecting when a begin point of one passes an end
+ * point of the other, so the set of intersecting pairs is updated while
+ * sorting and {@link #queryPairs(BiConsumer)} can report it directly. This
+ * makes the cost of the broad phase close to linear in the number of Nodes
+ * and pairs, as long as their order barely changes between steps.
+ * <p>
+ * Queries for the Nodes intersecting arbitrary bounds are supported, but are
+ * slower than those of a {@link QuadTree} or {@link SpatialHashGrid} when
+ * some of the Nodes are very wide.
+ */
+public class SweepAndPrune implements BroadPhase {
+    private static final int X = 0;
+    private static final int Y = 1;
+
+    private final Map<Node, Integer> idByNode = new HashMap<>();
+    private int[] freeIds = new int[16];
+    private int freeCount;
+    private int size;
+
+    private Node[] nodes = new Node[16];
+    // Bounds per id, indexed by axis
+    private double[][] min = { new double[16], new double[16] };
+    private double[][] max = { new double[16], new double[16] };
+
+    // Sorted points per axis: the id of a Node times two, plus one for an end point
+    private int[][] points = { new int[32], new int[32] };
+    private int pointCount;
+    // Ids of removed Nodes whose points are still in the sorted points. They
+    // are left out by the next sort, and only reused after that
+    private int[] removedIds = new int[16];
+    private int removedCount;
+    // Largest width and height of a Node, as of the last sort
+    private final double[] maxExtent = new double[2];
+    private boolean sorted = true;
+
+    private final LongHashSet pairs = new LongHashSet();
+    // Scratch space for the pairs of a removed Node
+    private long[] removedPairs = new long[16];
+
+    @Override
+    public void insert(Node node, double minX, double minY, double maxX, double maxY) {
+        Integer id = idByNode.get(node);
+        if (id != null) {
+            setBounds(id, minX, minY, maxX, maxY);
+            return;
+        }
+
+        int newId = freeCount > 0 ? freeIds[--freeCount] : size++;
+        ensureCapacity(size);
+        idByNode.put(node, newId);
+        nodes[newId] = node;
+        setBounds(newId, minX, minY, maxX, maxY);
+
+        // Append the points, they are sorted into place with the rest
+        if (pointCount + 2 > points[X].length) {
+            for (int axis = X; axis <= Y; axis++) {
+                points[axis] = Arrays.copyOf(points[axis], points[axis].length * 2);
+            }
+        }
+        for (int axis = X; axis <= Y; axis++) {
+            points[axis][pointCount] = newId * 2;
+            points[axis][pointCount + 1] = newId * 2 + 1;
+        }
+        pointCount += 2;
+    }
+
+    @Override
+    public void update(Node node, double minX, double minY, double maxX, double maxY) {
+        insert(node, minX, minY, maxX, maxY);
+    }
+
+    @Override
+    public void remove(Node node) {
+        Integer id = idByNode.remove(node);
+        if (id == null) return;
+
+        removePairs(id);
+        // Its points are left out by the next sort, so removing many Nodes
+        // costs a single pass over the points
+        nodes[id] = null;
+        if (removedCount == removedIds.length) {
+            removedIds = Arrays.copyOf(removedIds, removedCount * 2);
+        }
+        removedIds[removedCount++] = id;
+        sorted = false;
+    }
+
+    @Override
+    public void query(double minX, double minY, double maxX, double maxY, Consumer<? super Node> consumer) {
+        sort();
+
+        // Any Node that intersects the bounds begins no further left than this
+        double from = minX - maxExtent[X];
+        int[] axisPoints = points[X];
+        int i = firstPointFrom(from);
+        for (; i < pointCount; i++) {
+            int point = axisPoints[i];
+            int id = point >> 1;
+            if ((point & 1) != 0) continue;
+            if (min[X][id] > maxX) break;
+
+            if (max[X][id] >= minX && max[Y][id] >= minY && min[Y][id] <= maxY) {
+                consumer.accept(nodes[id]);
+            }
+        }
+    }
+
+    @Override
+    public void queryPairs(BiConsumer<? super Node, ? super Node> consumer) {
+        sort();
+
+        for (int slot = 0; slot < pairs.capacity(); slot++) {
+            long pair = pairs.keyAt(slot);
+            if (pair < 0) continue;
+            consumer.accept(nodes[LongHashSet.first(pair)], nodes[LongHashSet.second(pair)]);
+        }
+    }
+
+    @Override
+    public void clear() {
+        idByNode.clear();
+        Arrays.fill(nodes, null);
+        freeCount = 0;
+        size = 0;
+        pointCount = 0;
+        removedCount = 0;
+        pairs.clear();
+        sorted = true;
+    }
+
+    // HELP METHODS
+
+    private void setBounds(int id, double minX, double minY, double maxX, double maxY) {
+        min[X][id] = minX;
+        min[Y][id] = minY;
+        max[X][id] = maxX;
+        max[Y][id] = maxY;
+        sorted = false;
+    }
+
+    // Sorts the points along both axes, updating the set of pairs on the way
+    private void sort() {
+        if (sorted) return;
+        if (removedCount > 0) {
+            removePoints();
+        }
+
+        for (int axis = X; axis <= Y; axis++) {
+            int[] axisPoints = points[axis];
+            for (int i = 1; i < pointCount; i++) {
+                int point = axisPoints[i];
+                double value = value(axis, point);
+                int j = i - 1;
+                for (; j >= 0 && isBefore(axis, point, value, axisPoints[j]); j--) {
+                    swapped(point, axisPoints[j]);
+                    axisPoints[j + 1] = axisPoints[j];
+                }
+                axisPoints[j + 1] = point;
+            }
+
+            maxExtent[axis] = 0;
+            for (int id = 0; id < size; id++) {
+                if (nodes[id] != null) {
+                    maxExtent[axis] = Math.max(maxExtent[axis], max[axis][id] - min[axis][id]);
+                }
+            }
+        }
+        sorted = true;
+    }
+
+    // Whether a point with the given value belongs before another point.
+    // Begin points go before end points with the same value, so bounds that
+    // touch intersect.
+    private boolean isBefore(int axis, int point, double value, int other) {
+        double otherValue = value(axis, other);
+        return value < otherValue || (value == otherValue && (point & 1) == 0 && (other & 1) != 0);
+    }
+
+    // Called when point moved before other while sorting
+    private void swapped(int point, int other) {
+        int id = point >> 1;
+        int otherId = other >> 1;
+        if (id == otherId) return;
+
+        boolean begin = (point & 1) == 0;
+        boolean otherBegin = (other & 1) == 0;
+        if (begin && !otherBegin) {
+            // Begins before the other ends: they may have started to intersect
+            if (intersects(id, otherId)) {
+                pairs.add(LongHashSet.pair(id, otherId));
+            }
+        } else if (!begin && otherBegin) {
+            // Ends before the other begins: they no longer intersect
+            pairs.remove(LongHashSet.pair(id, otherId));
+        }
+    }
+
+    private boolean intersects(int id, int otherId) {
+        return max[X][id] >= min[X][otherId] && min[X][id] <= max[X][otherId]
+                && max[Y][id] >= min[Y][otherId] && min[Y][id] <= max[Y][otherId];
+    }
+
+    private double value(int axis, int point) {
+        int id = point >> 1;
+        return (point & 1) == 0 ? min[axis][id] : max[axis][id];
+    }
+
+    // Returns the index of the first point on the x axis with a value of at least from
+    private int firstPointFrom(double from) {
+        int low = 0;
+        int high = pointCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (value(X, points[X][middle]) < from) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Removes all pairs with the given id
+    private void removePairs(int id) {
+        int count = 0;
+        for (int slot = 0; slot < pairs.capacity(); slot++) {
+            long pair = pairs.keyAt(slot);
+            if (pair >= 0 && (LongHashSet.first(pair) == id || LongHashSet.second(pair) == id)) {
+                if (count == removedPairs.length) {
+                    removedPairs = Arrays.copyOf(removedPairs, count * 2);
+                }
+                removedPairs[count++] = pair;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            pairs.remove(removedPairs[i]);
+        }
+    }
+
+    // Removes the points of the removed Nodes, keeping the others in order,
+    // and frees their ids
+    private void removePoints() {
+        for (int axis = X; axis <= Y; axis++) {
+            int[] axisPoints = points[axis];
+            int count = 0;
+            for (int i = 0; i < pointCount; i++) {
+                if (nodes[axisPoints[i] >> 1] != null) {
+                    axisPoints[count++] = axisPoints[i];
+                }
+            }
+        }
+        pointCount -= removedCount * 2;
+
+        // Give back the space of many removed Nodes
+        if (pointCount * 4 < points[X].length && points[X].length > 32) {
+            int newLength = Math.max(32, pointCount * 2);
+            for (int axis = X; axis <= Y; axis++) {
+                points[axis] = Arrays.copyOf(points[axis], newLength);
+            }
+        }
+
+        if (freeCount + removedCount > freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, Math.max(freeIds.length * 2, freeCount + removedCount));
+        }
+        System.arraycopy(removedIds, 0, freeIds, freeCount, removedCount);
+        freeCount += removedCount;
+        removedCount = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= nodes.length) return;
+
+        int newCapacity = Math.max(capacity, nodes.length * 2);
+        nodes = Arrays.copyOf(nodes, newCapacity);
+        for (int axis = X; axis <= Y; axis++) {
+            min[axis] = Arrays.copyOf(min[axis], newCapacity);
+            max[axis] = Arrays.copyOf(max[axis], newCapacity);
+        }
+    }
+}
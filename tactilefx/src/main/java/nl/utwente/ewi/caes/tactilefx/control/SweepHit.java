@@ -0,0 +1,63 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import javafx.geometry.Point2D;
+import javafx.scene.Node;
+
+/**
+ * The first active Node hit by a ray or by bounds that are moved along a
+ * vector, as found by {@link TactilePane#raycast(Point2D, Point2D)} and the
+ * {@code sweep} methods of {@link TactilePane}.
+ */
+public final class SweepHit {
+    private final Node node;
+    private final double time;
+    private final double distance;
+    private final Point2D normal;
+
+    SweepHit(Node node, double time, double distance, Point2D normal) {
+        this.node = node;
+        this.time = time;
+        this.distance = distance;
+        this.normal = normal;
+    }
+
+    /**
+     * @return the Node that was hit
+     */
+    public Node getNode() {
+        return node;
+    }
+
+    /**
+     * The time of impact, as the fraction of the vector that is travelled
+     * before the Node is hit. Between 0 and 1.
+     *
+     * @return the time of impact
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * @return the distance that is travelled before the Node is hit
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * The normal of the side of the bounds of the Node that was hit, which
+     * points against the direction of the vector. One of (-1, 0), (1, 0),
+     * (0, -1) and (0, 1).
+     *
+     * @return the contact normal
+     */
+    public Point2D getNormal() {
+        return normal;
+    }
+
+    @Override
+    public String toString() {
+        return "SweepHit[node=" + node + ", time=" + time + ", normal=" + normal + "]";
+    }
+}
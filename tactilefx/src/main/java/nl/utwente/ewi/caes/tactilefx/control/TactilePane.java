@@ -9,15 +9,19 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import javafx.animation.PauseTransition;
 
 import javafx.beans.DefaultProperty;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleDoubleProperty;
+import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
@@ -33,14 +37,17 @@ import javafx.css.StyleableBooleanProperty;
 import javafx.css.StyleableProperty;
 import javafx.event.EventHandler;
 import javafx.event.EventType;
+import javafx.geometry.BoundingBox;
 import javafx.geometry.Bounds;
 import javafx.geometry.Point2D;
 import javafx.scene.Node;
 import javafx.scene.Parent;
+import javafx.scene.Scene;
 import javafx.scene.control.Control;
 import javafx.scene.control.Skin;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.input.TouchEvent;
+import javafx.stage.Window;
 import javafx.util.Duration;
 import nl.utwente.ewi.caes.tactilefx.event.TactilePaneEvent;
 import nl.utwente.ewi.caes.tactilefx.skin.TactilePaneSkin;
@@ -133,6 +140,12 @@ public class TactilePane extends Control {
     static final String GO_TO_FOREGROUND_ON_CONTACT = "tactile-pane-go-to-foreground-on-contact";
     static final String DRAGGABLE = "tactile-pane-draggable";
     static final String SLIDE_ON_RELEASE = "tactile-pane-slide-on-release";
+    static final String COLLISION_SHAPE = "tactile-pane-collision-shape";
+    static final String PROXIMITY_RADIUS = "tactile-pane-proximity-radius";
+    static final String CONTINUOUS_COLLISION_DETECTION = "tactile-pane-continuous-collision-detection";
+    static final String MASS = "tactile-pane-mass";
+    static final String RESTITUTION = "tactile-pane-restitution";
+    static final String FRICTION = "tactile-pane-friction";
     static final String NODES_COLLIDING = "tactile-pane-nodes-colliding";
     static final String NODES_PROXIMITY = "tactile-pane-nodes-proximity";
     static final String NODES_BOND = "tactile-pane-nodes-bond";
@@ -148,7 +161,6 @@ public class TactilePane extends Control {
     // Attached Properties for Nodes that are only used privately
     static final String TOUCH_EVENT_HANDLER = "tactile-pane-touch-event-handler";
     static final String MOUSE_EVENT_HANDLER = "tactile-pane-mouse-event-handler";
-    static final String DIRTY = "tactile-pane-dirty";
     
     // ATTACHED PROPERTIES
     private static void setDragContext(Node node, DragContext dragContext) {
@@ -178,6 +190,11 @@ public class TactilePane extends Control {
                 @Override 
                 public void invalidated() {
                     node.pseudoClassStateChanged(ATTACHED_IN_USE_STATE, get());
+                    
+                    BodyStore bodies = getBodyStore(node);
+                    if (bodies != null) {
+                        bodies.setFlag(node, BodyStore.IN_USE, get());
+                    }
                 }
                 
                 @Override
@@ -225,11 +242,24 @@ public class TactilePane extends Control {
     /**
      * The anchor for a given node. When not <code>null</code>, this Node's
      * location will be bound to another Node.
+     * <p>
+     * A Node anchored to a Node that is not a child of a {@code TactilePane}
+     * lets the physics stop once everything else is at rest. It only follows
+     * that Node again once the physics run, for instance because a child is
+     * dragged or given a vector.
      */
     public static ObjectProperty<Anchor> anchorProperty(Node node) {
         ObjectProperty<Anchor> property = (ObjectProperty<Anchor>) getConstraint(node, ANCHOR);
         if (property == null) {
-            property = new SimpleObjectProperty<>(null);
+            property = new SimpleObjectProperty<Anchor>(null) {
+                @Override
+                public void invalidated() {
+                    BodyStore bodies = getBodyStore(node);
+                    if (bodies != null) {
+                        bodies.setAnchor(node, get());
+                    }
+                }
+            };
             setConstraint(node, ANCHOR, property);
         }
         return property;
@@ -246,16 +276,29 @@ public class TactilePane extends Control {
      * Sets the value of the property vector
      */
     public static Point2D getVector(Node node) {
-        return vectorProperty(node).get();
+        Point2D vector = vectorProperty(node).get();
+        BodyStore bodies = getBodyStore(node);
+        return bodies == null ? vector : bodies.getVector(node, vector);
     }
     
     /**
      * The 2D velocity vector for this {@code node}. Primarily intended for physics.
+     * While the physics are changing the vector of a child of a {@code TactilePane},
+     * this property is updated once per pulse. {@link #getVector(javafx.scene.Node) getVector}
+     * always returns the current value.
      */
     public static ObjectProperty<Point2D> vectorProperty(Node node) {
         ObjectProperty<Point2D> property = (ObjectProperty<Point2D>) getConstraint(node, VECTOR);
         if (property == null) {
-            property = new SimpleObjectProperty<>(Point2D.ZERO);
+            property = new SimpleObjectProperty<Point2D>(Point2D.ZERO) {
+                @Override
+                public void invalidated() {
+                    BodyStore bodies = getBodyStore(node);
+                    if (bodies != null) {
+                        bodies.pushVector(node, get());
+                    }
+                }
+            };
             setConstraint(node, VECTOR, property);
         }
         return property;
@@ -365,12 +408,268 @@ public class TactilePane extends Control {
     public static BooleanProperty slideOnReleaseProperty(Node node) {
         BooleanProperty property = (BooleanProperty) getConstraint(node, SLIDE_ON_RELEASE);
         if (property == null) {
-            property = new SimpleBooleanProperty(false);
+            property = new SimpleBooleanProperty(false) {
+                @Override
+                public void invalidated() {
+                    BodyStore bodies = getBodyStore(node);
+                    if (bodies != null) {
+                        bodies.setFlag(node, BodyStore.SLIDE_ON_RELEASE, get());
+                    }
+                }
+            };
             setConstraint(node, SLIDE_ON_RELEASE, property);
         }
         return property;
     }
     
+    /**
+     * Sets the value of the property continuousCollisionDetection
+     */
+    public static void setContinuousCollisionDetection(Node node, boolean continuousCollisionDetection) {
+        continuousCollisionDetectionProperty(node).set(continuousCollisionDetection);
+    }
+    
+    /**
+     * Gets the value of the property continuousCollisionDetection
+     */
+    public static boolean isContinuousCollisionDetection(Node node) {
+        return continuousCollisionDetectionProperty(node).get();
+    }
+    
+    /**
+     * Whether the collisions of the given active {@code Node} are also
+     * detected along the path it moved since the last physics step, instead
+     * of only where it ended up. A {@code Node} that is flicked so fast that it
+     * passes through another {@code Node} within a single step then still
+     * fires {@code AREA_ENTERED} and {@code AREA_LEFT} events for it. The
+     * collisions that start during a step are reported in the order in which
+     * they happened. Only use this for {@code Nodes} that may move fast, since
+     * the path of every such {@code Node} is looked up in the broad phase
+     * every step.
+     */
+    public static BooleanProperty continuousCollisionDetectionProperty(Node node) {
+        BooleanProperty property = (BooleanProperty) getConstraint(node, CONTINUOUS_COLLISION_DETECTION);
+        if (property == null) {
+            property = new SimpleBooleanProperty(false) {
+                @Override
+                public void invalidated() {
+                    forEachBodyStore(node, bodies -> bodies.setFlag(node, BodyStore.CONTINUOUS, get()));
+                }
+            };
+            setConstraint(node, CONTINUOUS_COLLISION_DETECTION, property);
+        }
+        return property;
+    }
+    
+    /**
+     * Sets the value of the property mass
+     */
+    public static void setMass(Node node, double mass) {
+        massProperty(node).set(mass);
+    }
+    
+    /**
+     * Gets the value of the property mass
+     */
+    public static double getMass(Node node) {
+        return massProperty(node).get();
+    }
+    
+    /**
+     * The mass of the given {@code Node}, which determines how far it is
+     * pushed by the {@code Nodes} it collides with when
+     * {@code collisionResponse} is enabled, relative to how far it pushes
+     * them. Set it to {@code Double.POSITIVE_INFINITY} to make the
+     * {@code Node} immovable. Defaults to 1. When set to a value of 0 or less,
+     * an IllegalArgumentException is thrown.
+     */
+    public static DoubleProperty massProperty(Node node) {
+        DoubleProperty property = (DoubleProperty) getConstraint(node, MASS);
+        if (property == null) {
+            property = new SimpleDoubleProperty(1) {
+                @Override
+                public void set(double value) {
+                    if (!(value > 0)) {
+                        throw new IllegalArgumentException("Mass should be a positive value");
+                    }
+                    super.set(value);
+                }
+                
+                @Override
+                public void invalidated() {
+                    forEachBodyStore(node, bodies -> bodies.updateMaterial(node));
+                }
+            };
+            setConstraint(node, MASS, property);
+        }
+        return property;
+    }
+    
+    /**
+     * Sets the value of the property restitution
+     */
+    public static void setRestitution(Node node, double restitution) {
+        restitutionProperty(node).set(restitution);
+    }
+    
+    /**
+     * Gets the value of the property restitution
+     */
+    public static double getRestitution(Node node) {
+        return restitutionProperty(node).get();
+    }
+    
+    /**
+     * How much the given {@code Node} bounces off the {@code Nodes} it
+     * collides with when {@code collisionResponse} is enabled, from 0 (not at
+     * all) to 1 (without losing any speed). Of two colliding {@code Nodes},
+     * the one that bounces most determines the bounce. Defaults to 0. When
+     * set to a value outside of that range, an IllegalArgumentException is
+     * thrown.
+     */
+    public static DoubleProperty restitutionProperty(Node node) {
+        DoubleProperty property = (DoubleProperty) getConstraint(node, RESTITUTION);
+        if (property == null) {
+            property = new SimpleDoubleProperty(0) {
+                @Override
+                public void set(double value) {
+                    if (!(value >= 0 && value <= 1)) {
+                        throw new IllegalArgumentException("Restitution should be between 0 and 1");
+                    }
+                    super.set(value);
+                }
+                
+                @Override
+                public void invalidated() {
+                    forEachBodyStore(node, bodies -> bodies.updateMaterial(node));
+                }
+            };
+            setConstraint(node, RESTITUTION, property);
+        }
+        return property;
+    }
+    
+    /**
+     * Sets the value of the property friction
+     */
+    public static void setFriction(Node node, double friction) {
+        frictionProperty(node).set(friction);
+    }
+    
+    /**
+     * Gets the value of the property friction
+     */
+    public static double getFriction(Node node) {
+        return frictionProperty(node).get();
+    }
+    
+    /**
+     * How much the given {@code Node} slows down the {@code Nodes} that slide
+     * along it when {@code collisionResponse} is enabled. The friction
+     * between two {@code Nodes} is the geometric mean of theirs. Defaults to
+     * 0, which lets {@code Nodes} slide along each other freely. When set to a
+     * negative value, an IllegalArgumentException is thrown.
+     */
+    public static DoubleProperty frictionProperty(Node node) {
+        DoubleProperty property = (DoubleProperty) getConstraint(node, FRICTION);
+        if (property == null) {
+            property = new SimpleDoubleProperty(0) {
+                @Override
+                public void set(double value) {
+                    if (!(value >= 0)) {
+                        throw new IllegalArgumentException("Friction should be 0 or larger");
+                    }
+                    super.set(value);
+                }
+                
+                @Override
+                public void invalidated() {
+                    forEachBodyStore(node, bodies -> bodies.updateMaterial(node));
+                }
+            };
+            setConstraint(node, FRICTION, property);
+        }
+        return property;
+    }
+    
+    /**
+     * Sets the value of the property collisionShape
+     */
+    public static void setCollisionShape(Node node, CollisionShape collisionShape) {
+        collisionShapeProperty(node).set(collisionShape);
+    }
+    
+    /**
+     * Gets the value of the property collisionShape
+     */
+    public static CollisionShape getCollisionShape(Node node) {
+        return collisionShapeProperty(node).get();
+    }
+    
+    /**
+     * The shape of the given {@code Node} in its local coordinate space, that
+     * is used for collision detection when {@code shapeCollisionDetection} is
+     * enabled on its tracker. When {@code null}, the shape is derived from the
+     * {@code Node} by {@link CollisionShape#of(Node)}.
+     */
+    public static ObjectProperty<CollisionShape> collisionShapeProperty(Node node) {
+        ObjectProperty<CollisionShape> property = (ObjectProperty<CollisionShape>) getConstraint(node, COLLISION_SHAPE);
+        if (property == null) {
+            property = new SimpleObjectProperty<CollisionShape>(null) {
+                @Override
+                public void invalidated() {
+                    forEachBodyStore(node, bodies -> bodies.setShape(node, get()));
+                }
+            };
+            setConstraint(node, COLLISION_SHAPE, property);
+        }
+        return property;
+    }
+    
+    /**
+     * Sets the value of the property proximityRadius
+     */
+    public static void setProximityRadius(Node node, double proximityRadius) {
+        proximityRadiusProperty(node).set(proximityRadius);
+    }
+    
+    /**
+     * Gets the value of the property proximityRadius
+     */
+    public static double getProximityRadius(Node node) {
+        return proximityRadiusProperty(node).get();
+    }
+    
+    /**
+     * How close other {@code Nodes} have to be to the given {@code Node} to be
+     * in its proximity. Two {@code Nodes} are in each other's proximity when
+     * the distance between them is at most the largest of their radii, so a
+     * {@code Node} with a large radius attracts proximity events from
+     * {@code Nodes} with a small one. When negative, which is the default, the
+     * {@code proximityThreshold} of its tracker is used.
+     */
+    public static DoubleProperty proximityRadiusProperty(Node node) {
+        DoubleProperty property = (DoubleProperty) getConstraint(node, PROXIMITY_RADIUS);
+        if (property == null) {
+            property = new SimpleDoubleProperty(-1) {
+                @Override
+                public void set(double value) {
+                    if (Double.isNaN(value)) {
+                        throw new IllegalArgumentException("Proximity radius may not be NaN");
+                    }
+                    super.set(value);
+                }
+                
+                @Override
+                public void invalidated() {
+                    forEachBodyStore(node, bodies -> bodies.setProximityRadius(node, get()));
+                }
+            };
+            setConstraint(node, PROXIMITY_RADIUS, property);
+        }
+        return property;
+    }
+    
     /**
      * Returns the set of {@code Nodes} that are registered to the same
      * {@code TactilePane} as the given {@code node}, and are currently
@@ -403,6 +702,13 @@ public class TactilePane extends Control {
      * Returns the set of {@code Bonds} associated with the given {@code Node}. If the set
      * already contains a {@code Bond} with the same {@code bondNode}, the old {@code Bond}
      * is replaced.
+     * <p>
+     * Bonded {@code Nodes} are put to rest once they and the children they're
+     * bonded with move slower than the {@link #vectorThresholdProperty() vectorThreshold},
+     * which may leave them a little off the distance of their {@code Bonds}. Like
+     * with anchors, a bond {@code Node} that is not a child of a {@code TactilePane}
+     * is only followed while the physics run. Changing the distance or force
+     * multiplier of a {@code Bond} doesn't restart the physics either.
      */
     public static ObservableSet<Bond> getBonds(Node node) {
 	ObservableSet<Bond> result = (ObservableSet<Bond>) getConstraint(node, NODES_BOND);
@@ -417,11 +723,23 @@ public class TactilePane extends Control {
                     return super.add(bond);
                 }
             });
+            result.addListener((SetChangeListener.Change<? extends Bond> change) -> {
+                BodyStore bodies = getBodyStore(node);
+                if (bodies != null) {
+                    bodies.updateBonds(node);
+                }
+            });
             setConstraint(node, NODES_BOND, result);
         }
         return result;
     }
     
+    // Whether the given node has any Bonds, without creating its set of Bonds
+    static boolean hasBonds(Node node) {
+        ObservableSet<Bond> bonds = (ObservableSet<Bond>) getConstraint(node, NODES_BOND);
+        return bonds != null && !bonds.isEmpty();
+    }
+    
     
     /**
      * Sets the value of the property onInProximity
@@ -681,12 +999,35 @@ public class TactilePane extends Control {
     }
     
     static boolean isDirty(Node node) {
-        Boolean dirty = (Boolean) getConstraint(node, DIRTY);
-        return dirty == null || dirty;
+        TactilePane tracker = getTracker(node);
+        return tracker == null || tracker.bodies.isDirty(node);
     }
     
     static void setDirty(Node node, boolean dirty) {
-        setConstraint(node, DIRTY, dirty);
+        TactilePane tracker = getTracker(node);
+        if (tracker != null) {
+            tracker.bodies.setDirty(node, dirty);
+        }
+    }
+    
+    // Returns the BodyStore of the TactilePane the given node is a child of, or null
+    static BodyStore getBodyStore(Node node) {
+        Parent parent = node.getParent();
+        return parent instanceof TactilePane ? ((TactilePane) parent).bodies : null;
+    }
+    
+    // Passes every BodyStore the given node may be registered in to action:
+    // the one of the TactilePane it is a child of, and the one of its tracker,
+    // which an active node doesn't have to be a child of
+    static void forEachBodyStore(Node node, Consumer<BodyStore> action) {
+        BodyStore bodies = getBodyStore(node);
+        if (bodies != null) {
+            action.accept(bodies);
+        }
+        TactilePane tracker = getTracker(node);
+        if (tracker != null && tracker.bodies != bodies) {
+            action.accept(tracker.bodies);
+        }
     }
     
     // Used to attach a Property to a Node
@@ -737,18 +1078,41 @@ public class TactilePane extends Control {
             }
         }
         
-        Bounds moveBounds = move.localToScene(move.getBoundsInLocal());
-        Bounds fromBounds = from.localToScene(from.getBoundsInLocal());
+        double[] moveBounds = new double[4];
+        double[] fromBounds = new double[4];
+        sceneBounds(move, moveBounds);
+        sceneBounds(from, fromBounds);
 
-        double moveX = moveBounds.getMinX() + moveBounds.getWidth() / 2;
-        double moveY = moveBounds.getMinY() + moveBounds.getHeight() / 2;
-        double fromX = fromBounds.getMinX() + fromBounds.getWidth() / 2;
-        double fromY = fromBounds.getMinY() + fromBounds.getHeight() / 2;
+        double moveX = (moveBounds[0] + moveBounds[2]) / 2;
+        double moveY = (moveBounds[1] + moveBounds[3]) / 2;
+        double fromX = (fromBounds[0] + fromBounds[2]) / 2;
+        double fromY = (fromBounds[1] + fromBounds[3]) / 2;
         
         Point2D vector = new Point2D(moveX - fromX, moveY - fromY).normalize().multiply(force);
         TactilePane.setVector(moveDraggable, TactilePane.getVector(move).add(vector));
     }
     
+    // Stores the bounds of a Node in scene coordinates in result, read from
+    // the cache of the TactilePane that tracks it if there is one
+    private static void sceneBounds(Node node, double[] result) {
+        TactilePane tracker = getTracker(node);
+        int id = tracker == null ? -1 : tracker.bodies.idOf(node);
+        if (id >= 0) {
+            BodyStore bodies = tracker.bodies;
+            bodies.updateBounds(id);
+            result[0] = bodies.minX[id];
+            result[1] = bodies.minY[id];
+            result[2] = bodies.maxX[id];
+            result[3] = bodies.maxY[id];
+        } else {
+            Bounds bounds = node.localToScene(node.getBoundsInLocal());
+            result[0] = bounds.getMinX();
+            result[1] = bounds.getMinY();
+            result[2] = bounds.getMaxX();
+            result[3] = bounds.getMaxY();
+        }
+    }
+    
     /**
      * Gives the {@code move} Node a velocity vector with a direction so that it will move
      * away from the {@code from} Node. Moves with a default level of force.
@@ -760,13 +1124,16 @@ public class TactilePane extends Control {
     }
     
     // INSTANCE VARIABLES
-    private final PhysicsTimer physics;
-    final QuadTree quadTree;
+    final PhysicsTimer physics;
+    final BodyStore bodies = new BodyStore();
+    private final SpatialQueries queries;
     private final ObservableSet<Node> activeNodes;
     
     private final Map<Node, List<Node>> ancestorsByNode = new HashMap<>();
-    private final Map<Node, ChangeListener<Bounds>> boundsListenerByNode = new HashMap<>();
+    private final Map<Node, ChangeListener<Object>> boundsListenerByNode = new HashMap<>();
     private final Map<Node, ChangeListener<Parent>> parentListenerByNode = new HashMap<>();
+    // The ancestors whose visibility is watched, as the physics stop while any of them is hidden
+    private final List<Parent> visibilityAncestors = new ArrayList<>();
     
     // CONSTRUCTORS
     
@@ -782,8 +1149,14 @@ public class TactilePane extends Control {
         
         // Add EventHandlers for dragging to children when they are added
         super.getChildren().addListener((ListChangeListener.Change<? extends Node> c) -> {
+            // The z-order of the children changed
+            bodies.anchorGraph.invalidate();
             while(c.next()) {
                 for (Node node: c.getRemoved()) {
+                    if (node.getParent() != TactilePane.this) {
+                        bodies.deregister(node, BodyStore.CHILD);
+                    }
+                    
                     // Delay removal of drag event handlers, just in case all that
                     // happened is a node.toFront() call. Ugly workaround, but I can't find a prettier solution
                     PauseTransition holdTimer = new PauseTransition(Duration.millis(500));
@@ -795,18 +1168,19 @@ public class TactilePane extends Control {
                     holdTimer.playFromStart();
                 }
                 for (Node node: c.getAddedSubList()) {
+                    bodies.register(node, BodyStore.CHILD);
                     addDragEventHandlers(node);
                 }
             }
         });
         
-        // Initialise quadTree
-        quadTree = new QuadTree(this.localToScene(this.getBoundsInLocal()));
+        // Keep the bounds of the broad phase up to date
+        updateBroadPhaseBounds();
         this.widthProperty().addListener((observableValue, oldWidth, newWidth) -> {
-            quadTree.setBounds(this.localToScene(this.getBoundsInLocal()));
+            updateBroadPhaseBounds();
         });
         this.heightProperty().addListener((observableValue, oldHeight, newHeight) -> {
-            quadTree.setBounds(this.localToScene(this.getBoundsInLocal()));
+            updateBroadPhaseBounds();
         });
         
         // Initialise activeNodes
@@ -818,14 +1192,16 @@ public class TactilePane extends Control {
                 if (oldPane != null) {
                     oldPane.getActiveNodes().remove(node);
                 }
-                quadTree.insert(node);
                 setConstraint(node, TRACKER, TactilePane.this);
+                // Inserted in the broad phase by the next physics step
+                bodies.register(node, BodyStore.ACTIVE);
                 
                 startTrackingLocation(node);
             }
             else {
                 Node node = change.getElementRemoved();
-                quadTree.insert(node);
+                getBroadPhase().remove(node);
+                TactilePane.this.physics.removeContacts(node);
                 
                 for (Node colliding : TactilePane.getNodesColliding(node)) {
                     node.fireEvent(new TactilePaneEvent(TactilePaneEvent.AREA_LEFT, node, colliding));
@@ -840,6 +1216,7 @@ public class TactilePane extends Control {
                 TactilePane.getNodesInProximity(node).clear();
                 
                 setConstraint(node, TRACKER, null);
+                bodies.deregister(node, BodyStore.ACTIVE);
                 
                 stopTrackingLocation(node);
             }
@@ -847,7 +1224,53 @@ public class TactilePane extends Control {
         
         // Initialise Physics
         physics = new PhysicsTimer(this);
-        physics.start();
+        bodies.onWake = physics::wake;
+        queries = new SpatialQueries(this, bodies, physics);
+        // The bounds in the broad phase include the threshold, and pairs of
+        // bodies at rest need to be checked again
+        proximityThresholdProperty().addListener(observable -> bodies.invalidateBounds());
+        
+        // Only run the physics while this TactilePane is showing
+        ChangeListener<Boolean> showingListener = (observable, wasShowing, isShowing) -> updateShowing();
+        ChangeListener<Window> windowListener = (observable, oldWindow, newWindow) -> {
+            if (oldWindow != null) {
+                oldWindow.showingProperty().removeListener(showingListener);
+            }
+            if (newWindow != null) {
+                newWindow.showingProperty().addListener(showingListener);
+            }
+            updateShowing();
+        };
+        sceneProperty().addListener((observable, oldScene, newScene) -> {
+            if (oldScene != null) {
+                oldScene.windowProperty().removeListener(windowListener);
+                windowListener.changed(null, oldScene.getWindow(), null);
+            }
+            if (newScene != null) {
+                newScene.windowProperty().addListener(windowListener);
+                windowListener.changed(null, null, newScene.getWindow());
+            }
+        });
+        ChangeListener<Boolean> visibleListener = (observable, wasVisible, isVisible) -> updateShowing();
+        ChangeListener<Parent> ancestorListener = new ChangeListener<Parent>() {
+            @Override
+            public void changed(ObservableValue<? extends Parent> observable, Parent oldParent, Parent newParent) {
+                // Watch the ancestors this TactilePane has now
+                for (Parent ancestor : visibilityAncestors) {
+                    ancestor.visibleProperty().removeListener(visibleListener);
+                    ancestor.parentProperty().removeListener(this);
+                }
+                visibilityAncestors.clear();
+                for (Parent ancestor = getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+                    ancestor.visibleProperty().addListener(visibleListener);
+                    ancestor.parentProperty().addListener(this);
+                    visibilityAncestors.add(ancestor);
+                }
+                updateShowing();
+            }
+        };
+        visibleProperty().addListener(visibleListener);
+        parentProperty().addListener(ancestorListener);
     }
     
     /**
@@ -862,6 +1285,28 @@ public class TactilePane extends Control {
     
     // HELP METHODS FOR CONSTRUCTOR
     
+    // Tells the broad phase where the bounds of this TactilePane are in the scene
+    private void updateBroadPhaseBounds() {
+        Bounds bounds = localToScene(getBoundsInLocal());
+        getBroadPhase().setBounds(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY());
+    }
+    
+    // Tells the physics whether this TactilePane and its ancestors are visible in a showing Window
+    private void updateShowing() {
+        Scene scene = getScene();
+        Window window = scene == null ? null : scene.getWindow();
+        physics.setAttached(window != null && window.isShowing() && isTreeVisible());
+    }
+    
+    private boolean isTreeVisible() {
+        for (Node node = this; node != null; node = node.getParent()) {
+            if (!node.isVisible()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
     private void addDragEventHandlers(final Node node) {
         if (getDragContext(node) != null) {
             // The node already has drag event handlers
@@ -997,6 +1442,7 @@ public class TactilePane extends Control {
             
             node.setLayoutX(x); 
             node.setLayoutY(y);
+            physics.nodeMoved(node);
         }
     }
 
@@ -1008,8 +1454,10 @@ public class TactilePane extends Control {
         List<Node> ancestors = getAncestors(node);
         ancestorsByNode.put(node, ancestors);
         
+        // The bounds of an ancestor also change when one of its other children
+        // moves, so listen to its transform, which moves the Node along with it
         for (Node ancestor : ancestors) {
-            ancestor.boundsInParentProperty().addListener(getBoundsListener(node));
+            ancestor.localToParentTransformProperty().addListener(getBoundsListener(node));
             ancestor.parentProperty().addListener(getParentListener(node));
         }
         node.boundsInParentProperty().addListener(getBoundsListener(node));
@@ -1018,7 +1466,7 @@ public class TactilePane extends Control {
     
     private void stopTrackingLocation(Node node) {
         for (Node ancestor : ancestorsByNode.get(node)) {
-            ancestor.boundsInParentProperty().removeListener(getBoundsListener(node));
+            ancestor.localToParentTransformProperty().removeListener(getBoundsListener(node));
             ancestor.parentProperty().removeListener(getParentListener(node));
         }
         node.boundsInParentProperty().removeListener(getBoundsListener(node));
@@ -1029,6 +1477,320 @@ public class TactilePane extends Control {
         parentListenerByNode.remove(node);
     }
     
+    // PHYSICS
+    
+    /**
+     * Pauses the physics of this {@code TactilePane}. While paused, children
+     * don't move by their vectors, {@code Bonds} or {@code Anchors}, and no
+     * collision events are fired. Children can still be dragged.
+     * <p>
+     * Physics also stop by themselves while this {@code TactilePane} isn't
+     * showing, that is, while it or any of its ancestors isn't visible, or
+     * while it isn't part of a {@code Scene} with a showing {@code Window}.
+     */
+    public void pausePhysics() {
+        physics.setPaused(true);
+    }
+    
+    /**
+     * Resumes the physics of this {@code TactilePane} after they were paused
+     * with {@link #pausePhysics()}.
+     */
+    public void resumePhysics() {
+        physics.setPaused(false);
+    }
+    
+    /**
+     * Whether the physics of this {@code TactilePane} are paused with
+     * {@link #pausePhysics()}.
+     */
+    public boolean isPhysicsPaused() {
+        return physics.isPaused();
+    }
+    
+    /**
+     * Advances the physics of this {@code TactilePane} by the given number of
+     * steps right away, regardless of whether they are paused or showing.
+     * Useful for stepping through the physics while debugging, or to let
+     * children settle before the {@code TactilePane} is shown.
+     * 
+     * @throws IllegalArgumentException if {@code steps} is negative
+     * @throws IllegalStateException if the physics are running on a worker thread
+     * (see {@link #physicsModeProperty() physicsMode}); pause them first
+     */
+    public void stepPhysics(int steps) {
+        if (steps < 0) {
+            throw new IllegalArgumentException("Steps may not be a negative number");
+        }
+        physics.step(steps);
+    }
+    
+    // SPATIAL QUERIES
+    
+    /**
+     * Returns the active Nodes of this {@code TactilePane} whose bounds
+     * contain the given point, in no particular order.
+     * <p>
+     * Like the other spatial queries, this uses the broad phase that is also
+     * used for collision detection, so it only looks at the active Nodes near
+     * the point instead of at all children. Points, bounds and distances are
+     * in the coordinate space of the {@code Scene}, the same as those of
+     * {@code MouseEvent.getSceneX()} and of the
+     * {@link #proximityThresholdProperty() proximityThreshold}.
+     * 
+     * @param point     a point in scene coordinates
+     * @return a new list of the active Nodes at the point
+     * @throws NullPointerException if {@code point} is null
+     */
+    public List<Node> nodesAt(Point2D point) {
+        if (point == null) {
+            throw new NullPointerException("Point may not be null");
+        }
+        
+        return queries.within(point.getX(), point.getY(), point.getX(), point.getY(), null, 0);
+    }
+    
+    /**
+     * Returns the active Nodes of this {@code TactilePane} whose bounds
+     * intersect the given bounds, in no particular order.
+     * 
+     * @param bounds    bounds in scene coordinates
+     * @return a new list of the active Nodes that intersect the bounds
+     * @throws NullPointerException if {@code bounds} is null
+     */
+    public List<Node> nodesIntersecting(Bounds bounds) {
+        if (bounds == null) {
+            throw new NullPointerException("Bounds may not be null");
+        }
+        
+        return queries.within(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY(), null, 0);
+    }
+    
+    /**
+     * Returns the active Nodes of this {@code TactilePane} whose bounds are
+     * within the given distance of a point, in no particular order.
+     * 
+     * @param point     a point in scene coordinates
+     * @param radius    the maximum distance between the point and the bounds
+     * of a Node
+     * @return a new list of the active Nodes within the radius of the point
+     * @throws NullPointerException if {@code point} is null
+     * @throws IllegalArgumentException if {@code radius} is negative
+     */
+    public List<Node> nodesWithin(Point2D point, double radius) {
+        if (point == null) {
+            throw new NullPointerException("Point may not be null");
+        }
+        if (!(radius >= 0)) {
+            throw new IllegalArgumentException("Radius may not be a negative number");
+        }
+        
+        return queries.within(point.getX(), point.getY(), point.getX(), point.getY(), null, radius);
+    }
+    
+    /**
+     * Returns the active Nodes of this {@code TactilePane}, other than the
+     * given {@code node}, whose bounds are within the given distance of the
+     * bounds of {@code node}, in no particular order. The given {@code node}
+     * does not need to be active.
+     * 
+     * @param node      the Node to measure the distance from
+     * @param radius    the maximum distance between the bounds of the Nodes
+     * @return a new list of the active Nodes within the radius of {@code node}
+     * @throws NullPointerException if {@code node} is null
+     * @throws IllegalArgumentException if {@code radius} is negative
+     */
+    public List<Node> nodesWithin(Node node, double radius) {
+        if (node == null) {
+            throw new NullPointerException("Node may not be null");
+        }
+        if (!(radius >= 0)) {
+            throw new IllegalArgumentException("Radius may not be a negative number");
+        }
+        
+        Bounds bounds = sceneBoundsOf(node);
+        return queries.within(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY(), node, radius);
+    }
+    
+    /**
+     * Returns the {@code k} active Nodes of this {@code TactilePane} whose
+     * bounds are nearest to the given point, ordered from near to far. Nodes
+     * further away than {@code maxDistance} are left out, so fewer than
+     * {@code k} Nodes may be returned. Nodes at the same distance are ordered
+     * consistently, but not in any particular way.
+     * <p>
+     * The search starts near the point and widens until enough Nodes are
+     * found, so a small {@code maxDistance} (or {@code k}) makes it faster.
+     * 
+     * @param point         a point in scene coordinates
+     * @param k             the maximum number of Nodes to return
+     * @param maxDistance   the maximum distance between the point and the
+     * bounds of a Node, may be {@code Double.POSITIVE_INFINITY}
+     * @return a new list of at most {@code k} active Nodes, nearest first
+     * @throws NullPointerException if {@code point} is null
+     * @throws IllegalArgumentException if {@code k} or {@code maxDistance} is
+     * negative
+     */
+    public List<Node> nearest(Point2D point, int k, double maxDistance) {
+        if (point == null) {
+            throw new NullPointerException("Point may not be null");
+        }
+        if (k < 0) {
+            throw new IllegalArgumentException("k may not be a negative number");
+        }
+        if (!(maxDistance >= 0)) {
+            throw new IllegalArgumentException("Maximum distance may not be a negative number");
+        }
+        
+        return queries.nearest(point.getX(), point.getY(), point.getX(), point.getY(), null, k, maxDistance);
+    }
+    
+    /**
+     * Returns the {@code k} active Nodes of this {@code TactilePane}, other
+     * than the given {@code node}, whose bounds are nearest to the bounds of
+     * {@code node}, ordered from near to far. See
+     * {@link #nearest(Point2D, int, double)}.
+     * 
+     * @param node          the Node to measure the distance from
+     * @param k             the maximum number of Nodes to return
+     * @param maxDistance   the maximum distance between the bounds of the
+     * Nodes, may be {@code Double.POSITIVE_INFINITY}
+     * @return a new list of at most {@code k} active Nodes, nearest first
+     * @throws NullPointerException if {@code node} is null
+     * @throws IllegalArgumentException if {@code k} or {@code maxDistance} is
+     * negative
+     */
+    public List<Node> nearest(Node node, int k, double maxDistance) {
+        if (node == null) {
+            throw new NullPointerException("Node may not be null");
+        }
+        if (k < 0) {
+            throw new IllegalArgumentException("k may not be a negative number");
+        }
+        if (!(maxDistance >= 0)) {
+            throw new IllegalArgumentException("Maximum distance may not be a negative number");
+        }
+        
+        Bounds bounds = sceneBoundsOf(node);
+        return queries.nearest(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY(), node, k, maxDistance);
+    }
+    
+    /**
+     * Casts a ray from {@code origin} along {@code vector}, and returns the
+     * first active Node of this {@code TactilePane} whose bounds it hits
+     * before it reaches {@code origin + vector}. Nodes whose bounds contain
+     * the origin are ignored.
+     * 
+     * @param origin    the start of the ray, in scene coordinates
+     * @param vector    the direction and length of the ray
+     * @return the first Node that is hit, or null if there is none
+     * @throws NullPointerException if {@code origin} or {@code vector} is null
+     */
+    public SweepHit raycast(Point2D origin, Point2D vector) {
+        if (origin == null) {
+            throw new NullPointerException("Origin may not be null");
+        }
+        if (vector == null) {
+            throw new NullPointerException("Vector may not be null");
+        }
+        
+        return queries.sweep(origin.getX(), origin.getY(), origin.getX(), origin.getY(), vector.getX(), vector.getY(), null);
+    }
+    
+    /**
+     * Moves {@code bounds} along {@code vector}, and returns the first active
+     * Node of this {@code TactilePane} whose bounds they hit. Nodes whose
+     * bounds already intersect {@code bounds} are ignored.
+     * 
+     * @param bounds    the bounds to move, in scene coordinates
+     * @param vector    the displacement of the bounds
+     * @return the first Node that is hit, or null if there is none
+     * @throws NullPointerException if {@code bounds} or {@code vector} is null
+     */
+    public SweepHit sweep(Bounds bounds, Point2D vector) {
+        if (bounds == null) {
+            throw new NullPointerException("Bounds may not be null");
+        }
+        if (vector == null) {
+            throw new NullPointerException("Vector may not be null");
+        }
+        
+        return queries.sweep(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY(),
+                vector.getX(), vector.getY(), null);
+    }
+    
+    /**
+     * Moves the bounds of {@code node} along {@code vector}, and returns the
+     * first other active Node of this {@code TactilePane} whose bounds they
+     * hit. Nodes whose bounds already intersect those of {@code node} are
+     * ignored.
+     * 
+     * @param node      the Node to move, which does not need to be active
+     * @param vector    the displacement of the Node, in scene coordinates
+     * @return the first Node that is hit, or null if there is none
+     * @throws NullPointerException if {@code node} or {@code vector} is null
+     */
+    public SweepHit sweep(Node node, Point2D vector) {
+        if (node == null) {
+            throw new NullPointerException("Node may not be null");
+        }
+        if (vector == null) {
+            throw new NullPointerException("Vector may not be null");
+        }
+        
+        Bounds bounds = sceneBoundsOf(node);
+        return queries.sweep(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY(),
+                vector.getX(), vector.getY(), node);
+    }
+    
+    /**
+     * Predicts which other active Node {@code node} will hit first while it
+     * slides by its {@link #vectorProperty(Node) vector} during the given
+     * number of seconds. Takes the {@link #frictionMultiplierProperty()
+     * frictionMultiplier} and {@link #vectorThresholdProperty() vectorThreshold}
+     * of this {@code TactilePane} into account, but not Bonds, Anchors,
+     * borders or collisions, and assumes the other Nodes stand still. The
+     * time of impact of the result is a fraction of the distance slid in
+     * that time. For a flicked Node that isn't held, pass a long enough time
+     * for friction to bring it to rest.
+     * 
+     * @param node      the Node to predict the path of
+     * @param seconds   how far ahead to look
+     * @return the first Node that is hit, or null if there is none
+     * @throws NullPointerException if {@code node} is null
+     * @throws IllegalArgumentException if {@code seconds} is negative or infinite
+     */
+    public SweepHit sweep(Node node, double seconds) {
+        if (node == null) {
+            throw new NullPointerException("Node may not be null");
+        }
+        if (!(seconds >= 0) || Double.isInfinite(seconds)) {
+            throw new IllegalArgumentException("Seconds must be a finite, non-negative number");
+        }
+        
+        Point2D vector = getVector(node);
+        double speed = vector.magnitude();
+        if (speed == 0) return null;
+        
+        StepParameters parameters = new StepParameters();
+        parameters.update(this);
+        double distance = parameters.slideDistance(speed, seconds);
+        // Vectors are in the coordinate space of this TactilePane, sweeps in scene coordinates
+        Point2D displacement = getLocalToSceneTransform().deltaTransform(vector.multiply(distance / speed));
+        return sweep(node, displacement);
+    }
+    
+    // The bounds of a Node in scene coordinates, cached if it is tracked by this TactilePane
+    private Bounds sceneBoundsOf(Node node) {
+        int id = bodies.idOf(node);
+        if (id < 0) {
+            return node.localToScene(node.getBoundsInLocal());
+        }
+        bodies.updateBounds(id);
+        return new BoundingBox(bodies.minX[id], bodies.minY[id],
+                bodies.maxX[id] - bodies.minX[id], bodies.maxY[id] - bodies.minY[id]);
+    }
+    
     // INSTANCE PROPERTIES
     
    /**
@@ -1125,6 +1887,8 @@ public class TactilePane extends Control {
         return bordersCollide;
     }
     
+    private DoubleProperty proximityThreshold;
+    
     public final void setProximityThreshold(double threshold) {
         proximityThresholdProperty().set(threshold);
     }
@@ -1135,20 +1899,75 @@ public class TactilePane extends Control {
 
     /**
      * Specifies how close two {@code Nodes} have to be to each other to be
-     * considered in each others proximity. When set to 0, TactilePane won't fire
-     * {@code PROXIMITY_ENTERED} or {@code IN_PROXIMITY} events at all.
+     * considered in each others proximity, unless they have a
+     * {@link #proximityRadiusProperty(Node) proximityRadius} of their own. The
+     * distance between two {@code Nodes} is the length of the shortest line
+     * between their bounds, or between their collision shapes if
+     * {@code shapeCollisionDetection} is enabled. When set to 0, TactilePane
+     * won't fire {@code PROXIMITY_ENTERED} or {@code IN_PROXIMITY} events for
+     * {@code Nodes} without a radius of their own.
      * {@code PROXIMITY_LEFT} events will still be fired for any pair of
      * {@code Nodes} that entered each other's proximity before the threshold
      * was set to 0. When set to a negative value, an IllegalArgumentException
      * is thrown.
      */
     public final DoubleProperty proximityThresholdProperty() {
-        return quadTree.proximityThresholdProperty();
+        if (proximityThreshold == null) {
+            proximityThreshold = new SimpleDoubleProperty(25.0) {
+                @Override
+                public void set(double value) {
+                    if (value < 0) {
+                        throw new IllegalArgumentException("Proximity threshold should be a positive value");
+                    }
+                    super.set(value);
+                }
+            };
+        }
+        return proximityThreshold;
+    }
+    
+    /**
+     * The spatial index this {@code TactilePane} uses to find the active
+     * {@code Nodes} that may collide or be in each other's proximity. Defaults
+     * to a {@link QuadTree}; a {@link SpatialHashGrid} is usually faster for
+     * many {@code Nodes} of about the same size. When it is replaced, the
+     * previous index is cleared and all active {@code Nodes} are inserted in
+     * the new one. May not be null.
+     */
+    private ObjectProperty<BroadPhase> broadPhase;
+    
+    public final BroadPhase getBroadPhase() {
+        return broadPhaseProperty().get();
+    }
+    
+    public final void setBroadPhase(BroadPhase broadPhase) {
+        broadPhaseProperty().set(broadPhase);
+    }
+    
+    public final ObjectProperty<BroadPhase> broadPhaseProperty() {
+        if (broadPhase == null) {
+            broadPhase = new SimpleObjectProperty<BroadPhase>(new QuadTree()) {
+                @Override
+                public void set(BroadPhase value) {
+                    if (value == null) {
+                        throw new NullPointerException("BroadPhase may not be null");
+                    }
+                    BroadPhase oldValue = get();
+                    if (value == oldValue) return;
+                    
+                    oldValue.clear();
+                    super.set(value);
+                    updateBroadPhaseBounds();
+                    bodies.invalidateIndex();
+                }
+            };
+        }
+        return broadPhase;
     }
     
     /**
-     * A scalar by which a vector is multiplied during every physics calculation.
-     * Must between 0 and 1. Influences how fast a node stops moving after it has
+     * A scalar by which a vector is multiplied during every physics calculation
+     * at a step rate of 60 steps per second. Must between 0 and 1. Influences how fast a node stops moving after it has
      * been given a vector.
      */
     private DoubleProperty frictionMultiplier;
@@ -1264,6 +2083,322 @@ public class TactilePane extends Control {
         return vectorThreshold;
     }
     
+    /**
+     * On which thread the physics of this {@code TactilePane} are simulated.
+     * By default the physics are stepped on the JavaFX Application Thread during
+     * every pulse. When set to {@link PhysicsMode#WORKER WORKER}, positions and
+     * vectors are integrated on a dedicated thread instead, and the results are
+     * applied to the children once per pulse.
+     */
+    private ObjectProperty<PhysicsMode> physicsMode;
+    
+    public final PhysicsMode getPhysicsMode() {
+        return physicsModeProperty().get();
+    }
+    
+    public final void setPhysicsMode(PhysicsMode physicsMode) {
+        physicsModeProperty().set(physicsMode);
+    }
+    
+    public final ObjectProperty<PhysicsMode> physicsModeProperty() {
+        if (physicsMode == null) {
+            physicsMode = new SimpleObjectProperty<PhysicsMode>(PhysicsMode.PULSE) {
+                @Override
+                public void set(PhysicsMode value) {
+                    if (value == null) {
+                        throw new NullPointerException("PhysicsMode may not be null");
+                    }
+                    super.set(value);
+                }
+                
+                @Override
+                public void invalidated() {
+                    physics.setMode(get());
+                }
+            };
+        }
+        return physicsMode;
+    }
+    
+    /**
+     * The number of physics steps per second. Higher rates give more accurate
+     * physics at the cost of CPU time. Friction, sliding and {@code Bonds}
+     * are scaled to the step rate, so the multipliers of this
+     * {@code TactilePane} behave the same at every rate; their values are
+     * tuned for the default rate of 60 steps per second. Must be a positive
+     * number.
+     */
+    private DoubleProperty stepRate;
+    
+    public final double getStepRate() {
+        return stepRateProperty().get();
+    }
+    
+    public final void setStepRate(double stepRate) {
+        stepRateProperty().set(stepRate);
+    }
+    
+    public final DoubleProperty stepRateProperty() {
+        if (stepRate == null) {
+            stepRate = new SimpleDoubleProperty(60) {
+                @Override
+                public void set(double value) {
+                    if (!(value > 0) || Double.isInfinite(value)) {
+                        throw new IllegalArgumentException("StepRate must be a positive number");
+                    }
+                    super.set(value);
+                }
+            };
+        }
+        return stepRate;
+    }
+    
+    /**
+     * How the physics of this {@code TactilePane} advance the position of a
+     * moving {@code Node} from its vector. Defaults to
+     * {@link Integrator#EXPLICIT_EULER EXPLICIT_EULER}.
+     */
+    private ObjectProperty<Integrator> integrator;
+    
+    public final Integrator getIntegrator() {
+        return integratorProperty().get();
+    }
+    
+    public final void setIntegrator(Integrator integrator) {
+        integratorProperty().set(integrator);
+    }
+    
+    public final ObjectProperty<Integrator> integratorProperty() {
+        if (integrator == null) {
+            integrator = new SimpleObjectProperty<Integrator>(Integrator.EXPLICIT_EULER) {
+                @Override
+                public void set(Integrator value) {
+                    if (value == null) {
+                        throw new NullPointerException("Integrator may not be null");
+                    }
+                    super.set(value);
+                }
+            };
+        }
+        return integrator;
+    }
+    
+    /**
+     * How the physics of this {@code TactilePane} solve {@code Bonds}. Defaults
+     * to {@link BondSolver#FORCE FORCE}. Applies to both values of
+     * {@code physicsMode}: the worker thread solves {@code Bonds} the same way
+     * as the physics that run on the pulse.
+     */
+    private ObjectProperty<BondSolver> bondSolver;
+    
+    public final BondSolver getBondSolver() {
+        return bondSolverProperty().get();
+    }
+    
+    public final void setBondSolver(BondSolver bondSolver) {
+        bondSolverProperty().set(bondSolver);
+    }
+    
+    public final ObjectProperty<BondSolver> bondSolverProperty() {
+        if (bondSolver == null) {
+            bondSolver = new SimpleObjectProperty<BondSolver>(BondSolver.FORCE) {
+                @Override
+                public void set(BondSolver value) {
+                    if (value == null) {
+                        throw new NullPointerException("BondSolver may not be null");
+                    }
+                    super.set(value);
+                }
+            };
+        }
+        return bondSolver;
+    }
+    
+    /**
+     * How many times per step the {@link BondSolver#POSITION POSITION} solver
+     * goes over all {@code Bonds}. More iterations make large clusters of
+     * bonded {@code Nodes} stiffer, at the cost of CPU time. Must be at least 1.
+     */
+    private IntegerProperty bondIterations;
+    
+    public final int getBondIterations() {
+        return bondIterationsProperty().get();
+    }
+    
+    public final void setBondIterations(int bondIterations) {
+        bondIterationsProperty().set(bondIterations);
+    }
+    
+    public final IntegerProperty bondIterationsProperty() {
+        if (bondIterations == null) {
+            bondIterations = new SimpleIntegerProperty(4) {
+                @Override
+                public void set(int value) {
+                    if (value < 1) {
+                        throw new IllegalArgumentException("BondIterations must be at least 1");
+                    }
+                    super.set(value);
+                }
+            };
+        }
+        return bondIterations;
+    }
+    
+    /**
+     * The maximum number of physics steps that are made during a single pulse.
+     * When a pulse comes late, for instance because of a garbage collection or
+     * a slow frame, the physics catch up by making several steps at once. If
+     * more steps are due than this maximum, the physics skip the remaining
+     * time instead, so that one slow frame doesn't make the following frames
+     * slow as well. Must be at least 1.
+     */
+    private IntegerProperty maxSubsteps;
+    
+    public final int getMaxSubsteps() {
+        return maxSubstepsProperty().get();
+    }
+    
+    public final void setMaxSubsteps(int maxSubsteps) {
+        maxSubstepsProperty().set(maxSubsteps);
+    }
+    
+    public final IntegerProperty maxSubstepsProperty() {
+        if (maxSubsteps == null) {
+            maxSubsteps = new SimpleIntegerProperty(5) {
+                @Override
+                public void set(int value) {
+                    if (value < 1) {
+                        throw new IllegalArgumentException("MaxSubsteps must be at least 1");
+                    }
+                    super.set(value);
+                }
+            };
+        }
+        return maxSubsteps;
+    }
+    
+    /**
+     * Whether the children are rendered at a position interpolated between
+     * the last two physics steps. Physics are stepped at a fixed rate, so
+     * without interpolation moving children may appear to stutter when the
+     * display refreshes at a different rate. With interpolation children are
+     * drawn up to one step behind the physics, but move smoothly. Only applies
+     * when the {@code physicsMode} is {@link PhysicsMode#PULSE PULSE}.
+     */
+    private BooleanProperty interpolatePositions;
+    
+    public final boolean isInterpolatePositions() {
+        return interpolatePositionsProperty().get();
+    }
+    
+    public final void setInterpolatePositions(boolean interpolatePositions) {
+        interpolatePositionsProperty().set(interpolatePositions);
+    }
+    
+    public final BooleanProperty interpolatePositionsProperty() {
+        if (interpolatePositions == null) {
+            interpolatePositions = new SimpleBooleanProperty(false);
+        }
+        return interpolatePositions;
+    }
+    
+    /**
+     * Whether collision detection may use multiple threads. Finding the
+     * candidate pairs and firing the events always happens on the JavaFX
+     * Application Thread, but when there are many candidate pairs they are
+     * tested in batches on the common {@code ForkJoinPool}. The outcome,
+     * including the order of the events, is the same either way.
+     * <p>
+     * Experimental, and therefore off by default. It has not been shown to
+     * speed up the physics: testing a pair is cheap, so only steps with many
+     * thousands of candidate pairs, from thousands of active {@code Nodes}
+     * close to each other, could make up for handing the work to other threads.
+     * Steps with fewer than 4096 candidate pairs, at least four batches of 1024,
+     * are always tested on the JavaFX Application Thread, as are all steps when
+     * the common {@code ForkJoinPool} has a single thread. Measure before
+     * turning it on.
+     */
+    private BooleanProperty parallelCollisionDetection;
+    
+    public final boolean isParallelCollisionDetection() {
+        return parallelCollisionDetectionProperty().get();
+    }
+    
+    public final void setParallelCollisionDetection(boolean parallelCollisionDetection) {
+        parallelCollisionDetectionProperty().set(parallelCollisionDetection);
+    }
+    
+    public final BooleanProperty parallelCollisionDetectionProperty() {
+        if (parallelCollisionDetection == null) {
+            parallelCollisionDetection = new SimpleBooleanProperty(false);
+        }
+        return parallelCollisionDetection;
+    }
+    
+    /**
+     * Whether collisions between active {@code Nodes} are detected using their
+     * collision shapes instead of their bounds. Two {@code Nodes} whose bounds
+     * intersect then only collide when their shapes intersect as well, and
+     * they are only in each other's proximity when their shapes are within
+     * the {@code proximityThreshold} of each other. {@code Nodes} without a
+     * collision shape use their bounds.
+     * 
+     * @see #collisionShapeProperty(Node)
+     */
+    private BooleanProperty shapeCollisionDetection;
+    
+    public final boolean isShapeCollisionDetection() {
+        return shapeCollisionDetectionProperty().get();
+    }
+    
+    public final void setShapeCollisionDetection(boolean shapeCollisionDetection) {
+        shapeCollisionDetectionProperty().set(shapeCollisionDetection);
+    }
+    
+    public final BooleanProperty shapeCollisionDetectionProperty() {
+        if (shapeCollisionDetection == null) {
+            shapeCollisionDetection = new SimpleBooleanProperty(false) {
+                @Override
+                public void invalidated() {
+                    bodies.invalidateBounds();
+                }
+            };
+        }
+        return shapeCollisionDetection;
+    }
+    
+    /**
+     * Whether active children that collide with each other are pushed apart,
+     * instead of passing through each other. Colliding {@code Nodes} exchange
+     * vectors according to their {@link #massProperty(Node) mass},
+     * {@link #restitutionProperty(Node) restitution} and
+     * {@link #frictionProperty(Node) friction}, and any overlap that is left
+     * is corrected. {@code Nodes} that are in use, anchored or not a child of
+     * this {@code TactilePane} are never moved, but do push other
+     * {@code Nodes}. Collision events are still fired.
+     */
+    private BooleanProperty collisionResponse;
+    
+    public final boolean isCollisionResponse() {
+        return collisionResponseProperty().get();
+    }
+    
+    public final void setCollisionResponse(boolean collisionResponse) {
+        collisionResponseProperty().set(collisionResponse);
+    }
+    
+    public final BooleanProperty collisionResponseProperty() {
+        if (collisionResponse == null) {
+            collisionResponse = new SimpleBooleanProperty(false) {
+                @Override
+                public void invalidated() {
+                    bodies.wakeAll();
+                }
+            };
+        }
+        return collisionResponse;
+    }
+    
     // HELPER METHODS
     
     // Returns all ancestors of a given node
@@ -1279,14 +2414,17 @@ public class TactilePane extends Control {
         return ancestors;
     }
     
-    // Returns the bounds listener for the given node, or creates on if it doesn't exist
-    private ChangeListener<Bounds> getBoundsListener(Node node) {
-        ChangeListener<Bounds> result = boundsListenerByNode.get(node);
+    // Returns the bounds listener for the given node, or creates on if it doesn't exist.
+    // It listens to the bounds of the node, and to the transforms of its ancestors
+    private ChangeListener<Object> getBoundsListener(Node node) {
+        ChangeListener<Object> result = boundsListenerByNode.get(node);
         if (result == null) {
-            result = new ChangeListener<Bounds>() {
+            result = new ChangeListener<Object>() {
                 @Override
-                public void changed(ObservableValue<? extends Bounds> observable, Bounds oldValue, Bounds newValue) {
-                    setDirty(node, true);
+                public void changed(ObservableValue<?> observable, Object oldValue, Object newValue) {
+                    // Bounds relative to this TactilePane only change when it isn't this TactilePane or one of its ancestors that moved
+                    Object bean = ((ReadOnlyProperty<?>) observable).getBean();
+                    bodies.setDirty(node, true, !isSelfOrAncestor(bean));
                 }
             };
             boundsListenerByNode.put(node, result);
@@ -1294,6 +2432,14 @@ public class TactilePane extends Control {
         return result;
     }
     
+    // Whether the given object is this TactilePane or one of its ancestors
+    private boolean isSelfOrAncestor(Object object) {
+        for (Node node = this; node != null; node = node.getParent()) {
+            if (node == object) return true;
+        }
+        return false;
+    }
+    
     // Returns the parent listener for the given node, or creates on if it doesn't exist
     private ChangeListener<Parent> getParentListener(Node node) {
         ChangeListener<Parent> result = parentListenerByNode.get(node);
@@ -1425,6 +2571,74 @@ public class TactilePane extends Control {
         FILTER
     }
     
+    /**
+     * Defines on which thread the physics of a TactilePane are simulated.
+     */
+    public enum PhysicsMode {
+        /**
+         * Represents stepping the physics on the JavaFX Application Thread,
+         * during every pulse.
+         */
+        PULSE,
+        
+        /**
+         * Represents integrating positions and vectors on a dedicated worker
+         * thread, against a private copy of the state of the children. The
+         * results are applied to the children in one batch at the start of
+         * every pulse. Anchors and collision detection are still handled on
+         * the JavaFX Application Thread.
+         */
+        WORKER
+    }
+    
+    /**
+     * Defines how the physics of a TactilePane advance the position of a
+     * moving {@code Node} from its vector during a step.
+     */
+    public enum Integrator {
+        /**
+         * Represents moving a {@code Node} by its vector as it was at the start
+         * of the step, after friction. Forces of {@code Bonds} and sliding only
+         * affect the position from the next step onwards.
+         */
+        EXPLICIT_EULER,
+        
+        /**
+         * Represents moving a {@code Node} by its vector after all forces of
+         * the step have been applied. More stable than explicit Euler for
+         * {@code Bonds} with a high force multiplier.
+         */
+        SEMI_IMPLICIT_EULER,
+        
+        /**
+         * Represents moving a {@code Node} by the average of its vector at the
+         * start and at the end of the step (velocity Verlet). The most accurate
+         * of the three, at little extra cost.
+         */
+        VERLET
+    }
+    
+    /**
+     * Defines how the physics of a TactilePane solve {@code Bonds}.
+     */
+    public enum BondSolver {
+        /**
+         * Represents adding a force to the vector of a bonded {@code Node} that
+         * pulls it towards the distance of its {@code Bond}. Bonded
+         * {@code Nodes} swing around that distance until friction stops them.
+         */
+        FORCE,
+        
+        /**
+         * Represents moving bonded {@code Nodes} towards the distance of their
+         * {@code Bonds} directly after every step, iteratively, without changing
+         * their vectors. The force multiplier of a {@code Bond} is used as the
+         * fraction of the error that is corrected per iteration. Suitable for
+         * stiff {@code Bonds} and large clusters of bonded {@code Nodes}.
+         */
+        POSITION
+    }
+    
     // NESTED CLASSES
 
     /**
@@ -4,7 +4,6 @@ import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
-import javafx.animation.AnimationTimer;
 import javafx.animation.FadeTransition;
 import javafx.animation.ScaleTransition;
 import javafx.beans.Observable;
@@ -24,6 +23,7 @@ import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Line;
 import javafx.util.Duration;
+import nl.utwente.ewi.caes.tactilefx.control.PulseScheduler;
 import nl.utwente.ewi.caes.tactilefx.control.TactilePane;
 
 /**
@@ -44,6 +44,8 @@ public final class DebugParent extends StackPane {
     Map<Node, VectorDisplay> vectorDisplayByDraggable = new ConcurrentHashMap<>();
     Map<Node, ProximityDisplay> proximityDisplayByNode = new ConcurrentHashMap<>();
     Map<Node, BoundsDisplay> boundsDisplayByNode = new ConcurrentHashMap<>();
+    // Registered with the PulseScheduler while this DebugParent is part of a Scene
+    private final PulseScheduler.Task overlayTask = now -> updateOverlay();
 
     // CONSTRUCTOR
     
@@ -146,39 +148,45 @@ public final class DebugParent extends StackPane {
             ft.play();
         });
 
-        // Update overlay for every repaint
-        new AnimationTimer() {
-            @Override
-            public void handle(long arg0) {
-                for (Node node : vectorDisplayByDraggable.keySet()) {
-                    Bounds bounds = node.localToScene(node.getBoundsInLocal());
-                    VectorDisplay vector = vectorDisplayByDraggable.get(node);
-
-                    vector.relocate(bounds.getMinX(), bounds.getMinY());
-                }
-                for (Node node : proximityDisplayByNode.keySet()) {
-                    Bounds bounds = node.localToScene(node.getBoundsInLocal());
-                    ProximityDisplay proximityDisplay = proximityDisplayByNode.get(node);
-                    
-                    proximityDisplay.setBoundsWidth(bounds.getWidth());
-                    proximityDisplay.setBoundsHeight(bounds.getHeight());
-                    proximityDisplay.relocate(bounds.getMinX(), bounds.getMinY());
-                } 
-                for (Node node : boundsDisplayByNode.keySet()) {
-                    Bounds bounds = node.localToScene(node.getBoundsInLocal());
-                    BoundsDisplay boundsDisplay = boundsDisplayByNode.get(node);
-                    
-                    boundsDisplay.setBoundsWidth(bounds.getWidth());
-                    boundsDisplay.setBoundsHeight(bounds.getHeight());
-                    boundsDisplay.relocate(bounds.getMinX(), bounds.getMinY());
-                }
+        // Update overlay for every repaint while this DebugParent is part of a Scene
+        sceneProperty().addListener((observable, oldScene, newScene) -> {
+            if (newScene != null) {
+                PulseScheduler.getInstance().register(PulseScheduler.Phase.OVERLAY, overlayTask);
+            } else {
+                PulseScheduler.getInstance().unregister(PulseScheduler.Phase.OVERLAY, overlayTask);
             }
-        }.start();
+        });
         
         // Register TactilePane
         registerTactilePane(tactilePane);
     }
     
+    // Relocates the displays in the overlay to the Nodes they belong to
+    private void updateOverlay() {
+        for (Node node : vectorDisplayByDraggable.keySet()) {
+            Bounds bounds = node.localToScene(node.getBoundsInLocal());
+            VectorDisplay vector = vectorDisplayByDraggable.get(node);
+
+            vector.relocate(bounds.getMinX(), bounds.getMinY());
+        }
+        for (Node node : proximityDisplayByNode.keySet()) {
+            Bounds bounds = node.localToScene(node.getBoundsInLocal());
+            ProximityDisplay proximityDisplay = proximityDisplayByNode.get(node);
+                
+            proximityDisplay.setBoundsWidth(bounds.getWidth());
+            proximityDisplay.setBoundsHeight(bounds.getHeight());
+            proximityDisplay.relocate(bounds.getMinX(), bounds.getMinY());
+        } 
+        for (Node node : boundsDisplayByNode.keySet()) {
+            Bounds bounds = node.localToScene(node.getBoundsInLocal());
+            BoundsDisplay boundsDisplay = boundsDisplayByNode.get(node);
+                
+            boundsDisplay.setBoundsWidth(bounds.getWidth());
+            boundsDisplay.setBoundsHeight(bounds.getHeight());
+            boundsDisplay.relocate(bounds.getMinX(), bounds.getMinY());
+        }
+    }
+    
     /**
      * Whether the overlay is visible or not.
      */
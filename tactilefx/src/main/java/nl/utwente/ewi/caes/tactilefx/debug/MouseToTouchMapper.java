@@ -7,7 +7,6 @@ package nl.utwente.ewi.caes.tactilefx.debug;
 
 import java.util.Collections;
 import java.util.List;
-import javafx.animation.AnimationTimer;
 import javafx.event.Event;
 import javafx.event.EventHandler;
 import javafx.event.EventTarget;
@@ -18,6 +17,7 @@ import javafx.scene.input.PickResult;
 import javafx.scene.input.TouchEvent;
 import javafx.scene.input.TouchPoint;
 import javafx.scene.input.TouchPoint.State;
+import nl.utwente.ewi.caes.tactilefx.control.PulseScheduler;
 
 /**
  * <p>
@@ -63,23 +63,21 @@ public final class MouseToTouchMapper implements EventHandler<MouseEvent> {
     private long startTime = -1;
     private double startScreenX, startScreenY;
     
+    // Registered with the PulseScheduler while the mouse button is pressed
+    private final PulseScheduler.Task stationaryTask = now -> {
+        if (pressed) {
+            if (!moved) {
+                // Mouse button prssed but not moving is equivalent to touch stationary
+                fireTouchEvent(State.STATIONARY, TouchEvent.TOUCH_STATIONARY);
+                moved = false;
+            }
+        }
+    };
+    
     /**
      * Creates a new MouseToTouchMapper
      */
     public MouseToTouchMapper() {
-        AnimationTimer timer = new AnimationTimer() {
-            @Override
-            public void handle(long now) {
-                if (pressed) {
-                    if (!moved) {
-                        // Mouse button prssed but not moving is equivalent to touch stationary
-                        fireTouchEvent(State.STATIONARY, TouchEvent.TOUCH_STATIONARY);
-                        moved = false;
-                    }
-                }
-            }
-        };
-        timer.start();
     }
 
     @Override
@@ -104,6 +102,7 @@ public final class MouseToTouchMapper implements EventHandler<MouseEvent> {
             startScreenY = screenY;
             
             pressed = true;
+            PulseScheduler.getInstance().register(PulseScheduler.Phase.INPUT, stationaryTask);
             stillSincePress = true;
             startTime = System.currentTimeMillis();
             eventSetId = 1;
@@ -147,6 +146,7 @@ public final class MouseToTouchMapper implements EventHandler<MouseEvent> {
             fireMouseEvent(MouseEvent.MOUSE_CLICKED);
             
             pressed = false;
+            PulseScheduler.getInstance().unregister(PulseScheduler.Phase.INPUT, stationaryTask);
             dragging = false;
         }
         event.consume();
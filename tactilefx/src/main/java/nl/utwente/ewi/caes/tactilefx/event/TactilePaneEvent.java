@@ -57,6 +57,7 @@ public class TactilePaneEvent extends Event {
             ANY, "PROXIMITY_LEFT");
 
     private Node other;
+    private double distance = Double.NaN;
 
     public TactilePaneEvent(EventType<TactilePaneEvent> eventType, Node target, Node otherNode) {
         super(eventType);
@@ -64,6 +65,11 @@ public class TactilePaneEvent extends Event {
         this.other = otherNode;
     }
 
+    public TactilePaneEvent(EventType<TactilePaneEvent> eventType, Node target, Node otherNode, double distance) {
+        this(eventType, target, otherNode);
+        this.distance = distance;
+    }
+
     /**
      * Returns the target {@code Node} of this event
      */
@@ -78,4 +84,15 @@ public class TactilePaneEvent extends Event {
     public Node getOther() {
         return other;
     }
+
+    /**
+     * Returns the distance between the target and the other {@code Node} as of
+     * the physics step that fired this event, in scene coordinates. This is 0
+     * when they collide, and otherwise the length of the shortest line between
+     * their bounds, or their collision shapes if the {@code TactilePane} uses
+     * them. Returns {@code NaN} if the distance is not known.
+     */
+    public double getDistance() {
+        return distance;
+    }
 }
@@ -0,0 +1,192 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import javafx.scene.Node;
+import javafx.scene.shape.Rectangle;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks a {@link BroadPhase} against brute force: after random inserts,
+ * updates and removes, its pairs and query results must contain every pair
+ * and Node whose bounds intersect, each exactly once, and nothing that isn't
+ * in the index.
+ */
+public abstract class AbstractBroadPhaseTest {
+    private static final int NODES = 300;
+    private static final int ROUNDS = 60;
+
+    private final Random random = new Random(7);
+    private final List<Node> nodes = new ArrayList<>();
+    // Bounds of the Nodes that are in the index, as minX, minY, maxX and maxY
+    private final Map<Node, double[]> indexed = new IdentityHashMap<>();
+
+    protected abstract BroadPhase createBroadPhase();
+
+    /**
+     * Called after the changes of every round of {@link #randomChangesMatchBruteForce()},
+     * before the results are checked.
+     */
+    protected void afterChanges(BroadPhase broadPhase) {
+    }
+
+    @Test
+    public void randomChangesMatchBruteForce() {
+        BroadPhase broadPhase = createBroadPhase();
+        broadPhase.setBounds(0, 0, 1000, 1000);
+        for (int i = 0; i < NODES; i++) {
+            nodes.add(new Rectangle());
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            for (Node node : nodes) {
+                double[] bounds = indexed.get(node);
+                double action = random.nextDouble();
+                if (bounds == null) {
+                    if (action < 0.3) {
+                        insert(broadPhase, node, randomBounds());
+                    }
+                } else if (action < 0.05) {
+                    broadPhase.remove(node);
+                    indexed.remove(node);
+                } else if (action < 0.1) {
+                    // Jump somewhere else
+                    update(broadPhase, node, randomBounds());
+                } else if (action < 0.6) {
+                    // Move a little, as Nodes do between two steps
+                    double dx = random.nextGaussian() * 5, dy = random.nextGaussian() * 5;
+                    update(broadPhase, node, new double[] { bounds[0] + dx, bounds[1] + dy, bounds[2] + dx, bounds[3] + dy });
+                }
+            }
+            afterChanges(broadPhase);
+            checkPairs(broadPhase);
+            for (int i = 0; i < 20; i++) {
+                checkQuery(broadPhase, randomBounds());
+            }
+        }
+
+        // Removing Nodes that are not in the index has no effect
+        broadPhase.remove(new Rectangle());
+        checkPairs(broadPhase);
+
+        for (Node node : new ArrayList<>(indexed.keySet())) {
+            broadPhase.remove(node);
+            indexed.remove(node);
+        }
+        checkPairs(broadPhase);
+        checkQuery(broadPhase, new double[] { -10000, -10000, 10000, 10000 });
+    }
+
+    @Test
+    public void clearRemovesAllNodes() {
+        BroadPhase broadPhase = createBroadPhase();
+        for (int i = 0; i < 50; i++) {
+            Node node = new Rectangle();
+            nodes.add(node);
+            insert(broadPhase, node, randomBounds());
+        }
+        broadPhase.clear();
+        indexed.clear();
+        checkPairs(broadPhase);
+        checkQuery(broadPhase, new double[] { -10000, -10000, 10000, 10000 });
+
+        // The index can be used again after it has been cleared
+        for (Node node : nodes) {
+            insert(broadPhase, node, randomBounds());
+        }
+        checkPairs(broadPhase);
+    }
+
+    @Test
+    public void touchingBoundsIntersect() {
+        BroadPhase broadPhase = createBroadPhase();
+        Node left = new Rectangle(), right = new Rectangle();
+        nodes.add(left);
+        nodes.add(right);
+        insert(broadPhase, left, new double[] { 0, 0, 10, 10 });
+        insert(broadPhase, right, new double[] { 10, 0, 20, 10 });
+        checkPairs(broadPhase);
+        checkQuery(broadPhase, new double[] { 20, 10, 30, 30 });
+    }
+
+    // HELP METHODS
+
+    private void insert(BroadPhase broadPhase, Node node, double[] bounds) {
+        broadPhase.insert(node, bounds[0], bounds[1], bounds[2], bounds[3]);
+        indexed.put(node, bounds);
+    }
+
+    private void update(BroadPhase broadPhase, Node node, double[] bounds) {
+        broadPhase.update(node, bounds[0], bounds[1], bounds[2], bounds[3]);
+        indexed.put(node, bounds);
+    }
+
+    // Mostly small bounds inside the region, with a few large ones and a few outside of it
+    private double[] randomBounds() {
+        double size = random.nextDouble() < 0.05 ? 100 + random.nextDouble() * 400 : 5 + random.nextDouble() * 30;
+        double range = random.nextDouble() < 0.05 ? 3000 : 1000;
+        double minX = random.nextDouble() * range - (range - 1000) / 2;
+        double minY = random.nextDouble() * range - (range - 1000) / 2;
+        return new double[] { minX, minY, minX + size * (0.5 + random.nextDouble()), minY + size * (0.5 + random.nextDouble()) };
+    }
+
+    private static boolean intersects(double[] a, double[] b) {
+        return a[2] >= b[0] && a[3] >= b[1] && a[0] <= b[2] && a[1] <= b[3];
+    }
+
+    private void checkPairs(BroadPhase broadPhase) {
+        Set<String> reported = new HashSet<>();
+        broadPhase.queryPairs((a, b) -> {
+            assertTrue("reported a Node that is not in the index", indexed.containsKey(a) && indexed.containsKey(b));
+            assertFalse("reported a Node paired with itself", a == b);
+            assertTrue("reported a pair twice", reported.add(key(a, b)));
+        });
+
+        List<Node> inIndex = new ArrayList<>(indexed.keySet());
+        for (int i = 0; i < inIndex.size(); i++) {
+            for (int j = i + 1; j < inIndex.size(); j++) {
+                Node a = inIndex.get(i), b = inIndex.get(j);
+                if (intersects(indexed.get(a), indexed.get(b))) {
+                    assertTrue("missed an intersecting pair", reported.contains(key(a, b)));
+                }
+            }
+        }
+    }
+
+    private void checkQuery(BroadPhase broadPhase, double[] bounds) {
+        Set<Node> reported = java.util.Collections.newSetFromMap(new IdentityHashMap<>());
+        broadPhase.query(bounds[0], bounds[1], bounds[2], bounds[3], node -> {
+            assertTrue("reported a Node that is not in the index", indexed.containsKey(node));
+            assertTrue("reported a Node twice", reported.add(node));
+        });
+
+        int expected = 0;
+        for (Map.Entry<Node, double[]> entry : indexed.entrySet()) {
+            if (intersects(entry.getValue(), bounds)) {
+                expected++;
+                assertTrue("missed an intersecting Node", reported.contains(entry.getKey()));
+            }
+        }
+        assertTrue(reported.size() >= expected);
+        if (indexed.isEmpty()) {
+            assertEquals(0, reported.size());
+        }
+    }
+
+    // The same key for a pair in either order
+    private String key(Node a, Node b) {
+        int first = nodes.indexOf(a), second = nodes.indexOf(b);
+        return Math.min(first, second) + "," + Math.max(first, second);
+    }
+}
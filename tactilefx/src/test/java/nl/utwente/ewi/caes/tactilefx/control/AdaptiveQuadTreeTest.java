@@ -0,0 +1,20 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+public class AdaptiveQuadTreeTest extends AbstractBroadPhaseTest {
+
+    @Override
+    protected BroadPhase createBroadPhase() {
+        QuadTree quadTree = new QuadTree(2, 4);
+        quadTree.setAdaptive(true);
+        return quadTree;
+    }
+
+    // Query the pairs often enough for the tree to tune itself every round,
+    // so it is split and merged again between the checks
+    @Override
+    protected void afterChanges(BroadPhase broadPhase) {
+        for (int i = 0; i < QuadTree.TUNE_INTERVAL; i++) {
+            broadPhase.queryPairs((a, b) -> { });
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.sun.javafx.application.PlatformImpl;
+
+import javafx.scene.Node;
+import javafx.scene.shape.Rectangle;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the order in which AnchorGraph relocates anchored children.
+ */
+public class AnchorGraphTest {
+
+    @BeforeClass
+    public static void startToolkit() {
+        PlatformImpl.startup(() -> { });
+    }
+
+    @Test
+    public void longChainIsSortedAfterItsAnchors() {
+        TactilePane pane = new TactilePane();
+        List<Node> children = createChildren(pane, 100000);
+        // Each child is anchored to the one after it
+        for (int i = 0; i < children.size() - 1; i++) {
+            TactilePane.setAnchor(children.get(i), new Anchor(children.get(i + 1)));
+        }
+
+        int[] positions = positions(pane, children);
+        for (int i = 0; i < children.size() - 2; i++) {
+            assertTrue(positions[i] > positions[i + 1]);
+        }
+    }
+
+    @Test
+    public void cycleIsBrokenAtChildFurthestBack() {
+        TactilePane pane = new TactilePane();
+        List<Node> children = createChildren(pane, 4);
+        // 1 -> 3 -> 0 -> 2 -> 1, so 0 is furthest back and its anchor is ignored
+        TactilePane.setAnchor(children.get(1), new Anchor(children.get(3)));
+        TactilePane.setAnchor(children.get(3), new Anchor(children.get(0)));
+        TactilePane.setAnchor(children.get(0), new Anchor(children.get(2)));
+        TactilePane.setAnchor(children.get(2), new Anchor(children.get(1)));
+
+        int[] positions = positions(pane, children);
+        assertEquals(0, positions[0]);
+        assertEquals(1, positions[3]);
+        assertEquals(2, positions[1]);
+        assertEquals(3, positions[2]);
+
+        // Once another child of the cycle is furthest back, the cycle is broken there
+        children.get(2).toBack();
+        positions = positions(pane, children);
+        assertEquals(0, positions[2]);
+    }
+
+    @Test
+    public void invalidationIsDeferredWhileWalking() {
+        TactilePane pane = new TactilePane();
+        List<Node> children = createChildren(pane, 3);
+        TactilePane.setAnchor(children.get(0), new Anchor(children.get(1)));
+        TactilePane.setAnchor(children.get(1), new Anchor(children.get(2)));
+
+        BodyStore bodies = pane.bodies;
+        AnchorGraph graph = bodies.anchorGraph;
+        graph.beginWalk(pane, bodies);
+        int[] order = graph.order.clone();
+        int count = graph.count;
+        children.get(0).toFront();
+        graph.update(pane, bodies);
+        assertEquals(count, graph.count);
+        for (int i = 0; i < count; i++) {
+            assertEquals(order[i], graph.order[i]);
+        }
+        graph.endWalk();
+
+        // The new z-order is picked up once the walk has ended
+        graph.update(pane, bodies);
+        assertEquals(2, graph.getChildIndex(bodies.idOf(children.get(0))));
+    }
+
+    // HELP METHODS
+
+    private static List<Node> createChildren(TactilePane pane, int count) {
+        List<Node> children = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            children.add(new Rectangle(10, 10));
+        }
+        pane.getChildren().addAll(children);
+        return children;
+    }
+
+    // The position of every anchored child in the order of the graph, or -1
+    private static int[] positions(TactilePane pane, List<Node> children) {
+        BodyStore bodies = pane.bodies;
+        AnchorGraph graph = bodies.anchorGraph;
+        graph.update(pane, bodies);
+
+        int[] positionById = new int[bodies.size];
+        Arrays.fill(positionById, -1);
+        for (int i = 0; i < graph.count; i++) {
+            positionById[graph.order[i]] = i;
+        }
+        int[] positions = new int[children.size()];
+        for (int i = 0; i < children.size(); i++) {
+            positions[i] = positionById[bodies.idOf(children.get(i))];
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,65 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import com.sun.javafx.application.PlatformImpl;
+
+import javafx.scene.shape.Rectangle;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the bookkeeping of BodyStore when Nodes come and go.
+ */
+public class BodyStoreTest {
+
+    @BeforeClass
+    public static void startToolkit() {
+        PlatformImpl.startup(() -> { });
+    }
+
+    @Test
+    public void refreshQueueDoesNotGrowWhenIdsAreReused() throws Throwable {
+        onFxThread(() -> {
+            // The pane isn't showing, so the refresh queue is never drained
+            TactilePane pane = new TactilePane();
+            BodyStore bodies = pane.bodies;
+            for (int i = 0; i < 100; i++) {
+                Rectangle rectangle = new Rectangle(10, 10);
+                pane.getChildren().add(rectangle);
+                pane.getActiveNodes().add(rectangle);
+                pane.getActiveNodes().remove(rectangle);
+                pane.getChildren().remove(rectangle);
+            }
+            assertTrue(bodies.refreshCount <= bodies.refreshQueue.length);
+            assertEquals(1, bodies.refreshCount);
+
+            // Draining the queue leaves nothing behind
+            pane.stepPhysics(1);
+            assertEquals(0, bodies.refreshCount);
+        });
+    }
+
+    // HELP METHODS
+
+    private interface FxTask {
+        void run() throws Throwable;
+    }
+
+    // Runs a task on the JavaFX Application Thread, and rethrows whatever it throws
+    private static void onFxThread(FxTask task) throws Throwable {
+        Throwable[] thrown = new Throwable[1];
+        PlatformImpl.runAndWait(() -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                thrown[0] = t;
+            }
+        });
+        if (thrown[0] != null) {
+            throw thrown[0];
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how BorderReflection bounces bodies off the borders of a pane of 100
+ * by 100.
+ */
+public class BorderReflectionTest {
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void noReflectionInsidePane() {
+        BorderReflection reflection = new BorderReflection();
+        assertFalse(reflection.compute(10, 10, 20, 20, 30, 40, 0, 0, 100, 100));
+        // Ending up exactly against a wall is no collision yet
+        assertFalse(reflection.compute(10, 10, 20, 20, 80, 0, 0, 0, 100, 100));
+    }
+
+    @Test
+    public void reflectsOffSingleWall() {
+        BorderReflection reflection = new BorderReflection();
+        assertTrue(reflection.compute(80, 40, 90, 50, 100, 20, 0, 0, 100, 100));
+        assertEquals(10, reflection.wallDeltaX, DELTA);
+        assertEquals(2, reflection.wallDeltaY, DELTA);
+        assertEquals(-90, reflection.reflectedX, DELTA);
+        assertEquals(18, reflection.reflectedY, DELTA);
+    }
+
+    @Test
+    public void reflectsOffFirstWallOnly() {
+        // Hits the right wall after a quarter of the delta, the bottom wall
+        // only later on, so only the x part of the remainder is reflected
+        BorderReflection reflection = new BorderReflection();
+        assertTrue(reflection.compute(90, 50, 95, 55, 20, 60, 0, 0, 100, 100));
+        assertEquals(5, reflection.wallDeltaX, DELTA);
+        assertEquals(15, reflection.wallDeltaY, DELTA);
+        assertEquals(-15, reflection.reflectedX, DELTA);
+        assertEquals(45, reflection.reflectedY, DELTA);
+    }
+
+    @Test
+    public void reflectsOffBothWallsInCorner() {
+        BorderReflection reflection = new BorderReflection();
+        assertTrue(reflection.compute(85, 85, 95, 95, 10, 10, 0, 0, 100, 100));
+        assertEquals(5, reflection.wallDeltaX, DELTA);
+        assertEquals(5, reflection.wallDeltaY, DELTA);
+        assertEquals(-5, reflection.reflectedX, DELTA);
+        assertEquals(-5, reflection.reflectedY, DELTA);
+    }
+
+    @Test
+    public void bodyOutsidePane() {
+        BorderReflection reflection = new BorderReflection();
+        // Moving further out bounces right away
+        assertTrue(reflection.compute(-5, 10, 5, 20, -3, 0, 0, 0, 100, 100));
+        assertEquals(0, reflection.wallDeltaX, DELTA);
+        assertEquals(3, reflection.reflectedX, DELTA);
+        // Moving back in doesn't
+        assertFalse(reflection.compute(-5, 10, 5, 20, 3, 0, 0, 0, 100, 100));
+    }
+
+    @Test
+    public void ignoresWallsBodyDoesNotFitBetween() {
+        BorderReflection reflection = new BorderReflection();
+        assertFalse(reflection.compute(-10, 10, 110, 20, 5, 0, 0, 0, 100, 100));
+        assertTrue(reflection.compute(-10, 10, 110, 20, 5, 100, 0, 0, 100, 100));
+        assertEquals(-20, reflection.reflectedY, DELTA);
+    }
+
+    @Test
+    public void ignoresWallsBodyFitsExactlyBetween() {
+        // A body as wide as the pane would bounce without moving at all
+        BorderReflection reflection = new BorderReflection();
+        assertFalse(reflection.compute(0, 10, 100, 20, 5, 0, 0, 0, 100, 100));
+        assertFalse(reflection.compute(0, 10, 100, 20, -5, 0, 0, 0, 100, 100));
+        assertFalse(reflection.compute(10, 0, 20, 100, 0, 5, 0, 0, 100, 100));
+        assertTrue(reflection.compute(0, 10, 100, 20, 5, 100, 0, 0, 100, 100));
+        assertEquals(1, reflection.reflectedX, DELTA);
+        assertEquals(-20, reflection.reflectedY, DELTA);
+    }
+
+    @Test
+    public void boundedBouncesForTinyGap() {
+        // A body that barely fits bounces for as long as its delta lasts,
+        // unless the number of bounces is capped like the physics do
+        BorderReflection reflection = new BorderReflection();
+        double gap = 1e-6;
+        double x = 0, deltaX = 5;
+        int bounces = 0;
+        while (reflection.compute(x, 10, x + 100 - gap, 20, deltaX, 0, 0, 0, 100, 100)) {
+            x += reflection.wallDeltaX;
+            deltaX = reflection.reflectedX;
+            assertTrue(x >= -DELTA && x + 100 - gap <= 100 + DELTA);
+            if (++bounces == BorderReflection.MAX_BOUNCES) {
+                return;
+            }
+        }
+        throw new AssertionError("Expected the body to keep bouncing between the walls");
+    }
+
+    @Test
+    public void repeatedReflectionsStayInsidePane() {
+        // Apply the remainder of the delta like the physics do, until no wall is hit
+        BorderReflection reflection = new BorderReflection();
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            double x = random.nextDouble() * 90, y = random.nextDouble() * 90;
+            double deltaX = random.nextDouble() * 1000 - 500, deltaY = random.nextDouble() * 1000 - 500;
+            double length = Math.hypot(deltaX, deltaY);
+            double travelled = 0;
+            while (reflection.compute(x, y, x + 10, y + 10, deltaX, deltaY, 0, 0, 100, 100)) {
+                x += reflection.wallDeltaX;
+                y += reflection.wallDeltaY;
+                travelled += Math.hypot(reflection.wallDeltaX, reflection.wallDeltaY);
+                deltaX = reflection.reflectedX;
+                deltaY = reflection.reflectedY;
+            }
+            x += deltaX;
+            y += deltaY;
+            travelled += Math.hypot(deltaX, deltaY);
+
+            assertTrue(x >= -DELTA && x + 10 <= 100 + DELTA);
+            assertTrue(y >= -DELTA && y + 10 <= 100 + DELTA);
+            // Reflecting doesn't change the length of the path
+            assertEquals(length, travelled, 1e-6);
+        }
+    }
+}
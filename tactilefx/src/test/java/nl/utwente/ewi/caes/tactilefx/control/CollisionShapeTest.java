@@ -0,0 +1,138 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import javafx.scene.shape.Circle;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.text.Text;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the distances and contacts between collision shapes.
+ */
+public class CollisionShapeTest {
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void distanceBetweenCircles() {
+        CollisionShape a = CollisionShape.circle(0, 0, 5);
+        assertEquals(12, distance(a, CollisionShape.circle(20, 0, 3)), DELTA);
+        assertEquals(-2, distance(a, CollisionShape.circle(6, 0, 3)), DELTA);
+    }
+
+    @Test
+    public void distanceBetweenPolygons() {
+        CollisionShape a = square(0, 0, 10);
+        assertEquals(5, distance(a, square(15, 0, 10)), DELTA);
+        // Nearest at their corners
+        assertEquals(Math.sqrt(50), distance(a, square(15, 15, 10)), DELTA);
+        // Intersecting edges
+        assertEquals(0, distance(a, square(5, 5, 10)), DELTA);
+        // One inside the other, so no edges intersect
+        assertEquals(0, distance(a, square(2, 2, 4)), DELTA);
+        assertEquals(0, distance(square(2, 2, 4), a), DELTA);
+    }
+
+    @Test
+    public void distanceIncludesRadius() {
+        CollisionShape capsule = CollisionShape.capsule(0, 0, 10, 0, 2);
+        assertEquals(5, distance(capsule, CollisionShape.circle(5, 10, 3)), DELTA);
+        assertEquals(-3, distance(capsule, CollisionShape.circle(12, 0, 3)), DELTA);
+        assertEquals(1, distance(square(0, 0, 10), CollisionShape.circle(15, 5, 4)), DELTA);
+    }
+
+    @Test
+    public void distanceIsSymmetric() {
+        CollisionShape[] shapes = {
+                CollisionShape.circle(3, 4, 2),
+                CollisionShape.capsule(-5, 8, 7, 1, 1.5),
+                CollisionShape.polygon(0, 0, 9, 2, 4, 11),
+                square(6, -3, 5),
+        };
+        for (CollisionShape a : shapes) {
+            for (CollisionShape b : shapes) {
+                assertEquals(distance(a, b), distance(b, a), DELTA);
+            }
+        }
+    }
+
+    @Test
+    public void contactOfSeparatedShapes() {
+        double[] contact = contact(CollisionShape.circle(0, 0, 5), CollisionShape.circle(0, 20, 3));
+        assertEquals(0, contact[0], DELTA);
+        assertEquals(1, contact[1], DELTA);
+        assertEquals(-12, contact[2], DELTA);
+    }
+
+    @Test
+    public void contactOfOverlappingRoundedShapes() {
+        // The cores are 2 apart and the radius is 3
+        double[] contact = contact(square(0, 0, 10), CollisionShape.circle(12, 5, 3));
+        assertEquals(1, contact[0], DELTA);
+        assertEquals(0, contact[1], DELTA);
+        assertEquals(1, contact[2], DELTA);
+    }
+
+    @Test
+    public void contactOfIntersectingPolygons() {
+        // They overlap 2 along x and 8 along y, so they are pushed apart along x
+        double[] contact = contact(square(0, 0, 10), square(8, 2, 10));
+        assertEquals(1, Math.abs(contact[0]), DELTA);
+        assertEquals(0, contact[1], DELTA);
+        assertEquals(2, contact[2], DELTA);
+        assertTrue(contact[0] > 0);
+
+        // The normal points from the first shape to the second
+        contact = contact(square(8, 2, 10), square(0, 0, 10));
+        assertTrue(contact[0] < 0);
+        assertEquals(2, contact[2], DELTA);
+    }
+
+    @Test
+    public void contactDepthMatchesDistance() {
+        CollisionShape a = CollisionShape.capsule(0, 0, 10, 5, 2);
+        for (double x = -20; x <= 20; x += 2.5) {
+            CollisionShape b = CollisionShape.circle(x, 12, 4);
+            if (distance(a, b) > 0) {
+                assertEquals(-distance(a, b), contact(a, b)[2], DELTA);
+            } else {
+                assertTrue(contact(a, b)[2] >= 0);
+            }
+        }
+    }
+
+    @Test
+    public void shapeDerivedFromNode() {
+        Rectangle rectangle = new Rectangle(10, 20, 30, 40);
+        rectangle.setArcWidth(8);
+        rectangle.setArcHeight(6);
+        CollisionShape shape = CollisionShape.of(rectangle);
+        assertEquals(3, shape.getRadius(), DELTA);
+        // The sides still touch the bounds of the Rectangle, but its corners are rounded
+        assertEquals(0, distance(shape, CollisionShape.circle(0, 40, 10)), DELTA);
+        assertEquals(Math.sqrt(18) - 3, distance(shape, CollisionShape.circle(10, 20, 0)), DELTA);
+
+        Circle circle = new Circle(5, 6, 7);
+        assertEquals(7, CollisionShape.of(circle).getRadius(), DELTA);
+        assertNull(CollisionShape.of(new Text("text")));
+    }
+
+    // HELP METHODS
+
+    private static CollisionShape square(double x, double y, double size) {
+        return CollisionShape.polygon(x, y, x + size, y, x + size, y + size, x, y + size);
+    }
+
+    private static double distance(CollisionShape a, CollisionShape b) {
+        return CollisionShape.distance(a.points, a.points.length / 2, a.radius, b.points, b.points.length / 2, b.radius);
+    }
+
+    private static double[] contact(CollisionShape a, CollisionShape b) {
+        double[] result = new double[3];
+        CollisionShape.contact(a.points, a.points.length / 2, a.radius, b.points, b.points.length / 2, b.radius, result);
+        return result;
+    }
+}
@@ -0,0 +1,142 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import com.sun.javafx.application.PlatformImpl;
+
+import javafx.scene.shape.Rectangle;
+import javafx.scene.transform.Affine;
+import javafx.scene.transform.Scale;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that ContactSolver pushes overlapping bodies apart, and how they
+ * bounce off each other.
+ */
+public class ContactSolverTest {
+
+    @BeforeClass
+    public static void startToolkit() {
+        PlatformImpl.startup(() -> { });
+    }
+
+    @Test
+    public void overlappingBodiesArePushedApart() {
+        TactilePane pane = new TactilePane();
+        BodyStore bodies = pane.bodies;
+        int a = addBody(pane, 0, 0);
+        int b = addBody(pane, 6, 0);
+        LongHashSet pairs = new LongHashSet();
+        pairs.add(LongHashSet.pair(a, b));
+
+        ContactSolver solver = new ContactSolver();
+        solver.solve(bodies, pairs, false, new Affine(), 0);
+        assertEquals(1, solver.count);
+        assertTrue(solver.correctionX[a] < 0);
+        assertTrue(solver.correctionX[b] > 0);
+        assertEquals(0, solver.correctionY[a], 0);
+        assertEquals(0, solver.correctionY[b], 0);
+        // Of equal mass, so both are pushed equally far
+        assertEquals(-solver.correctionX[a], solver.correctionX[b], 1e-9);
+    }
+
+    @Test
+    public void sleepingBodyIsWokenWhenHit() {
+        TactilePane pane = new TactilePane();
+        BodyStore bodies = pane.bodies;
+        // Overlapping less than the slop, so neither is relocated
+        int a = addBody(pane, 0, 0);
+        int b = addBody(pane, 9.8, 0);
+        TactilePane.setRestitution(bodies.nodes[a], 1);
+        TactilePane.setRestitution(bodies.nodes[b], 1);
+        bodies.vx[a] = 100;
+        bodies.setFlag(b, BodyStore.SLEEPING, true);
+        LongHashSet pairs = new LongHashSet();
+        pairs.add(LongHashSet.pair(a, b));
+
+        ContactSolver solver = new ContactSolver();
+        solver.solve(bodies, pairs, false, new Affine(), 0);
+        assertEquals(0, solver.correctionX[b], 0);
+        // Of equal mass, so the moving body stops and the other one takes over its vector
+        assertEquals(0, bodies.vx[a], 1e-9);
+        assertEquals(100, bodies.vx[b], 1e-9);
+        assertFalse(bodies.hasFlag(b, BodyStore.SLEEPING));
+    }
+
+    @Test
+    public void heavierBodyIsPushedLess() {
+        TactilePane pane = new TactilePane();
+        BodyStore bodies = pane.bodies;
+        int a = addBody(pane, 0, 0);
+        int b = addBody(pane, 9.8, 0);
+        TactilePane.setRestitution(bodies.nodes[a], 1);
+        TactilePane.setMass(bodies.nodes[b], 3);
+        bodies.vx[a] = 100;
+        LongHashSet pairs = new LongHashSet();
+        pairs.add(LongHashSet.pair(a, b));
+
+        ContactSolver solver = new ContactSolver();
+        solver.solve(bodies, pairs, false, new Affine(), 0);
+        // An elastic collision keeps both momentum and speed
+        assertEquals(-50, bodies.vx[a], 1e-9);
+        assertEquals(50, bodies.vx[b], 1e-9);
+        assertEquals(0, bodies.vy[a], 1e-9);
+        assertEquals(0, bodies.vy[b], 1e-9);
+    }
+
+    @Test
+    public void noBounceWithoutRestitution() {
+        TactilePane pane = new TactilePane();
+        BodyStore bodies = pane.bodies;
+        int a = addBody(pane, 0, 0);
+        int b = addBody(pane, 9.8, 0);
+        bodies.vx[a] = 100;
+        LongHashSet pairs = new LongHashSet();
+        pairs.add(LongHashSet.pair(a, b));
+
+        ContactSolver solver = new ContactSolver();
+        solver.solve(bodies, pairs, false, new Affine(), 0);
+        // The bodies stop approaching each other and move on together
+        assertEquals(50, bodies.vx[a], 1e-9);
+        assertEquals(50, bodies.vx[b], 1e-9);
+    }
+
+    @Test
+    public void noContactsWhenTransformCantBeInverted() {
+        TactilePane pane = new TactilePane();
+        BodyStore bodies = pane.bodies;
+        int a = addBody(pane, 0, 0);
+        int b = addBody(pane, 6, 0);
+        LongHashSet pairs = new LongHashSet();
+        pairs.add(LongHashSet.pair(a, b));
+
+        ContactSolver solver = new ContactSolver();
+        solver.solve(bodies, pairs, false, new Affine(), 0);
+        assertEquals(1, solver.count);
+        // The contacts of the previous call may not be left behind
+        solver.solve(bodies, pairs, false, new Scale(0, 0), 0);
+        assertEquals(0, solver.count);
+    }
+
+    // HELP METHODS
+
+    // Adds an active child of 10 by 10 at the given location, with its bounds cached
+    private static int addBody(TactilePane pane, double x, double y) {
+        Rectangle rectangle = new Rectangle(10, 10);
+        rectangle.relocate(x, y);
+        pane.getChildren().add(rectangle);
+        pane.getActiveNodes().add(rectangle);
+
+        BodyStore bodies = pane.bodies;
+        int id = bodies.idOf(rectangle);
+        bodies.minX[id] = x;
+        bodies.minY[id] = y;
+        bodies.maxX[id] = x + 10;
+        bodies.maxY[id] = y + 10;
+        return id;
+    }
+}
@@ -0,0 +1,9 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+public class DynamicAabbTreeTest extends AbstractBroadPhaseTest {
+
+    @Override
+    protected BroadPhase createBroadPhase() {
+        return new DynamicAabbTree();
+    }
+}
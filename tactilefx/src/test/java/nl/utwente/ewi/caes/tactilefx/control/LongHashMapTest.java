@@ -0,0 +1,93 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LongHashMapTest {
+
+    @Test
+    public void putReplacesAndRemoveReturnsTheValue() {
+        LongHashMap<String> map = new LongHashMap<>();
+        map.put(-1, "a");
+        map.put(-1, "b");
+        assertEquals(1, map.size());
+        assertEquals("b", map.get(-1));
+
+        assertEquals("b", map.remove(-1));
+        assertNull(map.remove(-1));
+        assertNull(map.get(-1));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void randomPutsAndRemovesMatchHashMap() {
+        // Any long is a key, including negative ones and the keys of grid
+        // cells, which differ only in their high or low half
+        Random random = new Random(5);
+        long[] keys = new long[400];
+        for (int i = 0; i < keys.length; i++) {
+            int x = random.nextInt(20) - 10, y = random.nextInt(20) - 10;
+            keys[i] = i % 2 == 0 ? ((long) x << 32) | (y & 0xFFFFFFFFL) : random.nextLong();
+        }
+
+        LongHashMap<Integer> map = new LongHashMap<>();
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            long key = keys[random.nextInt(keys.length)];
+            if (random.nextBoolean()) {
+                map.put(key, i);
+                expected.put(key, i);
+            } else {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+            if (i % 100 == 0) {
+                check(map, expected, keys);
+            }
+        }
+        check(map, expected, keys);
+
+        for (long key : keys) {
+            assertEquals(expected.remove(key), map.remove(key));
+        }
+        check(map, expected, keys);
+    }
+
+    @Test
+    public void clearRemovesAllEntries() {
+        LongHashMap<String> map = new LongHashMap<>();
+        for (long key = -50; key < 50; key++) {
+            map.put(key, "x");
+        }
+        map.clear();
+        assertEquals(0, map.size());
+        for (int slot = 0; slot < map.capacity(); slot++) {
+            assertNull(map.valueAt(slot));
+        }
+        map.put(3, "y");
+        assertEquals("y", map.get(3));
+    }
+
+    // HELP METHODS
+
+    // Checks the contents of the map, both through get and by walking its slots
+    private static void check(LongHashMap<Integer> map, Map<Long, Integer> expected, long[] keys) {
+        assertEquals(expected.size(), map.size());
+        for (long key : keys) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+        Map<Long, Integer> found = new HashMap<>();
+        for (int slot = 0; slot < map.capacity(); slot++) {
+            Integer value = map.valueAt(slot);
+            if (value != null) {
+                assertNull("key in two slots", found.put(map.keyAt(slot), value));
+            }
+        }
+        assertEquals(expected, found);
+    }
+}
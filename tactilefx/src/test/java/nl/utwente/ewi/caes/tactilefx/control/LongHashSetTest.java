@@ -0,0 +1,110 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongHashSetTest {
+
+    @Test
+    public void addAndRemoveReportWhetherTheSetChanged() {
+        LongHashSet set = new LongHashSet();
+        assertTrue(set.add(42));
+        assertFalse(set.add(42));
+        assertTrue(set.contains(42));
+        assertEquals(1, set.size());
+
+        assertTrue(set.remove(42));
+        assertFalse(set.remove(42));
+        assertFalse(set.contains(42));
+        assertEquals(0, set.size());
+    }
+
+    @Test
+    public void pairsAreUnordered() {
+        assertEquals(LongHashSet.pair(3, 5), LongHashSet.pair(5, 3));
+        long pair = LongHashSet.pair(7, Integer.MAX_VALUE);
+        assertEquals(7, LongHashSet.first(pair));
+        assertEquals(Integer.MAX_VALUE, LongHashSet.second(pair));
+    }
+
+    @Test
+    public void randomAddsAndRemovesMatchHashSet() {
+        // Few distinct keys in a table that grows and fills up, so removes
+        // often have to shift back the keys of long runs of slots
+        Random random = new Random(3);
+        LongHashSet set = new LongHashSet();
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 20000; i++) {
+            long key = random.nextInt(300);
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(key), set.add(key));
+            } else {
+                assertEquals(expected.remove(key), set.remove(key));
+            }
+            if (i % 100 == 0) {
+                check(set, expected);
+            }
+        }
+        check(set, expected);
+
+        for (long key : new HashSet<>(expected)) {
+            assertTrue(set.remove(key));
+            expected.remove(key);
+        }
+        check(set, expected);
+    }
+
+    @Test
+    public void removingPairsWhileCollectingThemKeepsTheOthers() {
+        LongHashSet set = new LongHashSet();
+        Set<Long> expected = new HashSet<>();
+        for (int a = 0; a < 40; a++) {
+            for (int b = a + 1; b < 40; b += 3) {
+                set.add(LongHashSet.pair(a, b));
+                expected.add(LongHashSet.pair(a, b));
+            }
+        }
+        // Remove all pairs of one id, as the broad phases do when a Node is removed
+        for (int b = 0; b < 40; b++) {
+            long pair = LongHashSet.pair(5, b);
+            assertEquals(expected.remove(pair), set.remove(pair));
+        }
+        check(set, expected);
+    }
+
+    @Test
+    public void clearRemovesAllKeys() {
+        LongHashSet set = new LongHashSet();
+        for (long key = 0; key < 100; key++) {
+            set.add(key);
+        }
+        set.clear();
+        check(set, new HashSet<>());
+        assertTrue(set.add(5));
+    }
+
+    // HELP METHODS
+
+    // Checks the contents of the set, both through contains and by walking its slots
+    private static void check(LongHashSet set, Set<Long> expected) {
+        assertEquals(expected.size(), set.size());
+        for (long key = 0; key < 300; key++) {
+            assertEquals(expected.contains(key), set.contains(key));
+        }
+        Set<Long> found = new HashSet<>();
+        for (int slot = 0; slot < set.capacity(); slot++) {
+            long key = set.keyAt(slot);
+            if (key >= 0) {
+                assertTrue("key in two slots", found.add(key));
+            }
+        }
+        assertEquals(expected, found);
+    }
+}
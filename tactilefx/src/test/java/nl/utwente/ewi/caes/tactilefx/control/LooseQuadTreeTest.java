@@ -0,0 +1,11 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+public class LooseQuadTreeTest extends AbstractBroadPhaseTest {
+
+    @Override
+    protected BroadPhase createBroadPhase() {
+        QuadTree quadTree = new QuadTree(4, 6);
+        quadTree.setLooseness(1.5);
+        return quadTree;
+    }
+}
@@ -0,0 +1,163 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.sun.javafx.application.PlatformImpl;
+
+import javafx.geometry.Point2D;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.shape.Rectangle;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that a physics step doesn't allocate once the physics have reached a
+ * steady state, by measuring the bytes allocated by the JavaFX Application
+ * Thread while it steps.
+ */
+public class PhysicsAllocationTest {
+    // Enough for the broad phases to have grown their tables and pools to what the moving Nodes need
+    private static final int WARM_UP_STEPS = 1000;
+    private static final int MEASURED_STEPS = 200;
+
+    @BeforeClass
+    public static void startToolkit() {
+        PlatformImpl.startup(() -> { });
+    }
+
+    @Test
+    public void updatePositionsDoesNotAllocate() throws Throwable {
+        onFxThread(() -> {
+            TactilePane pane = createPane(false);
+            pane.setBondSolver(TactilePane.BondSolver.FORCE);
+            assertEquals(0, allocatedDuringSteps(pane, false));
+        });
+    }
+
+    @Test
+    public void updatePositionsWithPositionBondsDoesNotAllocate() throws Throwable {
+        onFxThread(() -> {
+            TactilePane pane = createPane(false);
+            pane.setBondSolver(TactilePane.BondSolver.POSITION);
+            assertEquals(0, allocatedDuringSteps(pane, false));
+        });
+    }
+
+    @Test
+    public void checkCollisionsDoesNotAllocate() throws Throwable {
+        onFxThread(() -> {
+            TactilePane pane = createPane(true);
+            assertEquals(0, allocatedDuringSteps(pane, true));
+        });
+    }
+
+    @Test
+    public void checkCollisionsWithOtherBroadPhasesDoesNotAllocate() throws Throwable {
+        onFxThread(() -> {
+            BroadPhase[] broadPhases = { new SpatialHashGrid(64), new SweepAndPrune(), new DynamicAabbTree() };
+            for (BroadPhase broadPhase : broadPhases) {
+                TactilePane pane = createPane(true);
+                pane.setBroadPhase(broadPhase);
+                assertEquals(broadPhase.getClass().getSimpleName(), 0, allocatedDuringSteps(pane, true));
+            }
+        });
+    }
+
+    // HELP METHODS
+
+    // A pane with moving children, some of them bonded. If active is true,
+    // the children are active and all move the same way, so they never touch
+    // and no events are fired. Otherwise they bounce off the borders
+    private static TactilePane createPane(boolean active) {
+        TactilePane pane = new TactilePane();
+        pane.resize(4000, 4000);
+        pane.setBordersCollide(!active);
+        pane.setProximityThreshold(5);
+        // No friction, so the vectors don't decay to zero and the bodies never fall asleep
+        pane.setFrictionMultiplier(1);
+
+        Random random = new Random(1);
+        List<Node> children = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            Rectangle rectangle = new Rectangle(10, 10);
+            rectangle.relocate(100 + (i % 20) * 190, 100 + (i / 20) * 190);
+            children.add(rectangle);
+        }
+        pane.getChildren().addAll(children);
+        for (int i = 0; i < children.size(); i++) {
+            Node node = children.get(i);
+            TactilePane.setVector(node, active ? new Point2D(3, 2)
+                    : new Point2D(random.nextDouble() * 20 - 10, random.nextDouble() * 20 - 10));
+            if (i % 4 == 1) {
+                TactilePane.getBonds(node).add(new Bond(children.get(i - 1), 190, 0.01));
+            }
+            if (active) {
+                pane.getActiveNodes().add(node);
+            }
+        }
+        new Scene(pane, 4000, 4000);
+        return pane;
+    }
+
+    // Steps the physics until they reach a steady state, then returns the
+    // bytes allocated during all measured steps by updatePositions, or by
+    // checkCollisions if collisions is true. When active nodes move, JavaFX
+    // allocates new bounds to notify the bounds listeners of the TactilePane,
+    // so updatePositions is then left out of the measurement
+    private static long allocatedDuringSteps(TactilePane pane, boolean collisions) {
+        PhysicsTimer physics = pane.physics;
+        pane.stepPhysics(1);
+        for (int i = 0; i < WARM_UP_STEPS; i++) {
+            physics.updatePositions();
+            if (collisions) {
+                physics.checkCollisions();
+            }
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        // The measurement itself may allocate, so subtract that
+        long before = threads.getThreadAllocatedBytes(thread);
+        long overhead = threads.getThreadAllocatedBytes(thread) - before;
+        long allocated = 0;
+        for (int i = 0; i < MEASURED_STEPS; i++) {
+            if (collisions) {
+                physics.updatePositions();
+                before = threads.getThreadAllocatedBytes(thread);
+                physics.checkCollisions();
+            } else {
+                before = threads.getThreadAllocatedBytes(thread);
+                physics.updatePositions();
+            }
+            allocated += threads.getThreadAllocatedBytes(thread) - before - overhead;
+        }
+        // Not divided by the number of steps, which would round a few bytes down to 0
+        return allocated;
+    }
+
+    private interface FxTask {
+        void run() throws Throwable;
+    }
+
+    // Runs a task on the JavaFX Application Thread, and rethrows whatever it throws
+    private static void onFxThread(FxTask task) throws Throwable {
+        Throwable[] thrown = new Throwable[1];
+        PlatformImpl.runAndWait(() -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                thrown[0] = t;
+            }
+        });
+        if (thrown[0] != null) {
+            throw thrown[0];
+        }
+    }
+}
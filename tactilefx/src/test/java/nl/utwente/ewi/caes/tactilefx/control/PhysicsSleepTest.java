@@ -0,0 +1,125 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import com.sun.javafx.application.PlatformImpl;
+
+import javafx.geometry.Point2D;
+import javafx.scene.Group;
+import javafx.scene.Scene;
+import javafx.scene.shape.Rectangle;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Checks that the physics put children to sleep once they have settled, so
+ * the PhysicsTimer can stop.
+ */
+public class PhysicsSleepTest {
+    // Long enough for the Bonds to settle with the default friction
+    private static final int SETTLE_STEPS = 2000;
+
+    @BeforeClass
+    public static void startToolkit() {
+        PlatformImpl.startup(() -> { });
+    }
+
+    @Test
+    public void bondedChildrenFallAsleep() throws Throwable {
+        onFxThread(() -> {
+            for (TactilePane.BondSolver solver : TactilePane.BondSolver.values()) {
+                TactilePane pane = createPane();
+                pane.setBondSolver(solver);
+                Rectangle a = addChild(pane, 100, 100);
+                Rectangle b = addChild(pane, 300, 100);
+                TactilePane.getBonds(a).add(new Bond(b, 100, 0.1));
+                TactilePane.getBonds(b).add(new Bond(a, 100, 0.1));
+
+                pane.stepPhysics(SETTLE_STEPS);
+                assertFalse(solver.toString(), pane.bodies.isAnyAwake());
+                // The forces stop moving them a few pixels short of the distance
+                // of their Bonds, once they're smaller than the vector threshold
+                assertEquals(solver.toString(), 100, b.getLayoutX() - a.getLayoutX(), 10);
+
+                // Pushing one of them wakes it, and through its Bond the other one
+                TactilePane.setVector(a, new Point2D(-300, 0));
+                pane.stepPhysics(2);
+                assertFalse(solver.toString(), pane.bodies.hasFlag(pane.bodies.idOf(b), BodyStore.SLEEPING));
+            }
+        });
+    }
+
+    @Test
+    public void childBondedToStaticNodeFallsAsleep() throws Throwable {
+        onFxThread(() -> {
+            TactilePane pane = createPane();
+            Rectangle target = new Rectangle(10, 10);
+            target.relocate(300, 100);
+            ((Group) pane.getScene().getRoot()).getChildren().add(target);
+            Rectangle child = addChild(pane, 100, 100);
+            TactilePane.getBonds(child).add(new Bond(target, 100, 0.1));
+
+            pane.stepPhysics(SETTLE_STEPS);
+            assertFalse(pane.bodies.isAnyAwake());
+        });
+    }
+
+    @Test
+    public void childAnchoredToStaticNodeFallsAsleep() throws Throwable {
+        onFxThread(() -> {
+            TactilePane pane = createPane();
+            Rectangle target = new Rectangle(10, 10);
+            target.relocate(300, 100);
+            ((Group) pane.getScene().getRoot()).getChildren().add(target);
+            Rectangle child = addChild(pane, 100, 100);
+            TactilePane.setAnchor(child, new Anchor(target, 20, 0));
+
+            pane.stepPhysics(10);
+            assertFalse(pane.bodies.isAnyAwake());
+            assertEquals(320, child.getLayoutX(), 0);
+
+            // While the physics run, it still follows the Node it's anchored to
+            target.relocate(400, 100);
+            TactilePane.setVector(addChild(pane, 500, 500), new Point2D(100, 0));
+            pane.stepPhysics(1);
+            assertEquals(420, child.getLayoutX(), 0);
+        });
+    }
+
+    // HELP METHODS
+
+    private static TactilePane createPane() {
+        TactilePane pane = new TactilePane();
+        pane.resize(1000, 1000);
+        new Scene(new Group(pane), 1000, 1000);
+        return pane;
+    }
+
+    private static Rectangle addChild(TactilePane pane, double x, double y) {
+        Rectangle rectangle = new Rectangle(10, 10);
+        rectangle.relocate(x, y);
+        pane.getChildren().add(rectangle);
+        return rectangle;
+    }
+
+    private interface FxTask {
+        void run() throws Throwable;
+    }
+
+    // Runs a task on the JavaFX Application Thread, and rethrows whatever it throws
+    private static void onFxThread(FxTask task) throws Throwable {
+        Throwable[] thrown = new Throwable[1];
+        PlatformImpl.runAndWait(() -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                thrown[0] = t;
+            }
+        });
+        if (thrown[0] != null) {
+            throw thrown[0];
+        }
+    }
+}
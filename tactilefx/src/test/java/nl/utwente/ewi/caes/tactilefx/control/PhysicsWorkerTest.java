@@ -0,0 +1,123 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import com.sun.javafx.application.PlatformImpl;
+
+import javafx.scene.shape.Rectangle;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a Node dragged while the physics run on a worker thread ends up
+ * where it was dragged to. Pulses are simulated by calling the worker the same
+ * way PhysicsTimer does, with some time in between for the worker to step.
+ */
+public class PhysicsWorkerTest {
+    private static final int DRAG_EVENTS = 10;
+    private static final double DRAG_DISTANCE = 10;
+
+    private TactilePane pane;
+    private Rectangle rectangle;
+    private PhysicsWorker worker;
+
+    @BeforeClass
+    public static void startToolkit() {
+        PlatformImpl.startup(() -> { });
+    }
+
+    @After
+    public void stopWorker() throws Throwable {
+        onFxThread(() -> {
+            if (worker != null) {
+                worker.stop();
+            }
+        });
+    }
+
+    @Test
+    public void draggedNodeStaysWhereItIsReleased() throws Throwable {
+        startWorker(false);
+        drag();
+        for (int i = 0; i < 10; i++) {
+            pulse();
+        }
+        onFxThread(() -> {
+            assertEquals(100 + DRAG_EVENTS * DRAG_DISTANCE, rectangle.getLayoutX(), 0);
+            assertEquals(100, rectangle.getLayoutY(), 0);
+        });
+    }
+
+    @Test
+    public void draggedNodeSlidesOnRelease() throws Throwable {
+        startWorker(true);
+        drag();
+        for (int i = 0; i < 10; i++) {
+            pulse();
+        }
+        onFxThread(() -> {
+            // Slides on in the direction it was dragged in
+            assertTrue(rectangle.getLayoutX() > 100 + DRAG_EVENTS * DRAG_DISTANCE);
+            assertEquals(100, rectangle.getLayoutY(), 1e-9);
+        });
+    }
+
+    // HELP METHODS
+
+    private void startWorker(boolean slideOnRelease) throws Throwable {
+        onFxThread(() -> {
+            pane = new TactilePane();
+            pane.resize(1000, 1000);
+            rectangle = new Rectangle(10, 10);
+            rectangle.relocate(100, 100);
+            TactilePane.setSlideOnRelease(rectangle, slideOnRelease);
+            pane.getChildren().add(rectangle);
+
+            worker = new PhysicsWorker(pane);
+            worker.start();
+        });
+    }
+
+    // Drags the rectangle to the right, with a drag event before every pulse, and releases it
+    private void drag() throws Throwable {
+        onFxThread(() -> TactilePane.setInUse(rectangle, true));
+        for (int i = 0; i < DRAG_EVENTS; i++) {
+            onFxThread(() -> {
+                rectangle.setLayoutX(rectangle.getLayoutX() + DRAG_DISTANCE);
+                worker.submitMove(rectangle, rectangle.getLayoutX(), rectangle.getLayoutY());
+            });
+            pulse();
+        }
+        onFxThread(() -> TactilePane.setInUse(rectangle, false));
+    }
+
+    private void pulse() throws Throwable {
+        onFxThread(() -> {
+            worker.applyResults();
+            worker.synchronize();
+        });
+        Thread.sleep(20);
+    }
+
+    private interface FxTask {
+        void run() throws Throwable;
+    }
+
+    // Runs a task on the JavaFX Application Thread, and rethrows whatever it throws
+    private static void onFxThread(FxTask task) throws Throwable {
+        Throwable[] thrown = new Throwable[1];
+        PlatformImpl.runAndWait(() -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                thrown[0] = t;
+            }
+        });
+        if (thrown[0] != null) {
+            throw thrown[0];
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+public class SpatialHashGridTest extends AbstractBroadPhaseTest {
+
+    @Override
+    protected BroadPhase createBroadPhase() {
+        return new SpatialHashGrid(50);
+    }
+}
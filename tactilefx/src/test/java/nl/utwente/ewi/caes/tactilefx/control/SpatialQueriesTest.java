@@ -0,0 +1,280 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.sun.javafx.application.PlatformImpl;
+
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Bounds;
+import javafx.geometry.Point2D;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.shape.Rectangle;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the spatial queries of TactilePane against brute force over the
+ * bounds of all active Nodes of a pane that fills the top left of its Scene,
+ * so scene coordinates are the same as those of the pane.
+ */
+public class SpatialQueriesTest {
+    private static final int NODES = 300;
+    private static final int QUERIES = 500;
+    private static final double DELTA = 1e-9;
+
+    private final Random random = new Random(3);
+
+    @BeforeClass
+    public static void startToolkit() {
+        PlatformImpl.startup(() -> { });
+    }
+
+    @Test
+    public void nodesAtMatchesBruteForce() throws Throwable {
+        onFxThread(() -> {
+            TactilePane pane = createPane();
+            for (int i = 0; i < QUERIES; i++) {
+                Point2D point = randomPoint();
+                assertEquals(bruteForceWithin(pane, new BoundingBox(point.getX(), point.getY(), 0, 0), null, 0),
+                        new HashSet<>(pane.nodesAt(point)));
+            }
+        });
+    }
+
+    @Test
+    public void nodesIntersectingMatchesBruteForce() throws Throwable {
+        onFxThread(() -> {
+            TactilePane pane = createPane();
+            for (int i = 0; i < QUERIES; i++) {
+                Bounds bounds = randomBounds();
+                assertEquals(bruteForceWithin(pane, bounds, null, 0), new HashSet<>(pane.nodesIntersecting(bounds)));
+            }
+        });
+    }
+
+    @Test
+    public void nodesWithinMatchesBruteForce() throws Throwable {
+        onFxThread(() -> {
+            TactilePane pane = createPane();
+            List<Node> active = new ArrayList<>(pane.getActiveNodes());
+            for (int i = 0; i < QUERIES; i++) {
+                Point2D point = randomPoint();
+                double radius = random.nextDouble() * 200;
+                assertEquals(bruteForceWithin(pane, new BoundingBox(point.getX(), point.getY(), 0, 0), null, radius),
+                        new HashSet<>(pane.nodesWithin(point, radius)));
+
+                Node node = active.get(random.nextInt(active.size()));
+                Set<Node> result = new HashSet<>(pane.nodesWithin(node, radius));
+                assertFalse(result.contains(node));
+                assertEquals(bruteForceWithin(pane, sceneBounds(node), node, radius), result);
+            }
+        });
+    }
+
+    @Test
+    public void nearestMatchesBruteForce() throws Throwable {
+        onFxThread(() -> {
+            TactilePane pane = createPane();
+            for (int i = 0; i < QUERIES; i++) {
+                Point2D point = randomPoint();
+                Bounds bounds = new BoundingBox(point.getX(), point.getY(), 0, 0);
+                int k = random.nextInt(20);
+                double maxDistance = random.nextBoolean() ? Double.POSITIVE_INFINITY : random.nextDouble() * 300;
+
+                // Nodes at the same distance may come in any order, so compare the distances
+                List<Double> expected = new ArrayList<>();
+                for (Node node : pane.getActiveNodes()) {
+                    double distance = distance(sceneBounds(node), bounds);
+                    if (distance <= maxDistance) {
+                        expected.add(distance);
+                    }
+                }
+                Collections.sort(expected);
+                expected = expected.subList(0, Math.min(k, expected.size()));
+
+                List<Double> actual = new ArrayList<>();
+                for (Node node : pane.nearest(point, k, maxDistance)) {
+                    actual.add(distance(sceneBounds(node), bounds));
+                }
+                assertEquals(expected, actual);
+            }
+        });
+    }
+
+    @Test
+    public void sweepMatchesBruteForce() throws Throwable {
+        onFxThread(() -> {
+            TactilePane pane = createPane();
+            List<Node> active = new ArrayList<>(pane.getActiveNodes());
+            for (int i = 0; i < QUERIES; i++) {
+                Point2D vector = new Point2D(random.nextDouble() * 1200 - 600, random.nextDouble() * 1200 - 600);
+                if (i % 3 == 0) {
+                    Point2D origin = randomPoint();
+                    checkSweep(pane, new BoundingBox(origin.getX(), origin.getY(), 0, 0), vector, null,
+                            pane.raycast(origin, vector));
+                } else if (i % 3 == 1) {
+                    Bounds bounds = randomBounds();
+                    checkSweep(pane, bounds, vector, null, pane.sweep(bounds, vector));
+                } else {
+                    Node node = active.get(random.nextInt(active.size()));
+                    checkSweep(pane, sceneBounds(node), vector, node, pane.sweep(node, vector));
+                }
+            }
+        });
+    }
+
+    @Test
+    public void enterAndExitTimesMatchBruteForce() {
+        for (int i = 0; i < 10000; i++) {
+            double min = random.nextDouble() * 100, max = min + random.nextDouble() * 20;
+            double otherMin = random.nextDouble() * 100, otherMax = otherMin + random.nextDouble() * 20;
+            double vector = random.nextInt(10) == 0 ? 0 : (1 + random.nextDouble() * 99) * (random.nextBoolean() ? 1 : -1);
+            double enter = SpatialQueries.enterTime(min, max, vector, otherMin, otherMax);
+            double exit = SpatialQueries.exitTime(min, max, vector, otherMin, otherMax);
+
+            if (vector == 0) {
+                boolean overlaps = max >= otherMin && min <= otherMax;
+                assertEquals(overlaps ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY, enter, 0);
+                assertEquals(overlaps ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY, exit, 0);
+                continue;
+            }
+            // The bounds overlap at every time between entering and exiting, and at no other time
+            assertTrue(enter <= exit);
+            for (int j = 0; j <= 100; j++) {
+                double time = enter - 1 + (exit - enter + 2) * j / 100;
+                boolean overlaps = max + vector * time >= otherMin && min + vector * time <= otherMax;
+                if (time > enter + DELTA && time < exit - DELTA) {
+                    assertTrue(overlaps);
+                } else if (time < enter - DELTA || time > exit + DELTA) {
+                    assertFalse(overlaps);
+                }
+            }
+        }
+    }
+
+    // HELP METHODS
+
+    // A pane with active Nodes of different sizes, and some children that aren't active
+    private TactilePane createPane() {
+        TactilePane pane = new TactilePane();
+        pane.resize(1000, 1000);
+        new Scene(new Group(pane), 1000, 1000);
+        for (int i = 0; i < NODES; i++) {
+            Rectangle rectangle = new Rectangle(5 + random.nextDouble() * 55, 5 + random.nextDouble() * 55);
+            rectangle.relocate(random.nextDouble() * 1000, random.nextDouble() * 1000);
+            pane.getChildren().add(rectangle);
+            if (i % 10 != 0) {
+                pane.getActiveNodes().add(rectangle);
+            }
+        }
+        return pane;
+    }
+
+    private Point2D randomPoint() {
+        return new Point2D(random.nextDouble() * 1200 - 100, random.nextDouble() * 1200 - 100);
+    }
+
+    private Bounds randomBounds() {
+        Point2D point = randomPoint();
+        return new BoundingBox(point.getX(), point.getY(), random.nextDouble() * 100, random.nextDouble() * 100);
+    }
+
+    private static Bounds sceneBounds(Node node) {
+        return node.localToScene(node.getBoundsInLocal());
+    }
+
+    private static double distance(Bounds a, Bounds b) {
+        double dx = Math.max(0, Math.max(a.getMinX() - b.getMaxX(), b.getMinX() - a.getMaxX()));
+        double dy = Math.max(0, Math.max(a.getMinY() - b.getMaxY(), b.getMinY() - a.getMaxY()));
+        // The same as SpatialQueries, so distances compare equal
+        return dx == 0 ? dy : dy == 0 ? dx : Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private static Set<Node> bruteForceWithin(TactilePane pane, Bounds bounds, Node excluded, double radius) {
+        Set<Node> result = new HashSet<>();
+        for (Node node : pane.getActiveNodes()) {
+            if (node != excluded && distance(sceneBounds(node), bounds) <= radius) {
+                result.add(node);
+            }
+        }
+        return result;
+    }
+
+    // Checks that a sweep hit the active Node that the bounds hit first when
+    // they move along the vector, ignoring the Nodes they intersect at the start
+    private static void checkSweep(TactilePane pane, Bounds bounds, Point2D vector, Node excluded, SweepHit hit) {
+        double firstTime = Double.POSITIVE_INFINITY;
+        for (Node node : pane.getActiveNodes()) {
+            Bounds other = sceneBounds(node);
+            if (node == excluded || distance(other, bounds) == 0) continue;
+
+            // The times at which the bounds overlap on either axis, intersected
+            double[] x = overlapTimes(bounds.getMinX(), bounds.getMaxX(), vector.getX(), other.getMinX(), other.getMaxX());
+            double[] y = overlapTimes(bounds.getMinY(), bounds.getMaxY(), vector.getY(), other.getMinY(), other.getMaxY());
+            double enter = Math.max(Math.max(x[0], y[0]), 0);
+            double exit = Math.min(Math.min(x[1], y[1]), 1);
+            if (enter <= exit) {
+                firstTime = Math.min(firstTime, enter);
+            }
+        }
+
+        if (firstTime == Double.POSITIVE_INFINITY) {
+            assertNull(hit);
+            return;
+        }
+        assertNotNull(hit);
+        assertEquals(firstTime, hit.getTime(), DELTA);
+        assertEquals(firstTime * vector.magnitude(), hit.getDistance(), 1e-6);
+        // The Node that was hit is one that is hit at that time
+        Bounds other = sceneBounds(hit.getNode());
+        Bounds moved = new BoundingBox(bounds.getMinX() + vector.getX() * hit.getTime(),
+                bounds.getMinY() + vector.getY() * hit.getTime(), bounds.getWidth(), bounds.getHeight());
+        assertEquals(0, distance(other, moved), 1e-6);
+    }
+
+    // The interval of times at which an interval moving by vector overlaps
+    // another one, which is empty if its start lies after its end
+    private static double[] overlapTimes(double min, double max, double vector, double otherMin, double otherMax) {
+        if (vector == 0) {
+            boolean overlaps = max >= otherMin && min <= otherMax;
+            return overlaps ? new double[] { Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY }
+                    : new double[] { Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+        }
+        double first = (otherMin - max) / vector;
+        double second = (otherMax - min) / vector;
+        return new double[] { Math.min(first, second), Math.max(first, second) };
+    }
+
+    private interface FxTask {
+        void run() throws Throwable;
+    }
+
+    // Runs a task on the JavaFX Application Thread, and rethrows whatever it throws
+    private static void onFxThread(FxTask task) throws Throwable {
+        Throwable[] thrown = new Throwable[1];
+        PlatformImpl.runAndWait(() -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                thrown[0] = t;
+            }
+        });
+        if (thrown[0] != null) {
+            throw thrown[0];
+        }
+    }
+}
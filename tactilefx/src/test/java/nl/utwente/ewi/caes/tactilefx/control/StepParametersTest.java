@@ -0,0 +1,63 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+import com.sun.javafx.application.PlatformImpl;
+
+import javafx.geometry.Point2D;
+import javafx.scene.shape.Rectangle;
+
+import nl.utwente.ewi.caes.tactilefx.control.TactilePane.Integrator;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that StepParameters predicts how far a Node slides, by comparing it
+ * with stepping the physics.
+ */
+public class StepParametersTest {
+    private static final double DELTA = 1e-6;
+
+    @BeforeClass
+    public static void startToolkit() {
+        PlatformImpl.startup(() -> { });
+    }
+
+    @Test
+    public void slideDistanceMatchesPhysics() {
+        for (Integrator integrator : Integrator.values()) {
+            for (double friction : new double[] { 0, 0.5, 0.95, 1 }) {
+                for (double speed : new double[] { 0.5, 30, 600 }) {
+                    for (int steps : new int[] { 0, 1, 10, 300 }) {
+                        assertSlideDistance(integrator, friction, speed, steps);
+                    }
+                }
+            }
+        }
+    }
+
+    // HELP METHODS
+
+    private static void assertSlideDistance(Integrator integrator, double friction, double speed, int steps) {
+        TactilePane pane = new TactilePane();
+        pane.resize(100000, 100000);
+        pane.setBordersCollide(false);
+        pane.setIntegrator(integrator);
+        pane.setFrictionMultiplier(friction);
+        pane.setStepRate(120);
+        Rectangle rectangle = new Rectangle(10, 10);
+        rectangle.relocate(50000, 50000);
+        pane.getChildren().add(rectangle);
+        TactilePane.setVector(rectangle, new Point2D(speed, 0));
+
+        StepParameters parameters = new StepParameters();
+        parameters.update(pane);
+        // Half a step more, so rounding doesn't drop the last step
+        double expected = parameters.slideDistance(speed, (steps + 0.5) * parameters.timeStep);
+
+        pane.stepPhysics(steps);
+        String message = integrator + " friction=" + friction + " speed=" + speed + " steps=" + steps;
+        assertEquals(message, expected, rectangle.getLayoutX() - 50000, DELTA);
+    }
+}
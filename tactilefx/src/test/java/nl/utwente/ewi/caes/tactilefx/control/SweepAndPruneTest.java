@@ -0,0 +1,9 @@
+package nl.utwente.ewi.caes.tactilefx.control;
+
+public class SweepAndPruneTest extends AbstractBroadPhaseTest {
+
+    @Override
+    protected BroadPhase createBroadPhase() {
+        return new SweepAndPrune();
+    }
+}